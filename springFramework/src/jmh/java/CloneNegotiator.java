@@ -0,0 +1,35 @@
+import benchmark.Negotiator;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Bridges CloneHttpHeaders.negotiateContentType/negotiateLocale into the
+ * benchmark package, see benchmark.Negotiators. Every call starts from fresh
+ * headers, as every request would.
+ */
+public class CloneNegotiator implements Negotiator {
+
+    private final CloneContentNegotiation.CloneMediaTypes producible;
+    private final CloneContentNegotiation.CloneLocales supported;
+
+    public CloneNegotiator(List<MediaType> producible, List<Locale> supported){
+        this.producible = CloneContentNegotiation.CloneMediaTypes.of(producible);
+        this.supported = CloneContentNegotiation.CloneLocales.of(supported);
+    }
+
+    @Override
+    public MediaType negotiateContentType(String accept){
+        CloneHttpHeaders headers = new CloneHttpHeaders();
+        headers.set(CloneHttpHeaders.ACCEPT, accept);
+        return headers.negotiateContentType(producible);
+    }
+
+    @Override
+    public Locale negotiateLocale(String acceptLanguage){
+        CloneHttpHeaders headers = new CloneHttpHeaders();
+        headers.set(CloneHttpHeaders.ACCEPT_LANGUAGE, acceptLanguage);
+        return headers.negotiateLocale(supported);
+    }
+}
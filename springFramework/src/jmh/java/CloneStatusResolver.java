@@ -0,0 +1,18 @@
+import benchmark.StatusResolver;
+
+/*
+ * Bridges CloneHttpStatus into the benchmark package, see
+ * benchmark.StatusResolvers.
+ */
+public class CloneStatusResolver implements StatusResolver {
+
+    @Override
+    public Object resolve(int statusCode){
+        return CloneHttpStatus.resolve(statusCode);
+    }
+
+    @Override
+    public Object resolveSeries(int statusCode){
+        return CloneHttpStatus.Series.resolve(statusCode);
+    }
+}
@@ -0,0 +1,87 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.MediaType;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CloneHttpHeaders.negotiateContentType/negotiateLocale against parsing and
+ * sorting the headers on every request the way Spring MVC does.
+ *
+ * <p>Each client cycles through a handful of real Accept and Accept-Language
+ * values, as the requests of a mix of browsers or API clients would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CloneContentNegotiationBenchmark {
+
+    private static final String[] BROWSER_ACCEPT = {
+            // Chrome, Firefox, Safari, a fetch() call
+            "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,image/apng,*/*;q=0.8,application/signed-exchange;v=b3;q=0.7",
+            "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,*/*;q=0.8",
+            "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8",
+            "application/json, text/plain, */*"
+    };
+
+    private static final String[] BROWSER_ACCEPT_LANGUAGE = {
+            "en-US,en;q=0.9",
+            "de-DE,de;q=0.9,en-US;q=0.8,en;q=0.7",
+            "fr-FR,fr;q=0.9,en-US;q=0.8,en;q=0.7",
+            "en-GB,en;q=0.5"
+    };
+
+    private static final String[] API_ACCEPT = {
+            // typical REST clients, curl, java.net.HttpURLConnection
+            "application/json",
+            "application/json, application/problem+json",
+            "*/*",
+            "text/html, image/gif, image/jpeg, *; q=.2, */*; q=.2"
+    };
+
+    private static final String[] API_ACCEPT_LANGUAGE = {
+            "en", "*", "en-US", "de"
+    };
+
+    private static final List<MediaType> PRODUCIBLE = Arrays.asList(
+            MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_HTML);
+
+    private static final List<Locale> SUPPORTED = Arrays.asList(
+            Locale.ENGLISH, Locale.US, Locale.GERMAN, Locale.FRENCH);
+
+    @Param({"clone", "spring"})
+    String impl;
+
+    @Param({"browser", "api"})
+    String client;
+
+    private Negotiator negotiator;
+    private String[] accept;
+    private String[] acceptLanguage;
+    private int next;
+
+    @Setup
+    public void setup(){
+        negotiator = Negotiators.of(impl, PRODUCIBLE, SUPPORTED);
+        boolean browser = "browser".equals(client);
+        accept = (browser ? BROWSER_ACCEPT : API_ACCEPT);
+        acceptLanguage = (browser ? BROWSER_ACCEPT_LANGUAGE : API_ACCEPT_LANGUAGE);
+    }
+
+    @Benchmark
+    public MediaType negotiateContentType(){
+        return negotiator.negotiateContentType(accept[next++ & 3]);
+    }
+
+    @Benchmark
+    public Locale negotiateLocale(){
+        return negotiator.negotiateLocale(acceptLanguage[next++ & 3]);
+    }
+}
@@ -0,0 +1,52 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CloneHttpStatus.resolve and Series.resolve against Spring's HttpStatus,
+ * which scans its constants.
+ *
+ * <p>The "traffic" codes are a typical response mix, mostly 200s with some
+ * redirects and errors; "unknown" codes have no constant, which makes the
+ * scans go through every constant before giving up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CloneHttpStatusBenchmark {
+
+    private static final int[] TRAFFIC = {200, 200, 200, 304, 200, 404, 201, 302, 200, 500, 200, 204, 301, 200, 401, 503};
+
+    private static final int[] UNKNOWN = {299, 600, 499, 599, 150, 99, 700, 250, 399, 460, 520, 1000, 0, 333, 444, 555};
+
+    @Param({"clone", "spring"})
+    String impl;
+
+    @Param({"traffic", "unknown"})
+    String codes;
+
+    private StatusResolver resolver;
+    private int[] statusCodes;
+    private int next;
+
+    @Setup
+    public void setup(){
+        resolver = StatusResolvers.of(impl);
+        statusCodes = ("traffic".equals(codes) ? TRAFFIC : UNKNOWN);
+    }
+
+    @Benchmark
+    public Object resolve(){
+        return resolver.resolve(statusCodes[next++ & 15]);
+    }
+
+    @Benchmark
+    public Object resolveSeries(){
+        return resolver.resolveSeries(statusCodes[next++ & 15]);
+    }
+}
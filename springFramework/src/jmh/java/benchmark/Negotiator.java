@@ -0,0 +1,16 @@
+package benchmark;
+
+import org.springframework.http.MediaType;
+
+import java.util.Locale;
+
+/**
+ * Content negotiation as a request handler does it: from the raw Accept and
+ * Accept-Language values to the response type and locale.
+ */
+public interface Negotiator {
+
+    MediaType negotiateContentType(String accept);
+
+    Locale negotiateLocale(String acceptLanguage);
+}
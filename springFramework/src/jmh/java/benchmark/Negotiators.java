@@ -0,0 +1,83 @@
+package benchmark;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+final class Negotiators {
+
+    private Negotiators() {}
+
+    /**
+     * The adapter sits in the unnamed package next to CloneHttpHeaders, so it
+     * has to be looked up reflectively.
+     */
+    static Negotiator clone(List<MediaType> producible, List<Locale> supported){
+        try{
+            return (Negotiator) Class.forName("CloneNegotiator")
+                    .getConstructor(List.class, List.class)
+                    .newInstance(producible, supported);
+        } catch (ReflectiveOperationException e){
+            throw new IllegalStateException("CloneNegotiator is not on the classpath", e);
+        }
+    }
+
+    static Negotiator of(String impl, List<MediaType> producible, List<Locale> supported){
+        switch(impl){
+            case "clone": return clone(producible, supported);
+            case "spring": return spring(producible, supported);
+            default: throw new IllegalArgumentException("Unknown implementation " + impl);
+        }
+    }
+
+    /**
+     * What Spring MVC does per request: parse Accept through HttpHeaders,
+     * collect the most specific of every compatible acceptable/producible
+     * pair, sort by specificity and quality and take the first concrete
+     * type (AbstractMessageConverterMethodProcessor); for the locale, filter
+     * the supported locales by the parsed Accept-Language ranges.
+     */
+    @SuppressWarnings("deprecation")
+    static Negotiator spring(List<MediaType> producible, List<Locale> supported){
+        return new Negotiator() {
+            @Override
+            public MediaType negotiateContentType(String accept){
+                HttpHeaders headers = new HttpHeaders();
+                headers.set(HttpHeaders.ACCEPT, accept);
+                List<MediaType> acceptable = headers.getAccept();
+                if(acceptable.isEmpty()){
+                    acceptable = Collections.singletonList(MediaType.ALL);
+                }
+                List<MediaType> compatible = new ArrayList<>();
+                for(MediaType requested : acceptable){
+                    for(MediaType candidate : producible){
+                        if(requested.isCompatibleWith(candidate)){
+                            MediaType withQuality = candidate.copyQualityValue(requested);
+                            compatible.add(MediaType.SPECIFICITY_COMPARATOR.compare(requested, withQuality) <= 0 ?
+                                    withQuality : requested);
+                        }
+                    }
+                }
+                MediaType.sortBySpecificityAndQuality(compatible);
+                for(MediaType mediaType : compatible){
+                    if(mediaType.isConcrete()){
+                        return mediaType.removeQualityValue();
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public Locale negotiateLocale(String acceptLanguage){
+                HttpHeaders headers = new HttpHeaders();
+                headers.set(HttpHeaders.ACCEPT_LANGUAGE, acceptLanguage);
+                List<Locale> matches = Locale.filter(headers.getAcceptLanguage(), supported);
+                return (matches.isEmpty() ? null : matches.get(0));
+            }
+        };
+    }
+}
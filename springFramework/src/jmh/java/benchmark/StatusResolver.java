@@ -0,0 +1,12 @@
+package benchmark;
+
+/**
+ * Status code lookups as a response writer does them; the results are only
+ * consumed, so they are typed as Object.
+ */
+public interface StatusResolver {
+
+    Object resolve(int statusCode);
+
+    Object resolveSeries(int statusCode);
+}
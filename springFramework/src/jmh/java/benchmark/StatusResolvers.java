@@ -0,0 +1,45 @@
+package benchmark;
+
+import org.springframework.http.HttpStatus;
+
+final class StatusResolvers {
+
+    private StatusResolvers() {}
+
+    /**
+     * The adapter sits in the unnamed package next to CloneHttpStatus, so it
+     * has to be looked up reflectively.
+     */
+    static StatusResolver cloneStatus(){
+        try{
+            return (StatusResolver) Class.forName("CloneStatusResolver")
+                    .getConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException e){
+            throw new IllegalStateException("CloneStatusResolver is not on the classpath", e);
+        }
+    }
+
+    static StatusResolver of(String impl){
+        switch(impl){
+            case "clone": return cloneStatus();
+            case "spring": return spring();
+            default: throw new IllegalArgumentException("Unknown implementation " + impl);
+        }
+    }
+
+    // HttpStatus.resolve scans its constants, Series.resolve scans a fresh values() copy
+    static StatusResolver spring(){
+        return new StatusResolver() {
+            @Override
+            public Object resolve(int statusCode){
+                return HttpStatus.resolve(statusCode);
+            }
+
+            @Override
+            public Object resolveSeries(int statusCode){
+                return HttpStatus.Series.resolve(statusCode);
+            }
+        };
+    }
+}
@@ -0,0 +1,548 @@
+import org.springframework.lang.Nullable;
+import org.springframework.util.MultiValueMap;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/*
+ * Header storage for CloneHttpHeaders.arrayBacked(): one flat array of
+ * name/value pairs with the case-insensitive hash of every name kept next to
+ * it, instead of a LinkedCaseInsensitiveMap entry, a lowercased key copy and
+ * a value list per header.
+ *
+ * The values of one name are kept next to each other and share the name
+ * instance, so a name is looked up with a single scan over the hashes and
+ * entrySet() simply walks the runs. Names equal to one of the
+ * CloneHttpHeaders constants are replaced by the constant when added, which
+ * lets the lookups done by the typed accessors succeed on identity.
+ *
+ * get() returns a live view of the values instead of a stored list; it writes
+ * through like the lists of a LinkedMultiValueMap. put() and remove() return
+ * a copy of the previous values.
+ *
+ * snapshot() shares the arrays with the copy it returns; whichever of the two
+ * changes first (both, in the end) copies them before writing.
+ */
+final class CloneArrayHeaderMap extends AbstractMap<String, List<String>>
+        implements MultiValueMap<String, String>, Serializable {
+
+    private static final long serialVersionUID = 4160727018520573227L;
+
+    // the single value of a name that was put with an empty list
+    private static final String NO_VALUES = new String();
+
+    private transient String[] names;
+    private transient String[] values;
+    private transient int[] hashes;
+
+    // entries in use, and how many distinct names they hold
+    private transient int size;
+    private transient int keys;
+
+    private transient int modCount;
+
+    // the arrays may be shared with a snapshot
+    private transient boolean shared;
+
+    CloneArrayHeaderMap(int expectedHeaders){
+        int capacity = Math.max(expectedHeaders, 4);
+        this.names = new String[capacity];
+        this.values = new String[capacity];
+        this.hashes = new int[capacity];
+    }
+
+    private CloneArrayHeaderMap(CloneArrayHeaderMap source){
+        this.names = source.names;
+        this.values = source.values;
+        this.hashes = source.hashes;
+        this.size = source.size;
+        this.keys = source.keys;
+        this.shared = true;
+    }
+
+    CloneArrayHeaderMap snapshot(){
+        this.shared = true;
+        return new CloneArrayHeaderMap(this);
+    }
+
+    // called before anything is written to the arrays
+    private void own(){
+        if(this.shared){
+            int capacity = Math.max(this.size + 1, 4);
+            this.names = Arrays.copyOf(this.names, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+            this.hashes = Arrays.copyOf(this.hashes, capacity);
+            this.shared = false;
+        }
+    }
+
+    private int indexOf(Object key){
+        if(!(key instanceof String)){
+            return -1;
+        }
+        String name = (String)key;
+        return indexOf(name, CloneHeaderNames.hash(name));
+    }
+
+    // index of the first entry of the name, or -1
+    private int indexOf(String name, int hash){
+        String[] names = this.names;
+        int[] hashes = this.hashes;
+        for(int i = 0; i < this.size; i++){
+            if(hashes[i] == hash && (names[i] == name || CloneHeaderNames.sameName(names[i], name))){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int runEnd(int start){
+        String name = this.names[start];
+        int end = start + 1;
+        while(end < this.size && this.names[end] == name){
+            end++;
+        }
+        return end;
+    }
+
+    private void insert(int index, String name, int hash, @Nullable String value){
+        own();
+        if(this.size == this.names.length){
+            int capacity = this.size * 2;
+            this.names = Arrays.copyOf(this.names, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+            this.hashes = Arrays.copyOf(this.hashes, capacity);
+        }
+        int moved = this.size - index;
+        if(moved > 0){
+            System.arraycopy(this.names, index, this.names, index + 1, moved);
+            System.arraycopy(this.values, index, this.values, index + 1, moved);
+            System.arraycopy(this.hashes, index, this.hashes, index + 1, moved);
+        }
+        this.names[index] = name;
+        this.values[index] = value;
+        this.hashes[index] = hash;
+        this.size++;
+        this.modCount++;
+    }
+
+    private void delete(int from, int to){
+        own();
+        int moved = this.size - to;
+        System.arraycopy(this.names, to, this.names, from, moved);
+        System.arraycopy(this.values, to, this.values, from, moved);
+        System.arraycopy(this.hashes, to, this.hashes, from, moved);
+        int size = this.size - (to - from);
+        Arrays.fill(this.names, size, this.size, null);
+        Arrays.fill(this.values, size, this.size, null);
+        this.size = size;
+        this.modCount++;
+    }
+
+    // a new name at the end, with no values if value is NO_VALUES
+    private void append(String name, int hash, @Nullable String value){
+        insert(this.size, CloneHeaderNames.intern(name, hash), hash, value);
+        this.keys++;
+    }
+
+    private void addValue(int start, @Nullable String value){
+        if(this.values[start] == NO_VALUES){
+            own();
+            this.values[start] = value;
+            this.modCount++;
+        }else{
+            insert(runEnd(start), this.names[start], this.hashes[start], value);
+        }
+    }
+
+    private List<String> copyOfRun(int start){
+        if(this.values[start] == NO_VALUES){
+            return new ArrayList<>(0);
+        }
+        int end = runEnd(start);
+        return new ArrayList<>(Arrays.asList(this.values).subList(start, end));
+    }
+
+    // a view of this map would change while its values are copied in
+    private static Collection<? extends String> detach(Collection<? extends String> values){
+        return (values instanceof Values ? new ArrayList<>(values) : values);
+    }
+
+    // replaces the values of the name starting at index with the given ones, under a new spelling of the name
+    private void replaceRun(int start, String name, int hash, Collection<? extends String> values){
+        values = detach(values);
+        int end = runEnd(start);
+        String interned = CloneHeaderNames.intern(name, hash);
+        if(values.isEmpty()){
+            delete(start + 1, end);
+            this.names[start] = interned;
+            this.values[start] = NO_VALUES;
+            return;
+        }
+        delete(start, end);
+        int i = start;
+        for(String value : values){
+            insert(i++, interned, hash, value);
+        }
+    }
+
+    @Override
+    @Nullable
+    public String getFirst(String key){
+        int i = indexOf(key);
+        if(i < 0 || this.values[i] == NO_VALUES){
+            return null;
+        }
+        return this.values[i];
+    }
+
+    @Override
+    public void add(String key, @Nullable String value){
+        int hash = CloneHeaderNames.hash(key);
+        int i = indexOf(key, hash);
+        if(i < 0){
+            append(key, hash, value);
+        }else{
+            addValue(i, value);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void addAll(String key, List<? extends String> values){
+        values = (List<? extends String>)detach(values);
+        int hash = CloneHeaderNames.hash(key);
+        int i = indexOf(key, hash);
+        if(i < 0){
+            if(values.isEmpty()){
+                append(key, hash, NO_VALUES);
+                return;
+            }
+            i = this.size;
+            append(key, hash, values.get(0));
+            for(int k = 1; k < values.size(); k++){
+                addValue(i, values.get(k));
+            }
+            return;
+        }
+        for(String value : values){
+            addValue(i, value);
+        }
+    }
+
+    @Override
+    public void addAll(MultiValueMap<String, String> values){
+        for(Entry<String, List<String>> entry : values.entrySet()){
+            addAll(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void set(String key, @Nullable String value){
+        int hash = CloneHeaderNames.hash(key);
+        int i = indexOf(key, hash);
+        if(i < 0){
+            append(key, hash, value);
+            return;
+        }
+        delete(i + 1, runEnd(i));
+        this.names[i] = CloneHeaderNames.intern(key, hash);
+        this.values[i] = value;
+    }
+
+    @Override
+    public void setAll(Map<String, String> values){
+        values.forEach(this::set);
+    }
+
+    @Override
+    public Map<String, String> toSingleValueMap(){
+        Map<String, String> singleValueMap = new LinkedHashMap<>(this.keys * 4 / 3 + 1);
+        for(int i = 0; i < this.size; i = runEnd(i)){
+            if(this.values[i] != NO_VALUES){
+                singleValueMap.put(this.names[i], this.values[i]);
+            }
+        }
+        return singleValueMap;
+    }
+
+    @Override
+    public int size(){
+        return this.keys;
+    }
+
+    @Override
+    public boolean isEmpty(){
+        return this.keys == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key){
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    @Nullable
+    public List<String> get(Object key){
+        int i = indexOf(key);
+        return (i >= 0 ? new Values(this.names[i], this.hashes[i], i) : null);
+    }
+
+    @Override
+    @Nullable
+    public List<String> put(String key, List<String> value){
+        int hash = CloneHeaderNames.hash(key);
+        int i = indexOf(key, hash);
+        if(i < 0){
+            addAll(key, value);
+            return null;
+        }
+        List<String> previous = copyOfRun(i);
+        replaceRun(i, key, hash, value);
+        return previous;
+    }
+
+    @Override
+    @Nullable
+    public List<String> remove(Object key){
+        int i = indexOf(key);
+        if(i < 0){
+            return null;
+        }
+        List<String> previous = copyOfRun(i);
+        delete(i, runEnd(i));
+        this.keys--;
+        return previous;
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends List<String>> map){
+        map.forEach(this::put);
+    }
+
+    @Override
+    public void clear(){
+        if(this.shared){
+            this.names = new String[this.names.length];
+            this.values = new String[this.names.length];
+            this.hashes = new int[this.names.length];
+            this.shared = false;
+        }
+        Arrays.fill(this.names, 0, this.size, null);
+        Arrays.fill(this.values, 0, this.size, null);
+        this.size = 0;
+        this.keys = 0;
+        this.modCount++;
+    }
+
+    void forEachHeader(BiConsumer<String, String> action){
+        int expectedModCount = this.modCount;
+        for(int i = 0; i < this.size; i++){
+            if(this.values[i] != NO_VALUES){
+                action.accept(this.names[i], this.values[i]);
+            }
+        }
+        if(this.modCount != expectedModCount){
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public Set<Entry<String, List<String>>> entrySet(){
+        return new AbstractSet<Entry<String, List<String>>>() {
+            @Override
+            public Iterator<Entry<String, List<String>>> iterator(){
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size(){
+                return keys;
+            }
+
+            @Override
+            public void clear(){
+                CloneArrayHeaderMap.this.clear();
+            }
+        };
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, List<String>>> {
+
+        private int next;
+
+        private int last = -1;
+
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext(){
+            return this.next < size;
+        }
+
+        @Override
+        public Entry<String, List<String>> next(){
+            if(modCount != this.expectedModCount){
+                throw new ConcurrentModificationException();
+            }
+            if(this.next >= size){
+                throw new NoSuchElementException();
+            }
+            int i = this.next;
+            this.last = i;
+            this.next = runEnd(i);
+            String name = names[i];
+            Values values = new Values(name, hashes[i], i);
+            return new SimpleEntry<String, List<String>>(name, values) {
+                @Override
+                public List<String> setValue(List<String> value){
+                    return put(name, value);
+                }
+            };
+        }
+
+        @Override
+        public void remove(){
+            if(this.last < 0){
+                throw new IllegalStateException();
+            }
+            if(modCount != this.expectedModCount){
+                throw new ConcurrentModificationException();
+            }
+            delete(this.last, this.next);
+            keys--;
+            this.next = this.last;
+            this.last = -1;
+            this.expectedModCount = modCount;
+        }
+    }
+
+    /*
+     * The values of one name. The position of the run is looked up again only
+     * after the map changed underneath; a name that was removed meanwhile has
+     * no values, and adding one puts the name back.
+     */
+    private final class Values extends AbstractList<String> implements RandomAccess {
+
+        private final String name;
+
+        private final int hash;
+
+        private int start;
+
+        private int count;
+
+        private int validFor;
+
+        Values(String name, int hash, int start){
+            this.name = name;
+            this.hash = hash;
+            this.start = start;
+            this.count = values[start] == NO_VALUES ? 0 : runEnd(start) - start;
+            this.validFor = CloneArrayHeaderMap.this.modCount;
+        }
+
+        private void locate(){
+            if(this.validFor == CloneArrayHeaderMap.this.modCount){
+                return;
+            }
+            this.start = CloneArrayHeaderMap.this.indexOf(this.name, this.hash);
+            this.count = this.start < 0 || values[this.start] == NO_VALUES ? 0 : runEnd(this.start) - this.start;
+            this.validFor = CloneArrayHeaderMap.this.modCount;
+        }
+
+        @Override
+        public String get(int index){
+            locate();
+            Objects.checkIndex(index, this.count);
+            return values[this.start + index];
+        }
+
+        @Override
+        public int size(){
+            locate();
+            return this.count;
+        }
+
+        @Override
+        public String set(int index, String value){
+            locate();
+            Objects.checkIndex(index, this.count);
+            own();
+            String previous = values[this.start + index];
+            values[this.start + index] = value;
+            return previous;
+        }
+
+        @Override
+        public void add(int index, String value){
+            locate();
+            Objects.checkIndex(index, this.count + 1);
+            if(this.start < 0){
+                append(this.name, this.hash, value);
+            }else if(this.count == 0){
+                own();
+                values[this.start] = value;
+                CloneArrayHeaderMap.this.modCount++;
+            }else{
+                insert(this.start + index, names[this.start], this.hash, value);
+            }
+            this.modCount++;
+        }
+
+        @Override
+        public String remove(int index){
+            locate();
+            Objects.checkIndex(index, this.count);
+            String previous = values[this.start + index];
+            if(this.count == 1){
+                // like an emptied LinkedMultiValueMap list, the name stays
+                own();
+                values[this.start] = NO_VALUES;
+                CloneArrayHeaderMap.this.modCount++;
+            }else{
+                delete(this.start + index, this.start + index + 1);
+            }
+            this.modCount++;
+            return previous;
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(this.size);
+        for(int i = 0; i < this.size; i++){
+            out.writeObject(this.names[i]);
+            out.writeBoolean(this.values[i] == NO_VALUES);
+            out.writeObject(this.values[i] == NO_VALUES ? null : this.values[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int size = in.readInt();
+        this.names = new String[Math.max(size, 4)];
+        this.values = new String[this.names.length];
+        this.hashes = new int[this.names.length];
+        for(int i = 0; i < size; i++){
+            String name = (String)in.readObject();
+            boolean noValues = in.readBoolean();
+            String value = (String)in.readObject();
+            int hash = CloneHeaderNames.hash(name);
+            if(i > 0 && this.hashes[i - 1] == hash && this.names[i - 1].equals(name)){
+                name = this.names[i - 1];
+            }else{
+                name = CloneHeaderNames.intern(name, hash);
+                this.keys++;
+            }
+            this.names[i] = name;
+            this.values[i] = noValues ? NO_VALUES : value;
+            this.hashes[i] = hash;
+        }
+        this.size = size;
+    }
+}
@@ -0,0 +1,285 @@
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Content negotiation against Accept and Accept-Language, for
+ * CloneHttpHeaders.negotiateContentType/negotiateLocale.
+ *
+ * Clients send the same few Accept strings over and over, so parsed headers
+ * are kept in small direct-mapped caches keyed by the raw value, with the
+ * ranges already in preference order. Each parsed header further remembers
+ * its best match for the last few producible sets it was asked about: those
+ * sets are compared by identity, so create them once (CloneMediaTypes.of,
+ * CloneLocales.of) and keep them, typically in a static final field.
+ *
+ * Cached entries are immutable and read and written without locks, as in
+ * CloneHttpDates: a lost race only means parsing or matching again.
+ */
+public final class CloneContentNegotiation {
+
+    private CloneContentNegotiation() {}
+
+    private static final int CACHE_SIZE = 256;       // power of two
+
+    private static final int MATCH_SLOTS = 4;        // power of two
+
+    // longer values are parsed every time rather than pushing out common ones
+    private static final int MAX_CACHED_LENGTH = 1024;
+
+    private static final CloneAccept[] acceptCache = new CloneAccept[CACHE_SIZE];
+    private static final CloneAcceptLanguage[] acceptLanguageCache = new CloneAcceptLanguage[CACHE_SIZE];
+
+    private static final CloneAccept ANY = new CloneAccept("");
+
+    // stands for "no match" in the match slots
+    private static final Object NONE = new Object();
+
+    /*
+     * The parsed Accept value; a missing header is the empty string, which
+     * accepts anything. Throws InvalidMediaTypeException like
+     * MediaType.parseMediaTypes, and invalid values are not cached.
+     */
+    public static CloneAccept accept(@Nullable String value){
+        if(value == null || value.isEmpty()){
+            return ANY;
+        }
+        if(value.length() > MAX_CACHED_LENGTH){
+            return new CloneAccept(value);
+        }
+        int slot = value.hashCode() & (CACHE_SIZE - 1);
+        CloneAccept entry = acceptCache[slot];
+        if(entry == null || !entry.value.equals(value)){
+            entry = new CloneAccept(value);
+            acceptCache[slot] = entry;
+        }
+        return entry;
+    }
+
+    // the parsed Accept-Language value, ranges in descending weight; throws IllegalArgumentException like Locale.LanguageRange.parse
+    public static CloneAcceptLanguage acceptLanguage(@Nullable String value){
+        String key = (value != null ? value : "");
+        if(key.length() > MAX_CACHED_LENGTH){
+            return new CloneAcceptLanguage(key);
+        }
+        int slot = key.hashCode() & (CACHE_SIZE - 1);
+        CloneAcceptLanguage entry = acceptLanguageCache[slot];
+        if(entry == null || !entry.value.equals(key)){
+            entry = new CloneAcceptLanguage(key);
+            acceptLanguageCache[slot] = entry;
+        }
+        return entry;
+    }
+
+    // server preference breaks ties between equally acceptable types
+    public static final class CloneMediaTypes {
+
+        private final MediaType[] mediaTypes;
+
+        private CloneMediaTypes(MediaType[] mediaTypes){
+            this.mediaTypes = mediaTypes;
+        }
+
+        public static CloneMediaTypes of(MediaType... mediaTypes){
+            Assert.noNullElements(mediaTypes, "MediaTypes must not contain null");
+            return new CloneMediaTypes(mediaTypes.clone());
+        }
+
+        public static CloneMediaTypes of(List<MediaType> mediaTypes){
+            return of(mediaTypes.toArray(new MediaType[0]));
+        }
+
+        public List<MediaType> getMediaTypes(){
+            return Collections.unmodifiableList(Arrays.asList(this.mediaTypes));
+        }
+    }
+
+    public static final class CloneLocales {
+
+        private final List<Locale> locales;
+
+        private CloneLocales(List<Locale> locales){
+            this.locales = locales;
+        }
+
+        public static CloneLocales of(Locale... locales){
+            Assert.noNullElements(locales, "Locales must not contain null");
+            return new CloneLocales(Collections.unmodifiableList(new ArrayList<>(Arrays.asList(locales))));
+        }
+
+        public static CloneLocales of(List<Locale> locales){
+            return of(locales.toArray(new Locale[0]));
+        }
+
+        public List<Locale> getLocales(){
+            return this.locales;
+        }
+    }
+
+    // immutable pair of a producible set and its best match, NONE for no match
+    private static final class Match {
+        final Object producible;
+        final Object result;
+
+        Match(Object producible, Object result){
+            this.producible = producible;
+            this.result = result;
+        }
+    }
+
+    @Nullable
+    private static Object lookup(Match[] matches, Object producible){
+        for(Match match : matches){
+            if(match != null && match.producible == producible){
+                return match.result;
+            }
+        }
+        return null;
+    }
+
+    public static final class CloneAccept {
+
+        final String value;
+
+        private final List<MediaType> mediaTypes;
+
+        // by quality, then specificity, as MediaType.sortByQualityValue
+        private final MediaType[] byPreference;
+
+        // specificity rank and quality of byPreference[i]
+        private final int[] specificity;
+        private final double[] quality;
+
+        private final Match[] matches = new Match[MATCH_SLOTS];
+        private int nextMatch;
+
+        private CloneAccept(String value){
+            this.value = value;
+            List<MediaType> mediaTypes = MediaType.parseMediaTypes(value);
+            this.mediaTypes = Collections.unmodifiableList(mediaTypes);
+
+            List<MediaType> sorted = new ArrayList<>(mediaTypes);
+            MediaType.sortByQualityValue(sorted);
+            this.byPreference = sorted.toArray(new MediaType[0]);
+            this.specificity = new int[this.byPreference.length];
+            this.quality = new double[this.byPreference.length];
+            for(int i = 0; i < this.byPreference.length; i++){
+                MediaType range = this.byPreference[i];
+                int params = range.getParameters().size() - (range.getParameter("q") != null ? 1 : 0);
+                this.specificity[i] = rank(range) + (range.isConcrete() ? params : 0);
+                this.quality[i] = range.getQualityValue();
+            }
+        }
+
+        // 0 for */*, 1 for type/*, 2 for a concrete type
+        private static int rank(MediaType mediaType){
+            return (mediaType.isWildcardType() ? 0 : mediaType.isWildcardSubtype() ? 1 : 2);
+        }
+
+        // in header order, as HttpHeaders.getAccept
+        public List<MediaType> getMediaTypes(){
+            return this.mediaTypes;
+        }
+
+        public List<MediaType> getMediaTypesByPreference(){
+            return Collections.unmodifiableList(Arrays.asList(this.byPreference));
+        }
+
+        /*
+         * The producible type the client prefers, or null if it accepts none
+         * of them. A producible type gets the quality of the most specific
+         * range that matches it, so "text/html;q=0" rules out HTML even next
+         * to a full wildcard;
+         * among equal qualities the client's order wins, then the server's.
+         * Wildcard producible types are narrowed to the matching range.
+         */
+        @Nullable
+        public MediaType bestMatch(CloneMediaTypes producible){
+            Object result = lookup(this.matches, producible);
+            if(result == null){
+                MediaType match = match(producible.mediaTypes);
+                result = (match != null ? match : NONE);
+                this.matches[this.nextMatch++ & (MATCH_SLOTS - 1)] = new Match(producible, result);
+            }
+            return (result != NONE ? (MediaType) result : null);
+        }
+
+        @Nullable
+        private MediaType match(MediaType[] producible){
+            if(this.byPreference.length == 0){
+                return (producible.length > 0 ? producible[0] : null);
+            }
+            MediaType best = null;
+            double bestQuality = 0;
+            int bestRange = Integer.MAX_VALUE;
+            for(MediaType candidate : producible){
+                int range = -1;
+                for(int i = 0; i < this.byPreference.length; i++){
+                    if(this.byPreference[i].isCompatibleWith(candidate) &&
+                            (range < 0 || this.specificity[i] > this.specificity[range])){
+                        range = i;
+                    }
+                }
+                if(range >= 0 && this.quality[range] > 0 &&
+                        (this.quality[range] > bestQuality || this.quality[range] == bestQuality && range < bestRange)){
+                    best = candidate;
+                    bestQuality = this.quality[range];
+                    bestRange = range;
+                }
+            }
+            if(best != null && !best.isConcrete() && this.specificity[bestRange] > rank(best)){
+                return this.byPreference[bestRange].removeQualityValue();
+            }
+            return best;
+        }
+    }
+
+    public static final class CloneAcceptLanguage {
+
+        final String value;
+
+        private final List<Locale.LanguageRange> ranges;
+
+        private final Match[] matches = new Match[MATCH_SLOTS];
+        private int nextMatch;
+
+        private CloneAcceptLanguage(String value){
+            this.value = value;
+            this.ranges = (StringUtils.hasText(value) ?
+                    Collections.unmodifiableList(Locale.LanguageRange.parse(value)) : Collections.emptyList());
+        }
+
+        // by descending weight, as Locale.LanguageRange.parse
+        public List<Locale.LanguageRange> getLanguageRanges(){
+            return this.ranges;
+        }
+
+        // the first supported locale matching the most preferred range (RFC 4647 filtering), the first supported one without a header
+        @Nullable
+        public Locale bestMatch(CloneLocales supported){
+            Object result = lookup(this.matches, supported);
+            if(result == null){
+                Locale match = match(supported.locales);
+                result = (match != null ? match : NONE);
+                this.matches[this.nextMatch++ & (MATCH_SLOTS - 1)] = new Match(supported, result);
+            }
+            return (result != NONE ? (Locale) result : null);
+        }
+
+        @Nullable
+        private Locale match(List<Locale> supported){
+            if(this.ranges.isEmpty()){
+                return (supported.isEmpty() ? null : supported.get(0));
+            }
+            List<Locale> matches = Locale.filter(this.ranges, supported);
+            return (matches.isEmpty() ? null : matches.get(0));
+        }
+    }
+}
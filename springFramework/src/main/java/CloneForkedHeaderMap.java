@@ -0,0 +1,409 @@
+import org.springframework.lang.Nullable;
+import org.springframework.util.MultiValueMap;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/*
+ * Header storage for CloneHttpHeaders.fork(): the headers of the source,
+ * which nobody changes any more (received CloneWireHeaders or a
+ * CloneArrayHeaderMap snapshot), with the names changed since kept on top.
+ *
+ * A name touched by add/set/put/remove is hidden in the base and, unless it
+ * was removed, held in full in a small CloneArrayHeaderMap of changes, so a
+ * fork costs nothing up front and every change costs as much as that one
+ * name. Lookups check the changes first, which is why this suits forks that
+ * change a few headers, as proxies do, and not ones rewritten wholesale.
+ *
+ * Iteration keeps the order of the base, changed names where they were,
+ * followed by the names that are new. get() on an unchanged name returns a
+ * view that copies the name's values into the changes on the first write.
+ */
+final class CloneForkedHeaderMap extends AbstractMap<String, List<String>>
+        implements MultiValueMap<String, String>, Serializable {
+
+    private static final long serialVersionUID = -2871542650733591213L;
+
+    // never written to
+    private MultiValueMap<String, String> base;
+
+    private final CloneArrayHeaderMap changes;
+
+    // names of the base that are changed or removed
+    private final List<String> hidden;
+
+    CloneForkedHeaderMap(MultiValueMap<String, String> base){
+        this.base = base;
+        this.changes = new CloneArrayHeaderMap(4);
+        this.hidden = new ArrayList<>(4);
+    }
+
+    private CloneForkedHeaderMap(CloneForkedHeaderMap source){
+        this.base = source.base;
+        this.changes = source.changes.snapshot();
+        this.hidden = new ArrayList<>(source.hidden);
+    }
+
+    // another fork of the same base, with a snapshot of the changes
+    CloneForkedHeaderMap fork(){
+        return new CloneForkedHeaderMap(this);
+    }
+
+    private boolean isHidden(Object key){
+        if(key instanceof String){
+            for(int i = 0; i < this.hidden.size(); i++){
+                if(CloneHeaderNames.sameName(this.hidden.get(i), (String) key)){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean inBase(Object key){
+        return !isHidden(key) && this.base.containsKey(key);
+    }
+
+    // from now on the name lives in the changes, with its base values if keepValues
+    private void shadow(String key, boolean keepValues){
+        if(inBase(key)){
+            if(keepValues){
+                this.changes.addAll(key, this.base.get(key));
+            }
+            this.hidden.add(key);
+        }
+    }
+
+    // values of the name as a list of their own
+    @Nullable
+    private List<String> copyOf(Object key){
+        List<String> values = get(key);
+        return (values != null ? new ArrayList<>(values) : null);
+    }
+
+    // a view of this map would change while its values are copied in
+    private static List<? extends String> detach(List<? extends String> values){
+        return (values instanceof ForkValues ? new ArrayList<>(values) : values);
+    }
+
+    @Override
+    @Nullable
+    public String getFirst(String key){
+        if(this.changes.containsKey(key)){
+            return this.changes.getFirst(key);
+        }
+        return (isHidden(key) ? null : this.base.getFirst(key));
+    }
+
+    @Override
+    public void add(String key, @Nullable String value){
+        shadow(key, true);
+        this.changes.add(key, value);
+    }
+
+    @Override
+    public void addAll(String key, List<? extends String> values){
+        values = detach(values);
+        shadow(key, true);
+        this.changes.addAll(key, values);
+    }
+
+    @Override
+    public void addAll(MultiValueMap<String, String> values){
+        for(Entry<String, List<String>> entry : values.entrySet()){
+            addAll(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void set(String key, @Nullable String value){
+        shadow(key, false);
+        this.changes.set(key, value);
+    }
+
+    @Override
+    public void setAll(Map<String, String> values){
+        values.forEach(this::set);
+    }
+
+    @Override
+    public Map<String, String> toSingleValueMap(){
+        Map<String, String> singleValueMap = new LinkedHashMap<>(size() * 4 / 3 + 1);
+        for(Entry<String, List<String>> entry : entrySet()){
+            List<String> values = entry.getValue();
+            if(!values.isEmpty()){
+                singleValueMap.put(entry.getKey(), values.get(0));
+            }
+        }
+        return singleValueMap;
+    }
+
+    @Override
+    public int size(){
+        return this.base.size() - this.hidden.size() + this.changes.size();
+    }
+
+    @Override
+    public boolean isEmpty(){
+        return size() == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key){
+        return this.changes.containsKey(key) || inBase(key);
+    }
+
+    @Override
+    @Nullable
+    public List<String> get(Object key){
+        if(this.changes.containsKey(key)){
+            return this.changes.get(key);
+        }
+        return (inBase(key) ? new ForkValues((String) key) : null);
+    }
+
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public List<String> put(String key, List<String> value){
+        value = (List<String>) detach(value);
+        List<String> previous = copyOf(key);
+        shadow(key, false);
+        this.changes.put(key, value);
+        return previous;
+    }
+
+    @Override
+    @Nullable
+    public List<String> remove(Object key){
+        List<String> previous = copyOf(key);
+        if(previous != null){
+            this.changes.remove(key);
+            shadow((String) key, false);
+        }
+        return previous;
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends List<String>> map){
+        map.forEach(this::put);
+    }
+
+    @Override
+    public void clear(){
+        this.base = new CloneArrayHeaderMap(0);
+        this.changes.clear();
+        this.hidden.clear();
+    }
+
+    void forEachHeader(BiConsumer<String, String> action){
+        if(this.hidden.isEmpty()){
+            CloneHttpHeaders.forEachHeader(this.base, action);
+        }else{
+            // the base lists each name's values together, changed names are swapped in at the first one
+            CloneHttpHeaders.forEachHeader(this.base, new BiConsumer<String, String>() {
+                @Nullable
+                private String last;
+                private boolean skip;
+
+                @Override
+                public void accept(String name, String value){
+                    if(name != this.last && (this.last == null || !CloneHeaderNames.sameName(name, this.last))){
+                        this.last = name;
+                        this.skip = isHidden(name);
+                        List<String> changed = (this.skip ? changes.get(name) : null);
+                        if(changed != null){
+                            for(int i = 0; i < changed.size(); i++){
+                                action.accept(name, changed.get(i));
+                            }
+                        }
+                    }
+                    if(!this.skip){
+                        action.accept(name, value);
+                    }
+                }
+            });
+        }
+        // and names the base had without values, which it didn't list
+        this.changes.forEachHeader((name, value) -> {
+            if(!isHidden(name) || this.base.get(name).isEmpty()){
+                action.accept(name, value);
+            }
+        });
+    }
+
+    @Override
+    public Set<Entry<String, List<String>>> entrySet(){
+        return new AbstractSet<Entry<String, List<String>>>() {
+            @Override
+            public Iterator<Entry<String, List<String>>> iterator(){
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size(){
+                return CloneForkedHeaderMap.this.size();
+            }
+
+            @Override
+            public void clear(){
+                CloneForkedHeaderMap.this.clear();
+            }
+        };
+    }
+
+    /*
+     * The names of the base that are still there, then the names that are new
+     * in the changes, as they were when the base was done: whatever the entries
+     * are used for meanwhile, neither list changes under the iterator.
+     */
+    private final class EntryIterator implements Iterator<Entry<String, List<String>>> {
+
+        private final Iterator<String> baseNames = base.keySet().iterator();
+
+        @Nullable
+        private List<String> newNames;
+
+        private int nextNewName;
+
+        @Nullable
+        private Entry<String, List<String>> next;
+
+        @Nullable
+        private String last;
+
+        @Nullable
+        private Entry<String, List<String>> advance(){
+            while(this.newNames == null && this.baseNames.hasNext()){
+                String name = this.baseNames.next();
+                if(!isHidden(name)){
+                    return entry(name, new ForkValues(name));
+                }
+                List<String> values = changes.get(name);
+                if(values != null){
+                    return entry(name, values);
+                }
+            }
+            if(this.newNames == null){
+                this.newNames = new ArrayList<>(changes.size());
+                for(String name : changes.keySet()){
+                    if(!isHidden(name)){
+                        this.newNames.add(name);
+                    }
+                }
+            }
+            while(this.nextNewName < this.newNames.size()){
+                String name = this.newNames.get(this.nextNewName++);
+                List<String> values = changes.get(name);
+                if(values != null){
+                    return entry(name, values);
+                }
+            }
+            return null;
+        }
+
+        private Entry<String, List<String>> entry(String name, List<String> values){
+            return new SimpleEntry<String, List<String>>(name, values) {
+                @Override
+                public List<String> setValue(List<String> value){
+                    return put(name, value);
+                }
+            };
+        }
+
+        @Override
+        public boolean hasNext(){
+            if(this.next == null){
+                this.next = advance();
+            }
+            return this.next != null;
+        }
+
+        @Override
+        public Entry<String, List<String>> next(){
+            if(!hasNext()){
+                throw new NoSuchElementException();
+            }
+            Entry<String, List<String>> next = this.next;
+            this.next = null;
+            this.last = next.getKey();
+            return next;
+        }
+
+        @Override
+        public void remove(){
+            if(this.last == null){
+                throw new IllegalStateException();
+            }
+            CloneForkedHeaderMap.this.remove(this.last);
+            this.last = null;
+        }
+    }
+
+    // the values of a name still in the base, copied into the changes when written
+    private final class ForkValues extends AbstractList<String> implements RandomAccess {
+
+        private final String name;
+
+        private final List<String> baseValues;
+
+        ForkValues(String name){
+            this.name = name;
+            this.baseValues = base.get(name);
+        }
+
+        private List<String> read(){
+            if(!isHidden(this.name)){
+                return this.baseValues;
+            }
+            List<String> changed = changes.get(this.name);
+            return (changed != null ? changed : Collections.emptyList());
+        }
+
+        private List<String> write(){
+            shadow(this.name, true);
+            if(!changes.containsKey(this.name)){
+                changes.put(this.name, new ArrayList<>(0));
+            }
+            return changes.get(this.name);
+        }
+
+        @Override
+        public String get(int index){
+            return read().get(index);
+        }
+
+        @Override
+        public int size(){
+            return read().size();
+        }
+
+        @Override
+        public String set(int index, String value){
+            return write().set(index, value);
+        }
+
+        @Override
+        public void add(int index, String value){
+            write().add(index, value);
+            this.modCount++;
+        }
+
+        @Override
+        public String remove(int index){
+            String previous = write().remove(index);
+            this.modCount++;
+            return previous;
+        }
+    }
+
+    // serialized as a plain copy, the base stays behind
+    private Object writeReplace(){
+        CloneArrayHeaderMap copy = new CloneArrayHeaderMap(size());
+        for(Entry<String, List<String>> entry : entrySet()){
+            copy.addAll(entry.getKey(), entry.getValue());
+        }
+        return copy;
+    }
+}
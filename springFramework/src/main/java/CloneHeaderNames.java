@@ -0,0 +1,148 @@
+import org.springframework.lang.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * The header names CloneHttpHeaders has constants for, and the
+ * case-insensitive treatment of names shared by the array-backed store and
+ * the wire formats.
+ */
+final class CloneHeaderNames {
+
+    private CloneHeaderNames() {}
+
+    static final String[] KNOWN = {
+            CloneHttpHeaders.ACCEPT, CloneHttpHeaders.ACCEPT_CHARSET, CloneHttpHeaders.ACCEPT_ENCODING,
+            CloneHttpHeaders.ACCEPT_LANGUAGE, CloneHttpHeaders.ACCEPT_PATCH, CloneHttpHeaders.ACCEPT_RANGES,
+            CloneHttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, CloneHttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS,
+            CloneHttpHeaders.ACCESS_CONTROL_ALLOW_METHODS, CloneHttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN,
+            CloneHttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, CloneHttpHeaders.ACCESS_CONTROL_MAX_AGE,
+            CloneHttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS, CloneHttpHeaders.ACCESS_CONTROL_REQUEST_METHOD,
+            CloneHttpHeaders.AGE, CloneHttpHeaders.ALLOW, CloneHttpHeaders.AUTHORIZATION,
+            CloneHttpHeaders.CACHE_CONTROL, CloneHttpHeaders.CONNECTION, CloneHttpHeaders.CONTENT_ENCODING,
+            CloneHttpHeaders.CONTENT_DISPOSITION, CloneHttpHeaders.CONTENT_LANGUAGE, CloneHttpHeaders.CONTENT_LENGTH,
+            CloneHttpHeaders.CONTENT_LOCATION, CloneHttpHeaders.CONTENT_RANGE, CloneHttpHeaders.CONTENT_TYPE,
+            CloneHttpHeaders.COOKIE, CloneHttpHeaders.DATE, CloneHttpHeaders.ETAG, CloneHttpHeaders.EXPECT,
+            CloneHttpHeaders.EXPIRES, CloneHttpHeaders.FROM, CloneHttpHeaders.HOST, CloneHttpHeaders.IF_MATCH,
+            CloneHttpHeaders.IF_MODIFIED_SINCE, CloneHttpHeaders.IF_NONE_MATCH, CloneHttpHeaders.IF_RANGE,
+            CloneHttpHeaders.IF_UNMODIFIED_SINCE, CloneHttpHeaders.LAST_MODIFIED, CloneHttpHeaders.LINK,
+            CloneHttpHeaders.LOCATION, CloneHttpHeaders.MAX_FORWARDS, CloneHttpHeaders.ORIGIN,
+            CloneHttpHeaders.PRAGMA, CloneHttpHeaders.PROXY_AUTHENTICATE, CloneHttpHeaders.PROXY_AUTHORIZATION,
+            CloneHttpHeaders.RANGE, CloneHttpHeaders.REFERER, CloneHttpHeaders.RETRY_AFTER,
+            CloneHttpHeaders.SERVER, CloneHttpHeaders.SET_COOKIE, CloneHttpHeaders.SET_COOKIE2,
+            CloneHttpHeaders.TE, CloneHttpHeaders.TRAILER, CloneHttpHeaders.TRANSFER_ENCODING,
+            CloneHttpHeaders.UPGRADE, CloneHttpHeaders.USER_AGENT, CloneHttpHeaders.VARY, CloneHttpHeaders.VIA,
+            CloneHttpHeaders.WARNING, CloneHttpHeaders.WWW_AUTHENTICATE
+    };
+
+    // open addressing on hash(name), at most a quarter full
+    private static final String[] KNOWN_TABLE = new String[256];
+
+    // "Name: " in ASCII for every known name, looked up by identity
+    private static final Map<String, byte[]> LINE_PREFIXES = new IdentityHashMap<>(KNOWN.length * 2);
+
+    static {
+        for(String name : KNOWN){
+            LINE_PREFIXES.put(name, encodeLinePrefix(name));
+
+            int slot = hash(name) & (KNOWN_TABLE.length - 1);
+            while(KNOWN_TABLE[slot] != null){
+                slot = (slot + 1) & (KNOWN_TABLE.length - 1);
+            }
+            KNOWN_TABLE[slot] = name;
+        }
+    }
+
+    /*
+     * Names are compared like LinkedCaseInsensitiveMap does, by their
+     * toLowerCase(Locale.ENGLISH) form, which is only built for the (invalid)
+     * names that are not plain ASCII.
+     */
+    static int hash(String name){
+        int h = 0;
+        for(int i = 0; i < name.length(); i++){
+            int c = name.charAt(i);
+            if(c >= 0x80){
+                return name.toLowerCase(Locale.ENGLISH).hashCode();
+            }
+            h = 31 * h + lowerCase(c);
+        }
+        return h;
+    }
+
+    static boolean sameName(String a, String b){
+        int n = Math.min(a.length(), b.length());
+        for(int i = 0; i < n; i++){
+            int ca = a.charAt(i);
+            int cb = b.charAt(i);
+            if((ca | cb) >= 0x80){
+                return a.toLowerCase(Locale.ENGLISH).equals(b.toLowerCase(Locale.ENGLISH));
+            }
+            if(ca != cb && lowerCase(ca) != lowerCase(cb)){
+                return false;
+            }
+        }
+        // lowercasing never shortens a name, so an ASCII prefix can't catch up with the rest
+        return a.length() == b.length();
+    }
+
+    static int lowerCase(int c){
+        return (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+    }
+
+    static String intern(String name, int hash){
+        int slot = hash & (KNOWN_TABLE.length - 1);
+        String known;
+        while((known = KNOWN_TABLE[slot]) != null){
+            if(known.equals(name)){
+                return known;
+            }
+            slot = (slot + 1) & (KNOWN_TABLE.length - 1);
+        }
+        return name;
+    }
+
+    // the constant spelled like bytes [start, end) of the buffer in any case, or null
+    @Nullable
+    static String knownName(ByteBuffer buffer, int start, int end, int hash){
+        int slot = hash & (KNOWN_TABLE.length - 1);
+        String known;
+        while((known = KNOWN_TABLE[slot]) != null){
+            if(known.length() == end - start && matchesAscii(known, buffer, start)){
+                return known;
+            }
+            slot = (slot + 1) & (KNOWN_TABLE.length - 1);
+        }
+        return null;
+    }
+
+    // name against the ASCII bytes at start, ignoring case; false for a name that isn't ASCII either
+    static boolean matchesAscii(String name, ByteBuffer buffer, int start){
+        for(int i = 0; i < name.length(); i++){
+            int c = name.charAt(i);
+            int b = buffer.get(start + i);
+            if(c != b && (c >= 0x80 || lowerCase(c) != lowerCase(b))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static byte[] encodeLinePrefix(String name){
+        byte[] prefix = new byte[name.length() + 2];
+        name.getBytes(0, name.length(), prefix, 0);
+        prefix[name.length()] = ':';
+        prefix[name.length() + 1] = ' ';
+        return prefix;
+    }
+
+    // the pre-encoded "Name: " of a constant, null for any other name
+    @Nullable
+    static byte[] linePrefix(String name){
+        return LINE_PREFIXES.get(name);
+    }
+}
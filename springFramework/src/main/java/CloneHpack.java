@@ -0,0 +1,609 @@
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.lang.Nullable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+
+/*
+ * HPACK-style compression of CloneHttpHeaders for a framed connection:
+ * header blocks use the representations of RFC 7541 (indexed fields,
+ * literals with or without indexing, table size updates, prefixed integers,
+ * optionally Huffman-coded strings), against
+ *
+ * - a static table of the CloneHttpHeaders name constants, indices 1 to 61,
+ *   names only;
+ * - a dynamic table of recently sent name/value pairs, evicted oldest first
+ *   once its RFC 7541 size (name + value + 32 per entry) passes the limit.
+ *
+ * The tables and the Huffman code are not the ones of RFC 7541, so this is
+ * not HTTP/2 HPACK: both ends must be CloneHpack. The Huffman code is a
+ * canonical code built at class loading from fixed weights for header text.
+ *
+ * An encoder and a decoder are a pair for one direction of one connection:
+ * blocks must be decoded in the order they were encoded, and neither is
+ * thread-safe. Repeated header sets come down to about a byte per header.
+ */
+public class CloneHpack {
+
+    private CloneHpack() {}
+
+    public static final int DEFAULT_TABLE_SIZE = 4096;
+
+    // RFC 7541 4.1
+    private static final int ENTRY_OVERHEAD = 32;
+
+    private static final String[] STATIC_NAMES = CloneHeaderNames.KNOWN;
+
+    private static final Map<String, Integer> STATIC_INDEX = new HashMap<>(STATIC_NAMES.length * 2);
+    static {
+        for(int i = 0; i < STATIC_NAMES.length; i++){
+            STATIC_INDEX.put(STATIC_NAMES[i], i + 1);
+        }
+    }
+
+    public static CloneEncoder newEncoder(){
+        return new CloneEncoder(DEFAULT_TABLE_SIZE);
+    }
+
+    public static CloneEncoder newEncoder(int maxTableSize){
+        return new CloneEncoder(maxTableSize);
+    }
+
+    public static CloneDecoder newDecoder(){
+        return new CloneDecoder(DEFAULT_TABLE_SIZE);
+    }
+
+    // maxTableSize is the largest table the encoder is allowed to ask for
+    public static CloneDecoder newDecoder(int maxTableSize){
+        return new CloneDecoder(maxTableSize);
+    }
+
+    private static int entrySize(String name, String value){
+        return name.length() + value.length() + ENTRY_OVERHEAD;
+    }
+
+    // the dynamic table as a ring, index 1 being the newest entry
+    private static final class DynamicTable {
+
+        private String[] names;
+        private String[] values;
+
+        // slot of the newest entry, number of entries and their total size
+        private int head = -1;
+        private int count;
+        private int size;
+
+        private int maxSize;
+
+        DynamicTable(int maxSize){
+            this.maxSize = maxSize;
+            this.names = new String[capacity(maxSize)];
+            this.values = new String[this.names.length];
+        }
+
+        // no entry is smaller than its overhead
+        private static int capacity(int maxSize){
+            return maxSize / ENTRY_OVERHEAD + 1;
+        }
+
+        int length(){
+            return this.count;
+        }
+
+        private int slot(int index){
+            int slot = this.head - (index - 1);
+            return (slot < 0 ? slot + this.names.length : slot);
+        }
+
+        String name(int index){
+            return this.names[slot(index)];
+        }
+
+        String value(int index){
+            return this.values[slot(index)];
+        }
+
+        void add(String name, String value){
+            int entrySize = entrySize(name, value);
+            if(entrySize > this.maxSize){
+                // RFC 7541 4.4: an entry larger than the table empties it
+                evict(0);
+                return;
+            }
+            evict(this.maxSize - entrySize);
+            this.head = (this.head + 1) % this.names.length;
+            this.names[this.head] = name;
+            this.values[this.head] = value;
+            this.count++;
+            this.size += entrySize;
+        }
+
+        void setMaxSize(int maxSize){
+            evict(maxSize);
+            if(capacity(maxSize) != this.names.length){
+                String[] names = new String[capacity(maxSize)];
+                String[] values = new String[names.length];
+                for(int index = this.count; index >= 1; index--){
+                    names[this.count - index] = name(index);
+                    values[this.count - index] = value(index);
+                }
+                this.names = names;
+                this.values = values;
+                this.head = this.count - 1;
+            }
+            this.maxSize = maxSize;
+        }
+
+        // drops the oldest entries until the table is no larger than size
+        private void evict(int size){
+            while(this.size > size){
+                int slot = slot(this.count);
+                this.size -= entrySize(this.names[slot], this.values[slot]);
+                this.names[slot] = null;
+                this.values[slot] = null;
+                this.count--;
+            }
+            if(this.count == 0){
+                this.head = -1;
+            }
+        }
+    }
+
+    public static class CloneEncoder {
+
+        private final DynamicTable table;
+
+        // the smallest size and the final size asked for since the last block, -1 if unchanged
+        private int smallestPendingSize = -1;
+        private int pendingSize = -1;
+
+        private byte[] out = new byte[256];
+        private int length;
+
+        private final BiConsumer<String, String> encodeHeader = this::encodeHeader;
+
+        private CloneEncoder(int maxTableSize){
+            if(maxTableSize < 0){
+                throw new IllegalArgumentException("Illegal table size: " + maxTableSize);
+            }
+            this.table = new DynamicTable(maxTableSize);
+        }
+
+        // takes effect with the next block, which tells the decoder first
+        public void setMaxTableSize(int maxTableSize){
+            if(maxTableSize < 0){
+                throw new IllegalArgumentException("Illegal table size: " + maxTableSize);
+            }
+            this.smallestPendingSize = (this.smallestPendingSize < 0 ?
+                    maxTableSize : Math.min(this.smallestPendingSize, maxTableSize));
+            this.pendingSize = maxTableSize;
+        }
+
+        public byte[] encode(CloneHttpHeaders headers){
+            encode0(headers);
+            return Arrays.copyOf(this.out, this.length);
+        }
+
+        public void encode(CloneHttpHeaders headers, DataBuffer buffer){
+            encode0(headers);
+            buffer.write(this.out, 0, this.length);
+        }
+
+        // null values have no wire form and are left out, as in CloneHttpHeaders.writeTo
+        private void encode0(CloneHttpHeaders headers){
+            this.length = 0;
+            if(this.pendingSize >= 0){
+                if(this.smallestPendingSize < this.pendingSize){
+                    this.table.setMaxSize(this.smallestPendingSize);
+                    writeInt(0x20, 5, this.smallestPendingSize);
+                }
+                this.table.setMaxSize(this.pendingSize);
+                writeInt(0x20, 5, this.pendingSize);
+                this.smallestPendingSize = -1;
+                this.pendingSize = -1;
+            }
+            headers.forEachHeader(this.encodeHeader);
+        }
+
+        private void encodeHeader(String name, @Nullable String value){
+            if(value == null){
+                return;
+            }
+            DynamicTable table = this.table;
+            int nameIndex = -1;
+            for(int index = 1; index <= table.length(); index++){
+                if(name.equals(table.name(index))){
+                    if(value.equals(table.value(index))){
+                        writeInt(0x80, 7, STATIC_NAMES.length + index);
+                        return;
+                    }
+                    if(nameIndex < 0){
+                        nameIndex = STATIC_NAMES.length + index;
+                    }
+                }
+            }
+            Integer staticIndex = STATIC_INDEX.get(name);
+            if(staticIndex != null){
+                nameIndex = staticIndex;
+            }
+
+            boolean indexed = entrySize(name, value) <= table.maxSize;
+            if(indexed){
+                writeInt(0x40, 6, Math.max(nameIndex, 0));
+            }else{
+                writeInt(0x00, 4, Math.max(nameIndex, 0));
+            }
+            if(nameIndex < 0){
+                writeString(name);
+            }
+            writeString(value);
+            if(indexed){
+                table.add(name, value);
+            }
+        }
+
+        private void ensure(int room){
+            if(this.length + room > this.out.length){
+                this.out = Arrays.copyOf(this.out, Math.max(this.out.length * 2, this.length + room));
+            }
+        }
+
+        // RFC 7541 5.1, flags in the bits above the prefix
+        private void writeInt(int flags, int prefixBits, int value){
+            ensure(6);
+            int max = (1 << prefixBits) - 1;
+            if(value < max){
+                this.out[this.length++] = (byte)(flags | value);
+                return;
+            }
+            this.out[this.length++] = (byte)(flags | max);
+            value -= max;
+            while(value >= 0x80){
+                this.out[this.length++] = (byte)(value & 0x7f | 0x80);
+                value >>>= 7;
+            }
+            this.out[this.length++] = (byte)value;
+        }
+
+        // RFC 7541 5.2, Huffman coded when that is shorter; chars beyond ISO-8859-1 become '?'
+        private void writeString(String s){
+            int huffmanLength = Huffman.encodedLength(s);
+            if(huffmanLength < s.length()){
+                writeInt(0x80, 7, huffmanLength);
+                ensure(huffmanLength);
+                this.length = Huffman.encode(s, this.out, this.length);
+            }else{
+                writeInt(0x00, 7, s.length());
+                ensure(s.length());
+                for(int i = 0; i < s.length(); i++){
+                    char c = s.charAt(i);
+                    this.out[this.length++] = (c > 0xff ? (byte)'?' : (byte)c);
+                }
+            }
+        }
+    }
+
+    public static class CloneDecoder {
+
+        private final DynamicTable table;
+
+        private final int maxTableSize;
+
+        private byte[] scratch = new byte[256];
+
+        private CloneDecoder(int maxTableSize){
+            if(maxTableSize < 0){
+                throw new IllegalArgumentException("Illegal table size: " + maxTableSize);
+            }
+            this.maxTableSize = maxTableSize;
+            this.table = new DynamicTable(maxTableSize);
+        }
+
+        public CloneHttpHeaders decode(byte[] block){
+            return decode(ByteBuffer.wrap(block));
+        }
+
+        public CloneHttpHeaders decode(DataBuffer buffer){
+            ByteBuffer block = buffer.asByteBuffer();
+            CloneHttpHeaders headers = decode(block);
+            buffer.readPosition(buffer.readPosition() + block.position());
+            return headers;
+        }
+
+        /*
+         * The whole remaining block. A broken block throws
+         * IllegalArgumentException, after which the table no longer matches
+         * the encoder's and the connection should be given up.
+         */
+        public CloneHttpHeaders decode(ByteBuffer block){
+            CloneHttpHeaders headers = CloneHttpHeaders.arrayBacked();
+            try{
+                while(block.hasRemaining()){
+                    int b = block.get(block.position()) & 0xff;
+                    if((b & 0x80) != 0){
+                        int index = readInt(block, 7);
+                        headers.add(name(index), value(index));
+                    }else if((b & 0x40) != 0){
+                        int index = readInt(block, 6);
+                        String name = (index == 0 ? readString(block) : name(index));
+                        String value = readString(block);
+                        this.table.add(name, value);
+                        headers.add(name, value);
+                    }else if((b & 0x20) != 0){
+                        if(!headers.isEmpty()){
+                            throw new IllegalArgumentException("Table size update after a header field");
+                        }
+                        int size = readInt(block, 5);
+                        if(size > this.maxTableSize){
+                            throw new IllegalArgumentException(
+                                    "Table size " + size + " over the limit of " + this.maxTableSize);
+                        }
+                        this.table.setMaxSize(size);
+                    }else{
+                        // without indexing (0000) and never indexed (0001) alike
+                        int index = readInt(block, 4);
+                        String name = (index == 0 ? readString(block) : name(index));
+                        headers.add(name, readString(block));
+                    }
+                }
+            }catch(BufferUnderflowException ex){
+                throw new IllegalArgumentException("Truncated header block");
+            }
+            return headers;
+        }
+
+        private void checkIndex(int index){
+            if(index < 1 || index > STATIC_NAMES.length + this.table.length()){
+                throw new IllegalArgumentException("Illegal table index " + index);
+            }
+        }
+
+        private String name(int index){
+            checkIndex(index);
+            return (index <= STATIC_NAMES.length ? STATIC_NAMES[index - 1] : this.table.name(index - STATIC_NAMES.length));
+        }
+
+        private String value(int index){
+            checkIndex(index);
+            if(index <= STATIC_NAMES.length){
+                throw new IllegalArgumentException("Static table entry " + index + " has no value");
+            }
+            return this.table.value(index - STATIC_NAMES.length);
+        }
+
+        private static int readInt(ByteBuffer block, int prefixBits){
+            int max = (1 << prefixBits) - 1;
+            int value = block.get() & max;
+            if(value < max){
+                return value;
+            }
+            for(int shift = 0; ; shift += 7){
+                int b = block.get();
+                // the fifth octet may add four bits at most and must end the integer
+                if(shift == 28 && (b & 0xf8) != 0){
+                    throw new IllegalArgumentException("Integer overflow in header block");
+                }
+                value += (b & 0x7f) << shift;
+                if(value < 0){
+                    throw new IllegalArgumentException("Integer overflow in header block");
+                }
+                if((b & 0x80) == 0){
+                    return value;
+                }
+            }
+        }
+
+        private String readString(ByteBuffer block){
+            if(!block.hasRemaining()){
+                throw new BufferUnderflowException();
+            }
+            boolean huffman = (block.get(block.position()) & 0x80) != 0;
+            int length = readInt(block, 7);
+            if(length > block.remaining()){
+                throw new BufferUnderflowException();
+            }
+            if(!huffman){
+                String s;
+                if(block.hasArray()){
+                    s = new String(block.array(), block.arrayOffset() + block.position(), length, StandardCharsets.ISO_8859_1);
+                }else{
+                    byte[] bytes = new byte[length];
+                    block.get(block.position(), bytes);
+                    s = new String(bytes, StandardCharsets.ISO_8859_1);
+                }
+                block.position(block.position() + length);
+                return s;
+            }
+            int maxLength = Huffman.maxDecodedLength(length);
+            if(this.scratch.length < maxLength){
+                this.scratch = new byte[Math.max(maxLength, this.scratch.length * 2)];
+            }
+            int decoded = Huffman.decode(block, length, this.scratch);
+            return new String(this.scratch, 0, decoded, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /*
+     * Canonical Huffman code over the 256 octets plus an EOS symbol that is
+     * never sent, as in RFC 7541. Weights favour what header values are made
+     * of (lowercase text, digits, separators) so that typical values shrink
+     * by about a third; the rest of the octets get long codes.
+     */
+    static final class Huffman {
+
+        private Huffman() {}
+
+        private static final int SYMBOLS = 257;
+
+        private static final int[] CODES = new int[SYMBOLS];
+        private static final int[] LENGTHS = new int[SYMBOLS];
+
+        private static final int MIN_LENGTH;
+        private static final int MAX_LENGTH;
+
+        // canonical decoding: first code and number of codes of each length, symbols by (length, symbol)
+        private static final int[] FIRST_CODE;
+        private static final int[] COUNT;
+        private static final int[] OFFSET;
+        private static final int[] SORTED = new int[SYMBOLS];
+
+        static {
+            int[] weights = new int[SYMBOLS];
+            Arrays.fill(weights, 1);
+            for(int c = 0x21; c < 0x7f; c++){
+                weights[c] = 3;
+            }
+            for(int c = 'A'; c <= 'Z'; c++){
+                weights[c] = 12;
+            }
+            for(int c = '0'; c <= '9'; c++){
+                weights[c] = 40;
+            }
+            String lower = "etaoinsrhldcumfpgwybvkxjqz";
+            for(int i = 0; i < lower.length(); i++){
+                weights[lower.charAt(i)] = 60 - i * 2;
+            }
+            String separators = " -/.,=;:\"*_+()";
+            int[] separatorWeights = {50, 35, 30, 30, 25, 25, 20, 25, 10, 10, 10, 5, 8, 8};
+            for(int i = 0; i < separators.length(); i++){
+                weights[separators.charAt(i)] = separatorWeights[i];
+            }
+            computeLengths(weights);
+
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            for(int length : LENGTHS){
+                min = Math.min(min, length);
+                max = Math.max(max, length);
+            }
+            // padding is a prefix of EOS, which must be the all-ones code
+            if(max > 30 || LENGTHS[SYMBOLS - 1] != max){
+                throw new IllegalStateException("Unusable Huffman code lengths");
+            }
+            MIN_LENGTH = min;
+            MAX_LENGTH = max;
+
+            COUNT = new int[max + 1];
+            for(int length : LENGTHS){
+                COUNT[length]++;
+            }
+            FIRST_CODE = new int[max + 1];
+            OFFSET = new int[max + 1];
+            int code = 0;
+            int offset = 0;
+            for(int length = 1; length <= max; length++){
+                code = (code + COUNT[length - 1]) << 1;
+                FIRST_CODE[length] = code;
+                OFFSET[length] = offset;
+                offset += COUNT[length];
+            }
+            int[] next = Arrays.copyOf(FIRST_CODE, max + 1);
+            int[] placed = new int[max + 1];
+            for(int symbol = 0; symbol < SYMBOLS; symbol++){
+                int length = LENGTHS[symbol];
+                CODES[symbol] = next[length]++;
+                SORTED[OFFSET[length] + placed[length]++] = symbol;
+            }
+        }
+
+        // code lengths of a Huffman tree over the weights, ties broken by node number for a fixed result
+        private static void computeLengths(int[] weights){
+            int nodes = SYMBOLS * 2 - 1;
+            long[] weight = new long[nodes];
+            int[] parent = new int[nodes];
+            PriorityQueue<Integer> queue = new PriorityQueue<>(SYMBOLS,
+                    (a, b) -> weight[a] != weight[b] ? Long.compare(weight[a], weight[b]) : Integer.compare(a, b));
+            for(int symbol = 0; symbol < SYMBOLS; symbol++){
+                weight[symbol] = weights[symbol];
+                queue.add(symbol);
+            }
+            for(int node = SYMBOLS; node < nodes; node++){
+                int a = queue.poll();
+                int b = queue.poll();
+                weight[node] = weight[a] + weight[b];
+                parent[a] = node;
+                parent[b] = node;
+                queue.add(node);
+            }
+            for(int symbol = 0; symbol < SYMBOLS; symbol++){
+                int length = 0;
+                for(int node = symbol; node != nodes - 1; node = parent[node]){
+                    length++;
+                }
+                LENGTHS[symbol] = length;
+            }
+        }
+
+        static int encodedLength(String s){
+            long bits = 0;
+            for(int i = 0; i < s.length(); i++){
+                char c = s.charAt(i);
+                bits += LENGTHS[c > 0xff ? '?' : c];
+            }
+            return (int)((bits + 7) >>> 3);
+        }
+
+        // pads the last octet with the leading one bits of EOS; dst must have room for encodedLength(s)
+        static int encode(String s, byte[] dst, int dp){
+            long bits = 0;
+            int count = 0;
+            for(int i = 0; i < s.length(); i++){
+                char c = s.charAt(i);
+                int symbol = (c > 0xff ? '?' : c);
+                bits = bits << LENGTHS[symbol] | CODES[symbol];
+                count += LENGTHS[symbol];
+                while(count >= 8){
+                    count -= 8;
+                    dst[dp++] = (byte)(bits >>> count);
+                }
+            }
+            if(count > 0){
+                dst[dp++] = (byte)(bits << (8 - count) | 0xff >>> count);
+            }
+            return dp;
+        }
+
+        static int maxDecodedLength(int encodedLength){
+            return (int)((long)encodedLength * 8 / MIN_LENGTH);
+        }
+
+        // length octets of the block into dst, returning the number of decoded octets
+        static int decode(ByteBuffer block, int length, byte[] dst){
+            int dp = 0;
+            int code = 0;
+            int codeLength = 0;
+            int end = block.position() + length;
+            for(int sp = block.position(); sp < end; sp++){
+                int b = block.get(sp);
+                for(int bit = 7; bit >= 0; bit--){
+                    code = code << 1 | (b >>> bit & 1);
+                    codeLength++;
+                    int index = code - FIRST_CODE[codeLength];
+                    if(index >= 0 && index < COUNT[codeLength]){
+                        int symbol = SORTED[OFFSET[codeLength] + index];
+                        if(symbol == SYMBOLS - 1){
+                            throw new IllegalArgumentException("EOS in Huffman-coded string");
+                        }
+                        dst[dp++] = (byte)symbol;
+                        code = 0;
+                        codeLength = 0;
+                    }else if(codeLength == MAX_LENGTH){
+                        throw new IllegalArgumentException("Invalid Huffman code");
+                    }
+                }
+            }
+            // RFC 7541 5.2: at most 7 bits of padding, all ones
+            if(codeLength > 7 || code != (1 << codeLength) - 1){
+                throw new IllegalArgumentException("Invalid Huffman padding");
+            }
+            block.position(end);
+            return dp;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/*
+ * HTTP date formatting and parsing for CloneHttpHeaders.
+ *
+ * Formatted dates are cached per second, so the Date header of every response
+ * sent within the same second (and a repeated Last-Modified or Expires) costs
+ * one lookup. Parsing goes through a hand-rolled IMF-fixdate parser
+ * ("Sun, 06 Nov 1994 08:49:37 GMT") and only falls back to the
+ * DateTimeFormatters for the obsolete RFC 850 / asctime forms and anything
+ * unusual; results, including failures, are cached per header value.
+ *
+ * Both caches are small direct-mapped arrays of immutable entries read and
+ * written without locks: a lost race only means computing an entry again.
+ */
+final class CloneHttpDates {
+
+    private CloneHttpDates() {}
+
+    static final ZoneId GMT = ZoneId.of("GMT");
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US).withZone(GMT);
+
+    private static final DateTimeFormatter[] DATE_PARSERS = new DateTimeFormatter[] {
+            DateTimeFormatter.RFC_1123_DATE_TIME,
+            DateTimeFormatter.ofPattern("EEEE, dd-MMM-yy HH:mm:ss zzz", Locale.US),
+            DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss yyyy", Locale.US).withZone(GMT)
+    };
+
+    // returned by parseMillis for values that are not a date
+    static final long INVALID = Long.MIN_VALUE;
+
+    private static final String[] DAYS = {"Thu", "Fri", "Sat", "Sun", "Mon", "Tue", "Wed"};   // from 1970-01-01
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+
+    private static final int CACHE_SIZE = 64;     // power of two
+
+    private static final Formatted[] formatted = new Formatted[CACHE_SIZE];
+    private static final Parsed[] parsed = new Parsed[CACHE_SIZE];
+
+    private static final class Formatted {
+        final long epochSecond;
+        final String text;
+
+        Formatted(long epochSecond, String text){
+            this.epochSecond = epochSecond;
+            this.text = text;
+        }
+    }
+
+    private static final class Parsed {
+        final String text;
+        final long millis;
+        @Nullable
+        final ZonedDateTime date;
+
+        Parsed(String text, long millis, @Nullable ZonedDateTime date){
+            this.text = text;
+            this.millis = millis;
+            this.date = date;
+        }
+    }
+
+    static String format(long epochMilli){
+        return formatSeconds(Math.floorDiv(epochMilli, 1000));
+    }
+
+    static String format(Instant instant){
+        return formatSeconds(instant.getEpochSecond());
+    }
+
+    // always in GMT, whatever the zone of date
+    static String format(ZonedDateTime date){
+        return formatSeconds(date.toEpochSecond());
+    }
+
+    private static String formatSeconds(long epochSecond){
+        int slot = (int)epochSecond & (CACHE_SIZE - 1);
+        Formatted entry = formatted[slot];
+        if(entry != null && entry.epochSecond == epochSecond){
+            return entry.text;
+        }
+        String text = format0(epochSecond);
+        formatted[slot] = new Formatted(epochSecond, text);
+        return text;
+    }
+
+    private static String format0(long epochSecond){
+        long days = Math.floorDiv(epochSecond, 86400);
+        int secs = Math.floorMod(epochSecond, 86400);
+
+        // civil date from days since the epoch (proleptic Gregorian)
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        int doe = (int)(z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if(year < 1000 || year > 9999){
+            return DATE_FORMATTER.format(Instant.ofEpochSecond(epochSecond));
+        }
+
+        char[] buf = new char[29];
+        DAYS[Math.floorMod(days, 7)].getChars(0, 3, buf, 0);
+        buf[3] = ',';
+        buf[4] = ' ';
+        twoDigits(buf, 5, day);
+        buf[7] = ' ';
+        MONTHS[month - 1].getChars(0, 3, buf, 8);
+        buf[11] = ' ';
+        twoDigits(buf, 12, (int)year / 100);
+        twoDigits(buf, 14, (int)year % 100);
+        buf[16] = ' ';
+        twoDigits(buf, 17, secs / 3600);
+        buf[19] = ':';
+        twoDigits(buf, 20, secs / 60 % 60);
+        buf[22] = ':';
+        twoDigits(buf, 23, secs % 60);
+        buf[25] = ' ';
+        buf[26] = 'G';
+        buf[27] = 'M';
+        buf[28] = 'T';
+        return new String(buf);
+    }
+
+    private static void twoDigits(char[] buf, int pos, int value){
+        buf[pos] = (char)('0' + value / 10);
+        buf[pos + 1] = (char)('0' + value % 10);
+    }
+
+    @Nullable
+    static ZonedDateTime parse(String value){
+        return lookup(value).date;
+    }
+
+    // epoch millis, or INVALID
+    static long parseMillis(String value){
+        return lookup(value).millis;
+    }
+
+    private static Parsed lookup(String value){
+        int slot = value.hashCode() & (CACHE_SIZE - 1);
+        Parsed entry = parsed[slot];
+        if(entry != null && entry.text.equals(value)){
+            return entry;
+        }
+        entry = parse0(value);
+        parsed[slot] = entry;
+        return entry;
+    }
+
+    private static Parsed parse0(String value){
+        long millis = parseImfFixdate(value);
+        if(millis != INVALID){
+            ZonedDateTime date = ZonedDateTime.of(
+                    LocalDateTime.ofEpochSecond(millis / 1000, 0, ZoneOffset.UTC), ZoneOffset.UTC);
+            return new Parsed(value, millis, date);
+        }
+        for(DateTimeFormatter dateFormatter : DATE_PARSERS){
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value, dateFormatter);
+                return new Parsed(value, date.toInstant().toEpochMilli(), date);
+            }catch(DateTimeParseException ex){
+                // ignore
+            }
+        }
+        return new Parsed(value, INVALID, null);
+    }
+
+    /*
+     * Parses exactly "EEE, dd MMM yyyy HH:mm:ss GMT" without allocating, and
+     * returns INVALID for anything else (including a day name that doesn't
+     * match the date), which is then left to DATE_PARSERS.
+     */
+    static long parseImfFixdate(String s){
+        if(s.length() != 29 || s.charAt(3) != ',' || s.charAt(4) != ' ' || s.charAt(7) != ' ' ||
+           s.charAt(11) != ' ' || s.charAt(16) != ' ' || s.charAt(19) != ':' || s.charAt(22) != ':' ||
+           s.charAt(25) != ' ' || s.charAt(26) != 'G' || s.charAt(27) != 'M' || s.charAt(28) != 'T'){
+            return INVALID;
+        }
+        int day = digits(s, 5, 2);
+        int month = indexOf(MONTHS, s, 8) + 1;
+        int year = digits(s, 12, 4);
+        int hour = digits(s, 17, 2);
+        int minute = digits(s, 20, 2);
+        int second = digits(s, 23, 2);
+        if(day < 1 || month < 1 || year < 0 || hour > 23 || minute > 59 || second > 59 || hour < 0 ||
+           minute < 0 || second < 0 || day > lengthOfMonth(year, month)){
+            return INVALID;
+        }
+
+        // days since the epoch from the civil date (proleptic Gregorian)
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yoe = y - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146097L + doe - 719468;
+        if(indexOf(DAYS, s, 0) != Math.floorMod(days, 7)){
+            return INVALID;
+        }
+        return ((days * 24 + hour) * 60 + minute) * 60_000 + second * 1000L;
+    }
+
+    // -1 if any of the count chars at pos is not a digit
+    private static int digits(String s, int pos, int count){
+        int value = 0;
+        for(int i = pos; i < pos + count; i++){
+            int d = s.charAt(i) - '0';
+            if(d < 0 || d > 9){
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    private static int indexOf(String[] names, String s, int pos){
+        for(int i = 0; i < names.length; i++){
+            if(s.regionMatches(pos, names[i], 0, 3)){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lengthOfMonth(int year, int month){
+        switch(month){
+            case 2:
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4: case 6: case 9: case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}
@@ -1,3 +1,4 @@
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.*;
 import org.springframework.lang.Nullable;
 import org.springframework.util.*;
@@ -5,6 +6,8 @@ import org.springframework.util.*;
 import java.io.Serializable;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.StandardCharsets;
@@ -14,11 +17,9 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
 public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializable {
@@ -149,22 +150,114 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
 
     public static final CloneHttpHeaders EMPTY = new CloneReadOnlyHttpHeaders(new LinkedMultiValueMap<>());
 
-    private static final Pattern ETAG_HEADER_VALUE_PATTERN = Pattern.compile("\\*|\\s*((W\\/)?(\"[^\"]*\"))\\s*,?");
 
     private static final DecimalFormatSymbols DECIMAL_FORMAT_SYMBOLS = new DecimalFormatSymbols(Locale.ENGLISH);
 
-    private static final ZoneId GMT = ZoneId.of("GMT");
+    private static final ZoneId GMT = CloneHttpDates.GMT;
 
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US).withZone(GMT);
 
-    private static final DateTimeFormatter[] DATE_PARSERS = new DateTimeFormatter[] {
-            DateTimeFormatter.RFC_1123_DATE_TIME,
-            DateTimeFormatter.ofPattern("EEEE, dd-MMM-yy HH:mm:ss zzz", Locale.US),
-            DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss yyyy", Locale.US).withZone(GMT)
+    final MultiValueMap<String, String> headers;
+
+    /*
+     * Typed views of header values, parsed on first use. An entry is only
+     * reused while the header still holds the very same value strings, which
+     * also covers changes made through get() lists or a shared backing map;
+     * set/add/remove drop the entries of their header right away. Entries are
+     * immutable, so instances read by several threads (read-only headers) at
+     * worst parse a value twice.
+     */
+    @Nullable
+    private transient Parsed[] parsed;
+
+    private transient int nextParsed;
+
+    private static final int PARSED_SLOTS = 8;
+
+    private static final class Parsed {
+        final BiFunction<String, List<String>, ?> parser;
+        final String headerName;
+        @Nullable
+        final String[] source;
+        @Nullable
+        final Object value;
+
+        Parsed(BiFunction<String, List<String>, ?> parser, String headerName, @Nullable String[] source, @Nullable Object value){
+            this.parser = parser;
+            this.headerName = headerName;
+            this.source = source;
+            this.value = value;
+        }
+
+        boolean isFor(BiFunction<String, List<String>, ?> parser, String headerName){
+            return this.parser == parser &&
+                    (this.headerName == headerName || this.headerName.equalsIgnoreCase(headerName));
+        }
+
+        boolean isParsedFrom(@Nullable List<String> values){
+            if(values == null || this.source == null){
+                return values == null && this.source == null;
+            }
+            if(values.size() != this.source.length){
+                return false;
+            }
+            for(int i = 0; i < this.source.length; i++){
+                if(values.get(i) != this.source[i]){
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final BiFunction<String, List<String>, CloneContentNegotiation.CloneAccept> ACCEPT_VALUE =
+            (headerName, values) -> CloneContentNegotiation.accept(values != null ? joinValues(values) : null);
+
+    private static final BiFunction<String, List<String>, MediaType> MEDIA_TYPE = (headerName, values) -> {
+        String value = first(values);
+        return (StringUtils.hasLength(value) ? MediaType.parseMediaType(value) : null);
     };
 
+    private static final BiFunction<String, List<String>, CloneContentNegotiation.CloneAcceptLanguage> ACCEPT_LANGUAGE_VALUE =
+            (headerName, values) -> CloneContentNegotiation.acceptLanguage(first(values));
 
-    final MultiValueMap<String, String> headers;
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+
+    private static final BiFunction<String, List<String>, List<HttpMethod>> METHOD_LIST =
+            (headerName, values) -> parseMethods(first(values));
+
+    private static final BiFunction<String, List<String>, Set<HttpMethod>> METHOD_SET = (headerName, values) -> {
+        Set<HttpMethod> result = EnumSet.noneOf(HttpMethod.class);
+        String value = first(values);
+        if(value != null){
+            for(long token = nextToken(value, 0); token >= 0; token = nextToken(value, (int) token)){
+                HttpMethod resolved = resolveMethod(value, (int) (token >>> 32), (int) token);
+                if(resolved != null){
+                    result.add(resolved);
+                }
+            }
+        }
+        return result;
+    };
+
+    private static final BiFunction<String, List<String>, List<Charset>> CHARSETS =
+            (headerName, values) -> parseCharsets(first(values));
+
+    private static final BiFunction<String, List<String>, ContentDisposition> CONTENT_DISPOSITION_VALUE = (headerName, values) -> {
+        String contentDisposition = first(values);
+        if(StringUtils.hasText(contentDisposition)){
+            return ContentDisposition.parse(contentDisposition);
+        }
+        return ContentDisposition.empty();
+    };
+
+    private static final BiFunction<String, List<String>, List<String>> VALUES_AS_LIST =
+            (headerName, values) -> parseValuesAsList(values);
+
+    private static final BiFunction<String, List<String>, List<String>> ETAG_VALUES =
+            CloneHttpHeaders::parseETagValues;
+
+    private static final BiFunction<String, List<String>, String> FIELD_VALUES =
+            (headerName, values) -> (values != null ? joinValues(values) : null);
 
 
     public CloneHttpHeaders() {
@@ -176,6 +269,29 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
         this.headers = headers;
     }
 
+    /*
+     * The header block at the buffer's position, parsed in place: read-only
+     * headers that decode names and values from the buffer only when asked
+     * for them, so the bytes must stay untouched while they are in use. Known
+     * names come back as the constants whatever their case. Returns null,
+     * without moving the position, until the empty line ending the block is
+     * in the buffer; the position is moved past it otherwise.
+     */
+    @Nullable
+    public static CloneHttpHeaders readFrom(ByteBuffer buffer){
+        CloneWireHeaders headers = CloneWireHeaders.parse(buffer);
+        return (headers != null ? new CloneReadOnlyHttpHeaders(headers) : null);
+    }
+
+    // headers kept in flat arrays instead of a case-insensitive map, for short-lived instances
+    public static CloneHttpHeaders arrayBacked(){
+        return arrayBacked(8);
+    }
+
+    public static CloneHttpHeaders arrayBacked(int expectedHeaders){
+        return new CloneHttpHeaders(new CloneArrayHeaderMap(expectedHeaders));
+    }
+
     public List<String> getOrEmpty(Object headerName){
         List<String> values = get(headerName);
         return (values != null ? values : Collections.emptyList());
@@ -186,7 +302,13 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
     }
 
     public List<MediaType> getAccept(){
-        return MediaType.parseMediaTypes(get(ACCEPT));
+        return copyOf(parsed(ACCEPT, ACCEPT_VALUE).getMediaTypes());
+    }
+
+    // the producible type the Accept header prefers, see CloneContentNegotiation.CloneAccept.bestMatch
+    @Nullable
+    public MediaType negotiateContentType(CloneContentNegotiation.CloneMediaTypes producible){
+        return parsed(ACCEPT, ACCEPT_VALUE).bestMatch(producible);
     }
 
     public void setAcceptLanguage(List<Locale.LanguageRange> languages){
@@ -202,8 +324,13 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
     }
 
     public List<Locale.LanguageRange> getAcceptLanguage() {
-        String value = getFirst(ACCEPT_LANGUAGE);
-        return (StringUtils.hasText(value) ? Locale.LanguageRange.parse(value) : Collections.emptyList());
+        return copyOf(parsed(ACCEPT_LANGUAGE, ACCEPT_LANGUAGE_VALUE).getLanguageRanges());
+    }
+
+    // the supported locale the Accept-Language header prefers, see CloneContentNegotiation.CloneAcceptLanguage.bestMatch
+    @Nullable
+    public Locale negotiateLocale(CloneContentNegotiation.CloneLocales supported){
+        return parsed(ACCEPT_LANGUAGE, ACCEPT_LANGUAGE_VALUE).bestMatch(supported);
     }
 
     public void setAcceptLanguageAsLocales(List<Locale> locales) {
@@ -248,18 +375,7 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
     }
 
     public List<HttpMethod> getAccessControlAllowMethods(){
-        List<HttpMethod> result = new ArrayList<>();
-        String value = getFirst(ACCESS_CONTROL_ALLOW_METHODS);
-        if(value != null){
-            String[] tokens = StringUtils.tokenizeToStringArray(value, ",");
-            for(String token : tokens){
-                HttpMethod resolved = HttpMethod.resolve(token);
-                if(resolved != null){
-                    result.add(resolved);
-                }
-            }
-        }
-        return result;
+        return new ArrayList<>(parsed(ACCESS_CONTROL_ALLOW_METHODS, METHOD_LIST));
     }
 
     public void setAccessControlAllowOrigin(@Nullable String allowedOrigin){
@@ -318,27 +434,7 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
     }
 
     public List<Charset> getAcceptCharset(){
-        String value = getFirst(ACCEPT_CHARSET);
-        if(value != null){
-            String[] tokens = StringUtils.tokenizeToStringArray(value, ",");
-            List<Charset> result = new ArrayList<>(tokens.length);
-            for(String token : tokens){
-                int paramIdx = token.indexOf(';');
-                String charsetName;
-                if(paramIdx == -1){
-                    charsetName = token;
-                }else{
-                    charsetName = token.substring(0, paramIdx);
-                }
-
-                if(!charsetName.equals("*")){
-                    result.add(Charset.forName(charsetName));
-                }
-            }
-            return result;
-        }else{
-            return Collections.emptyList();
-        }
+        return copyOf(parsed(ACCEPT_CHARSET, CHARSETS));
     }
 
     public void setAllow(Set<HttpMethod> allowedMethods){
@@ -346,20 +442,7 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
     }
 
     public Set<HttpMethod> getAllow(){
-        String value = getFirst(ALLOW);
-        if(StringUtils.hasLength(value)){
-            String[] tokens = StringUtils.tokenizeToStringArray(value, ",");
-            List<HttpMethod> result = new ArrayList<>(tokens.length);
-            for(String token : tokens){
-                HttpMethod resolved = HttpMethod.resolve(token);
-                if(resolved != null){
-                    result.add(resolved);
-                }
-            }
-            return EnumSet.copyOf(result);
-        }else{
-            return EnumSet.noneOf(HttpMethod.class);
-        }
+        return EnumSet.copyOf(parsed(ALLOW, METHOD_SET));
     }
 
     public void setBasicAuth(String username, String password){
@@ -418,11 +501,7 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
     }
 
     public ContentDisposition getContentDisposition(){
-        String contentDisposition = getFirst(CONTENT_DISPOSITION);
-        if(StringUtils.hasText(contentDisposition)){
-            return ContentDisposition.parse(contentDisposition);
-        }
-        return ContentDisposition.empty();
+        return parsed(CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE);
     }
 
     public void setContentLanguage(@Nullable Locale locale){
@@ -459,8 +538,7 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
 
     @Nullable
     public MediaType getContentType(){
-        String value = getFirst(CONTENT_TYPE);
-        return (StringUtils.hasLength(value) ? MediaType.parseMediaType(value) : null);
+        return parsed(CONTENT_TYPE, MEDIA_TYPE);
     }
 
     public void setDate(ZonedDateTime date){
@@ -589,6 +667,10 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
         set(IF_NONE_MATCH, toCommaDelimitedString(ifNoneMatchList));
     }
 
+    public List<String> getIfNoneMatch(){
+        return getETagValuesAsList(IF_NONE_MATCH);
+    }
+
     public void setIfUnmodifiedSince(ZonedDateTime ifUnmodifiedSince){
         setZonedDateTime(IF_UNMODIFIED_SINCE, ifUnmodifiedSince.withZoneSameInstant(GMT));
     }
@@ -676,16 +758,17 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
         return getValuesAsList(VARY);
     }
 
+    // formatting and parsing are cached in CloneHttpDates
     public void setZonedDateTime(String headerName, ZonedDateTime date){
-        set(headerName, DATE_FORMATTER.format(date));
+        set(headerName, CloneHttpDates.format(date));
     }
 
     public void setInstant(String headerName, Instant date){
-        setZonedDateTime(headerName, ZonedDateTime.ofInstant(date, GMT));
+        set(headerName, CloneHttpDates.format(date));
     }
 
     public void setDate(String headerName, long date){
-        setInstant(headerName, Instant.ofEpochMilli(date));
+        set(headerName, CloneHttpDates.format(date));
     }
 
     public long getFirstDate(String headerName){
@@ -693,8 +776,20 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
     }
 
     private long getFirstDate(String headerName, boolean rejectInvalid){
-        ZonedDateTime zonedDateTime = getFirstZonedDateTime(headerName, rejectInvalid);
-        return (zonedDateTime != null ? zonedDateTime.toInstant().toEpochMilli() : -1);
+        String headerValue = getFirst(headerName);
+        if(headerValue == null){
+            return -1;
+        }
+        String dateValue = dateValue(headerValue);
+        long date = (dateValue != null ? CloneHttpDates.parseMillis(dateValue) : CloneHttpDates.INVALID);
+        if(date != CloneHttpDates.INVALID){
+            return date;
+        }
+        if (rejectInvalid) {
+            throw new IllegalArgumentException("Cannot parse date value \"" + (dateValue != null ? dateValue : headerValue) +
+                    "\" for \"" + headerName + "\" header");
+        }
+        return -1;
     }
 
     @Nullable
@@ -710,19 +805,13 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
             return null;
         }
 
-        if(headerValue.length() >= 3){
-            int parametersIndex = headerValue.indexOf(';');
-            if(parametersIndex != -1){
-                headerValue = headerValue.substring(0, parametersIndex);
-            }
-
-            for(DateTimeFormatter dateFormatter : DATE_PARSERS){
-                try {
-                    return ZonedDateTime.parse(headerValue, dateFormatter);
-                }catch(DateTimeParseException ex){
-                    // ignore
-                }
+        String dateValue = dateValue(headerValue);
+        if(dateValue != null){
+            ZonedDateTime date = CloneHttpDates.parse(dateValue);
+            if(date != null){
+                return date;
             }
+            headerValue = dateValue;
         }
 
         if (rejectInvalid) {
@@ -733,13 +822,17 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
     }
 
     public List<String> getValuesAsList(String headerName){
-        List<String> values = get(headerName);
+        return copyOf(parsed(headerName, VALUES_AS_LIST));
+    }
 
+    private static List<String> parseValuesAsList(@Nullable List<String> values){
         if(values != null){
             List<String> result = new ArrayList<>();
             for(String value : values){
                 if (value != null){
-                    Collections.addAll(result, StringUtils.tokenizeToStringArray(value, ","));
+                    for(long token = nextToken(value, 0); token >= 0; token = nextToken(value, (int) token)){
+                        result.add(value.substring((int) (token >>> 32), (int) token));
+                    }
                 }
             }
             return result;
@@ -747,6 +840,76 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
         return Collections.emptyList();
     }
 
+    /*
+     * Receives a part of a header value, e.g. one element of a comma-separated
+     * list, without it being copied into a String of its own.
+     */
+    @FunctionalInterface
+    public interface CharSequenceConsumer {
+
+        void accept(CharSequence value, int start, int end);
+    }
+
+    /*
+     * Every element of the comma-separated lists in the values of the header,
+     * trimmed and non-empty as in getValuesAsList, but as a range of the value
+     * it sits in rather than a substring.
+     */
+    public void forEachToken(String headerName, CharSequenceConsumer action){
+        List<String> values = this.headers.get(headerName);
+        if(values != null){
+            for(int i = 0; i < values.size(); i++){
+                String value = values.get(i);
+                if(value != null){
+                    for(long token = nextToken(value, 0); token >= 0; token = nextToken(value, (int) token)){
+                        action.accept(value, (int) (token >>> 32), (int) token);
+                    }
+                }
+            }
+        }
+    }
+
+    // whether an element of the header's comma-separated lists equals token, ignoring case like most list headers
+    public boolean containsToken(String headerName, String token){
+        List<String> values = this.headers.get(headerName);
+        if(values != null){
+            for(int i = 0; i < values.size(); i++){
+                String value = values.get(i);
+                if(value != null){
+                    for(long range = nextToken(value, 0); range >= 0; range = nextToken(value, (int) range)){
+                        int start = (int) (range >>> 32);
+                        if((int) range - start == token.length() && value.regionMatches(true, start, token, 0, token.length())){
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+     * The next element of the comma-separated list in value at or after
+     * index, as start << 32 | end, -1 if there is none. Elements are trimmed
+     * like String.trim and empty ones skipped, which is what
+     * StringUtils.tokenizeToStringArray(value, ",") gives.
+     */
+    private static long nextToken(String value, int index){
+        int length = value.length();
+        while(index < length && (value.charAt(index) == ',' || value.charAt(index) <= ' ')){
+            index++;
+        }
+        if(index == length){
+            return -1;
+        }
+        int end = value.indexOf(',', index);
+        end = (end < 0 ? length : end);
+        while(value.charAt(end - 1) <= ' '){
+            end--;
+        }
+        return (long) index << 32 | end;
+    }
+
     public void clearContentHeaders(){
         this.headers.remove(CloneHttpHeaders.CONTENT_DISPOSITION);
         this.headers.remove(CloneHttpHeaders.CONTENT_ENCODING);
@@ -758,7 +921,10 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
     }
 
     protected List<String> getETagValuesAsList(String headerName){
-        List<String> values = get(headerName);
+        return copyOf(parsed(headerName, ETAG_VALUES));
+    }
+
+    private static List<String> parseETagValues(String headerName, @Nullable List<String> values){
         if(values == null){
             return Collections.emptyList();
         }
@@ -766,13 +932,8 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
         List<String> result = new ArrayList<>();
         for(String value : values){
             if(value != null){
-                Matcher matcher = ETAG_HEADER_VALUE_PATTERN.matcher(value);
-                while(matcher.find()){
-                    if("*".equals(matcher.group())){
-                        result.add(matcher.group());
-                    } else {
-                        result.add(matcher.group(1));
-                    }
+                for(long etag = nextETag(value, 0); etag >= 0; etag = nextETag(value, (int) etag)){
+                    result.add(value.substring((int) (etag >>> 32), (int) etag));
                 }
                 if(result.isEmpty()){
                     throw new IllegalArgumentException(
@@ -784,13 +945,97 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
         return result;
     }
 
+    /*
+     * The next "*" or quoted ETag, with its W/ prefix if weak, in value at or
+     * after index as start << 32 | end, -1 if there is none. Text that is
+     * neither is skipped, as repeated find() calls with the pattern
+     * "\*|\s*((W/)?(\"[^\"]*\"))\s*,?" would.
+     */
+    private static long nextETag(String value, int index){
+        int length = value.length();
+        while(index < length){
+            if(value.charAt(index) == '*'){
+                return (long) index << 32 | (index + 1);
+            }
+            int start = index;
+            while(start < length && isWhitespace(value.charAt(start))){
+                start++;
+            }
+            int quote = (value.startsWith("W/", start) ? start + 2 : start);
+            if(quote < length && value.charAt(quote) == '"'){
+                int end = value.indexOf('"', quote + 1);
+                if(end >= 0){
+                    return (long) start << 32 | (end + 1);
+                }
+            }
+            index = Math.max(index + 1, start);
+        }
+        return -1;
+    }
+
+    // as \s in a regex
+    private static boolean isWhitespace(char c){
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0b || c == '\f' || c == '\r';
+    }
+
+    // If-None-Match against the ETag of the current representation, which is when a GET can be answered with 304
+    public boolean matchesETag(String currentETag){
+        return matchesETag(IF_NONE_MATCH, currentETag);
+    }
+
+    /*
+     * Whether an ETag or "*" in the header matches currentETag, which may
+     * come without quotes. If-Match compares strongly (both ETags strong and
+     * equal), anything else weakly, as RFC 7232 asks; a header without any
+     * ETag matches nothing, "*" any current ETag, weak ones included.
+     * Nothing is parsed into strings or cached.
+     */
+    public boolean matchesETag(String headerName, String currentETag){
+        List<String> values = this.headers.get(headerName);
+        if(values == null){
+            return false;
+        }
+        boolean strong = IF_MATCH.equalsIgnoreCase(headerName);
+        boolean currentWeak = currentETag.startsWith("W/\"");
+        int currentStart = (currentWeak ? 2 : 0);
+        int currentEnd = currentETag.length();
+        if(currentEnd - currentStart >= 2 && currentETag.charAt(currentStart) == '"' && currentETag.endsWith("\"")){
+            currentStart++;
+            currentEnd--;
+        }
+        for(int i = 0; i < values.size(); i++){
+            String value = values.get(i);
+            if(value == null){
+                continue;
+            }
+            for(long etag = nextETag(value, 0); etag >= 0; etag = nextETag(value, (int) etag)){
+                int start = (int) (etag >>> 32);
+                int end = (int) etag;
+                if(value.charAt(start) == '*'){
+                    return true;
+                }
+                boolean weak = (value.charAt(start) == 'W');
+                start += (weak ? 3 : 1);
+                end--;
+                if(end - start == currentEnd - currentStart && !(strong && (weak || currentWeak)) &&
+                        value.regionMatches(start, currentETag, currentStart, end - start)){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     @Nullable
     protected String getFieldValues(String headerName){
-        List<String> headerValues = get(headerName);
-        return (headerValues != null ? toCommaDelimitedString(headerValues) : null);
+        return parsed(headerName, FIELD_VALUES);
     }
 
     protected String toCommaDelimitedString(List<String> headerValues){
+        return joinValues(headerValues);
+    }
+
+    private static String joinValues(List<String> headerValues){
         StringJoiner joiner = new StringJoiner(", ");
         for(String val : headerValues){
             if(val != null){
@@ -808,6 +1053,101 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private <T> T parsed(String headerName, BiFunction<String, List<String>, T> parser){
+        List<String> values = this.headers.get(headerName);
+        Parsed[] parsed = this.parsed;
+        if(parsed == null){
+            parsed = new Parsed[PARSED_SLOTS];
+            this.parsed = parsed;
+        }
+        int free = -1;
+        for(int i = 0; i < parsed.length; i++){
+            Parsed entry = parsed[i];
+            if(entry == null){
+                free = (free < 0 ? i : free);
+            }else if(entry.isFor(parser, headerName)){
+                if(entry.isParsedFrom(values)){
+                    return (T) entry.value;
+                }
+                free = i;
+                break;
+            }
+        }
+        T value = parser.apply(headerName, values);
+        if(free < 0){
+            free = this.nextParsed++ & (PARSED_SLOTS - 1);
+        }
+        parsed[free] = new Parsed(parser, headerName,
+                (values != null ? values.toArray(new String[0]) : null), value);
+        return value;
+    }
+
+    private void forgetParsed(Object headerName){
+        Parsed[] parsed = this.parsed;
+        if(parsed != null && headerName instanceof String){
+            for(int i = 0; i < parsed.length; i++){
+                if(parsed[i] != null && parsed[i].headerName.equalsIgnoreCase((String) headerName)){
+                    parsed[i] = null;
+                }
+            }
+        }
+    }
+
+    private static <T> List<T> copyOf(List<T> parsed){
+        return (parsed.isEmpty() ? Collections.emptyList() : new ArrayList<>(parsed));
+    }
+
+    @Nullable
+    private static String first(@Nullable List<String> values){
+        return (values != null && !values.isEmpty() ? values.get(0) : null);
+    }
+
+    private static List<HttpMethod> parseMethods(@Nullable String value){
+        List<HttpMethod> result = new ArrayList<>();
+        if(value != null){
+            for(long token = nextToken(value, 0); token >= 0; token = nextToken(value, (int) token)){
+                HttpMethod resolved = resolveMethod(value, (int) (token >>> 32), (int) token);
+                if(resolved != null){
+                    result.add(resolved);
+                }
+            }
+        }
+        return result;
+    }
+
+    // HttpMethod.resolve for the given part of value
+    @Nullable
+    private static HttpMethod resolveMethod(String value, int start, int end){
+        for(HttpMethod method : METHODS){
+            String name = method.name();
+            if(name.length() == end - start && value.startsWith(name, start)){
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static List<Charset> parseCharsets(@Nullable String value){
+        if(value != null){
+            List<Charset> result = new ArrayList<>();
+            for(long token = nextToken(value, 0); token >= 0; token = nextToken(value, (int) token)){
+                int start = (int) (token >>> 32);
+                int end = (int) token;
+                int paramIdx = value.indexOf(';', start);
+                if(paramIdx >= 0 && paramIdx < end){
+                    end = paramIdx;
+                }
+                if(end - start != 1 || value.charAt(start) != '*'){
+                    result.add(Charset.forName(value.substring(start, end)));
+                }
+            }
+            return result;
+        }else{
+            return Collections.emptyList();
+        }
+    }
+
     @Override
     @Nullable
     public String getFirst(String headerName){
@@ -816,26 +1156,31 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
 
     @Override
     public void add(String headerName, @Nullable String headerValue){
+        forgetParsed(headerName);
         this.headers.add(headerName, headerValue);
     }
 
     @Override
     public void addAll(String key, List<? extends String> values){
+        forgetParsed(key);
         this.headers.addAll(key, values);
     }
 
     @Override
     public void addAll(MultiValueMap<String, String> values){
+        this.parsed = null;
         this.headers.addAll(values);
     }
 
     @Override
     public void set(String headerName, @Nullable String headerValue){
+        forgetParsed(headerName);
         this.headers.set(headerName, headerValue);
     }
 
     @Override
     public void setAll(Map<String, String> values){
+        this.parsed = null;
         this.headers.setAll(values);
     }
 
@@ -872,21 +1217,25 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
 
     @Override
     public List<String> put(String key, List<String> value){
+        forgetParsed(key);
         return this.headers.put(key, value);
     }
 
     @Override
     public List<String> remove(Object key){
+        forgetParsed(key);
         return this.headers.remove(key);
     }
 
     @Override
     public void putAll(Map<? extends String, ? extends List<String>> map){
+        this.parsed = null;
         this.headers.putAll(map);
     }
 
     @Override
     public void clear(){
+        this.parsed = null;
         this.headers.clear();
     }
 
@@ -905,6 +1254,174 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
         return this.headers.entrySet();
     }
 
+    /*
+     * Every value with its header name, in order, values as stored (null
+     * included). Unlike entrySet() this builds no entries or views, and on
+     * arrayBacked() headers it allocates nothing at all.
+     */
+    public void forEachHeader(BiConsumer<String, String> action){
+        forEachHeader(unwrap(this), action);
+    }
+
+    static void forEachHeader(MultiValueMap<String, String> headers, BiConsumer<String, String> action){
+        if(headers instanceof CloneArrayHeaderMap){
+            ((CloneArrayHeaderMap) headers).forEachHeader(action);
+            return;
+        }
+        if(headers instanceof CloneWireHeaders){
+            ((CloneWireHeaders) headers).forEachHeader(action);
+            return;
+        }
+        if(headers instanceof CloneForkedHeaderMap){
+            ((CloneForkedHeaderMap) headers).forEachHeader(action);
+            return;
+        }
+        for(Entry<String, List<String>> entry : headers.entrySet()){
+            String headerName = entry.getKey();
+            List<String> values = entry.getValue();
+            if(values instanceof RandomAccess){
+                for(int i = 0; i < values.size(); i++){
+                    action.accept(headerName, values.get(i));
+                }
+            }else{
+                for(String value : values){
+                    action.accept(headerName, value);
+                }
+            }
+        }
+    }
+
+    /*
+     * HTTP/1.1 wire form: a "Name: value\r\n" line per value, null values
+     * skipped, chars written as ISO-8859-1 bytes ('?' beyond that). A CR or
+     * LF in a name or value is rejected rather than splitting the line.
+     */
+    public int getWireLength(){
+        MultiValueMap<String, String> headers = unwrap(this);
+        if(headers instanceof CloneWireHeaders){
+            return ((CloneWireHeaders) headers).getWireLength();
+        }
+        WireWriter writer = new WireWriter();
+        forEachHeader(writer);
+        return writer.length;
+    }
+
+    // throws BufferOverflowException, writing nothing, if the buffer has less room than getWireLength()
+    public int writeTo(ByteBuffer buffer){
+        int length = getWireLength();
+        if(buffer.remaining() < length){
+            throw new BufferOverflowException();
+        }
+        int start = buffer.position();
+        write(buffer);
+        buffer.position(start + length);
+        return length;
+    }
+
+    // grows the buffer as needed and advances its write position
+    public int writeTo(DataBuffer buffer){
+        int length = getWireLength();
+        buffer.ensureCapacity(length);
+        int start = buffer.writePosition();
+        write(buffer.asByteBuffer(start, length));
+        buffer.writePosition(start + length);
+        return length;
+    }
+
+    // from the position on, which is left where it was
+    private void write(ByteBuffer buffer){
+        MultiValueMap<String, String> headers = unwrap(this);
+        if(headers instanceof CloneWireHeaders){
+            // received lines can't hold a line break, the bytes are copied as they are
+            ((CloneWireHeaders) headers).writeTo(buffer, buffer.position());
+            return;
+        }
+        WireWriter writer = new WireWriter();
+        writer.writeTo(buffer);
+        forEachHeader(writer);
+    }
+
+    // counts the wire length on the first pass over the headers, writes the lines on the second
+    private static final class WireWriter implements BiConsumer<String, String> {
+
+        int length;
+
+        @Nullable
+        private ByteBuffer buffer;
+
+        @Nullable
+        private byte[] array;
+
+        private int pos;
+
+        void writeTo(ByteBuffer buffer){
+            this.buffer = buffer;
+            if(buffer.hasArray()){
+                this.array = buffer.array();
+                this.pos = buffer.arrayOffset() + buffer.position();
+            }else{
+                this.pos = buffer.position();
+            }
+        }
+
+        @Override
+        public void accept(String headerName, @Nullable String headerValue){
+            if(headerValue == null){
+                return;
+            }
+            if(this.buffer == null){
+                this.length += headerName.length() + headerValue.length() + 4;
+                return;
+            }
+            byte[] prefix = CloneHeaderNames.linePrefix(headerName);
+            if(prefix != null){
+                put(prefix);
+            }else{
+                put(headerName);
+                put((byte) ':');
+                put((byte) ' ');
+            }
+            put(headerValue);
+            put((byte) '\r');
+            put((byte) '\n');
+        }
+
+        private void put(byte[] bytes){
+            if(this.array != null){
+                System.arraycopy(bytes, 0, this.array, this.pos, bytes.length);
+            }else{
+                this.buffer.put(this.pos, bytes, 0, bytes.length);
+            }
+            this.pos += bytes.length;
+        }
+
+        private void put(String chars){
+            byte[] array = this.array;
+            int pos = this.pos;
+            for(int i = 0; i < chars.length(); i++){
+                char c = chars.charAt(i);
+                if(c == '\r' || c == '\n'){
+                    throw new IllegalArgumentException("Header contains a line break: \"" + chars + "\"");
+                }
+                byte b = (c > 0xff ? (byte) '?' : (byte) c);
+                if(array != null){
+                    array[pos++] = b;
+                }else{
+                    this.buffer.put(pos++, b);
+                }
+            }
+            this.pos = pos;
+        }
+
+        private void put(byte b){
+            if(this.array != null){
+                this.array[this.pos++] = b;
+            }else{
+                this.buffer.put(this.pos++, b);
+            }
+        }
+    }
+
     @Override
     public boolean equals(@Nullable Object other){
         if(this == other){
@@ -948,18 +1465,59 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
         if(headers == EMPTY){
             return new CloneHttpHeaders();
         }
+        if(unwrap(headers) instanceof CloneWireHeaders){
+            // received headers can't change, changes go to a fork
+            return headers.fork();
+        }
         return (headers instanceof CloneReadOnlyHttpHeaders ? new CloneHttpHeaders(headers.headers) : headers);
     }
 
+    /*
+     * A writable copy that shares storage with these headers instead of
+     * copying them: the fork only keeps the names it changes, and changes on
+     * either side don't show on the other. Forking received (readFrom)
+     * headers, arrayBacked() headers or another fork takes constant time,
+     * and arrayBacked() headers copy their arrays once should they change
+     * afterwards; other headers are copied into arrayBacked() ones.
+     * Typed values already parsed here are shared too.
+     */
+    public CloneHttpHeaders fork(){
+        MultiValueMap<String, String> headers = unwrap(this);
+        CloneHttpHeaders fork;
+        if(headers instanceof CloneForkedHeaderMap){
+            fork = new CloneHttpHeaders(((CloneForkedHeaderMap) headers).fork());
+        }else if(headers instanceof CloneWireHeaders){
+            fork = new CloneHttpHeaders(new CloneForkedHeaderMap(headers));
+        }else if(headers instanceof CloneArrayHeaderMap){
+            fork = new CloneHttpHeaders(new CloneForkedHeaderMap(((CloneArrayHeaderMap) headers).snapshot()));
+        }else{
+            CloneArrayHeaderMap copy = new CloneArrayHeaderMap(headers.size());
+            for(Entry<String, List<String>> entry : headers.entrySet()){
+                copy.addAll(entry.getKey(), entry.getValue());
+            }
+            fork = new CloneHttpHeaders(copy);
+        }
+        Parsed[] parsed = this.parsed;
+        if(parsed != null){
+            // entries check the identity of their source values, which the fork shares
+            fork.parsed = parsed.clone();
+        }
+        return fork;
+    }
+
     public static String formatHeaders(MultiValueMap<String, String> headers){
-        return headers.entrySet().stream()
-                .map(entry -> {
-                    List<String> values = entry.getValue();
-                    return entry.getKey() + ":" + (values.size() == 1 ?
-                            "\"" + values.get(0) + "\"":
-                            values.stream().map(s -> "\"" + s +"\"").collect(Collectors.joining(", ")));
-                })
-                .collect(Collectors.joining(", ", "[", "]"));
+        StringBuilder builder = new StringBuilder("[");
+        for(Entry<String, List<String>> entry : headers.entrySet()){
+            if(builder.length() > 1){
+                builder.append(", ");
+            }
+            builder.append(entry.getKey()).append(':');
+            List<String> values = entry.getValue();
+            for(int i = 0; i < values.size(); i++){
+                builder.append(i > 0 ? ", \"" : "\"").append(values.get(i)).append('"');
+            }
+        }
+        return builder.append(']').toString();
     }
 
     public static String encodeBasicAuth(String username, String password, @Nullable Charset charset){
@@ -982,10 +1540,18 @@ public class CloneHttpHeaders implements MultiValueMap<String, String>, Serializ
         return new String(encodedBytes, charset);
     }
 
+    // the value without parameters, null if it is too short to be a date
+    @Nullable
+    private static String dateValue(String headerValue){
+        if(headerValue.length() < 3){
+            return null;
+        }
+        int parametersIndex = headerValue.indexOf(';');
+        return (parametersIndex != -1 ? headerValue.substring(0, parametersIndex) : headerValue);
+    }
+
     static String formatDate(long date){
-        Instant instant = Instant.ofEpochMilli(date);
-        ZonedDateTime time = ZonedDateTime.ofInstant(instant, GMT);
-        return DATE_FORMATTER.format(time);
+        return CloneHttpDates.format(date);
     }
 
 }
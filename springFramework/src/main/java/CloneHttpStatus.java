@@ -1,5 +1,8 @@
 import org.springframework.lang.Nullable;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 /**
  * HttpStatusCode가 이렇게 많을 줄 몰랐다.
  *
@@ -116,18 +119,36 @@ public enum CloneHttpStatus {
 
     private static final CloneHttpStatus[] VALUES;
 
+    // statuses by code - 100; of two constants with one code the first wins, e.g. FOUND over MOVED_TEMPORARILY
+    private static final CloneHttpStatus[] BY_CODE = new CloneHttpStatus[500];
+
     static {
         VALUES = values();
+        for(CloneHttpStatus status : VALUES){
+            if(BY_CODE[status.value - 100] == null){
+                BY_CODE[status.value - 100] = status;
+            }
+        }
     }
 
+    // status lines of codes without a constant by version and code - 100, encoded when first written
+    private static final StatusLine[][] RAW_STATUS_LINES = new StatusLine[Version.values().length][900];
+
     private final int value;
     private final Series series;
     private final String reasonPhrase;
 
+    // "HTTP/1.x 200 OK\r\n" in ASCII by Version ordinal
+    private final byte[][] statusLines;
+
     CloneHttpStatus(int value, Series series, String reasonPhrase){
         this.value = value;
         this.series = series;
         this.reasonPhrase = reasonPhrase;
+        this.statusLines = new byte[Version.values().length][];
+        for(Version version : Version.values()){
+            this.statusLines[version.ordinal()] = encodeStatusLine(version, value, reasonPhrase);
+        }
     }
 
     public int value(){
@@ -166,6 +187,66 @@ public enum CloneHttpStatus {
         return (is4xxClientError() || is5xxServerError());
     }
 
+    /*
+     * The status line as a read-only buffer of its own, so the position can
+     * be moved freely; the bytes are shared by all of them.
+     */
+    public ByteBuffer getStatusLine(Version version){
+        return ByteBuffer.wrap(this.statusLines[version.ordinal()]).asReadOnlyBuffer();
+    }
+
+    // the HTTP/1.1 status line; returns its length
+    public int writeStatusLine(ByteBuffer buffer){
+        return writeStatusLine(Version.HTTP_1_1, buffer);
+    }
+
+    // throws BufferOverflowException, writing nothing, if the line doesn't fit
+    public int writeStatusLine(Version version, ByteBuffer buffer){
+        return put(this.statusLines[version.ordinal()], buffer);
+    }
+
+    /*
+     * The status line for any three-digit code, as CloneResponseEntity
+     * carries them: codes with a constant get its reason phrase, for the first
+     * constant of a code as in resolve(), others an empty one ("HTTP/1.1 299 "),
+     * which RFC 7230 allows. Those lines are encoded once and cached.
+     */
+    public static int writeStatusLine(int statusCode, Version version, ByteBuffer buffer){
+        CloneHttpStatus status = resolve(statusCode);
+        if(status != null){
+            return status.writeStatusLine(version, buffer);
+        }
+        if(statusCode < 100 || statusCode > 999){
+            throw new IllegalArgumentException("Status code [" + statusCode + "] is not three digits");
+        }
+        StatusLine[] lines = RAW_STATUS_LINES[version.ordinal()];
+        StatusLine line = lines[statusCode - 100];
+        if(line == null){
+            // racing writers encode the same bytes, the final field publishes them safely
+            line = new StatusLine(encodeStatusLine(version, statusCode, ""));
+            lines[statusCode - 100] = line;
+        }
+        return put(line.bytes, buffer);
+    }
+
+    // ByteBuffer.put itself writes nothing when it overflows
+    private static int put(byte[] line, ByteBuffer buffer){
+        buffer.put(line);
+        return line.length;
+    }
+
+    private static byte[] encodeStatusLine(Version version, int statusCode, String reasonPhrase){
+        return (version.text + ' ' + statusCode + ' ' + reasonPhrase + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final class StatusLine {
+        final byte[] bytes;
+
+        StatusLine(byte[] bytes){
+            this.bytes = bytes;
+        }
+    }
+
     @Override
     public String toString(){
         return this.value + " " + name();
@@ -179,14 +260,28 @@ public enum CloneHttpStatus {
         return status;
     }
 
+    // null for codes without a constant, including anything outside 100-599
     @Nullable
     public static CloneHttpStatus resolve(int statusCode){
-        for(CloneHttpStatus status : VALUES) {
-            if(status.value == statusCode){
-                return status;
-            }
+        int index = statusCode - 100;
+        return (index >= 0 && index < BY_CODE.length ? BY_CODE[index] : null);
+    }
+
+    // the HTTP/1.x versions a status line is written for; HTTP/2 and later send the code alone
+    public enum Version {
+        HTTP_1_0("HTTP/1.0"),
+        HTTP_1_1("HTTP/1.1");
+
+        private final String text;
+
+        Version(String text){
+            this.text = text;
+        }
+
+        @Override
+        public String toString(){
+            return this.text;
         }
-        return null;
     }
 
     public enum Series {
@@ -196,6 +291,9 @@ public enum CloneHttpStatus {
         CLIENT_ERROR(4),
         SERVER_ERROR(5);
 
+        // by the hundreds digit of a status code
+        private static final Series[] BY_DIGIT = {null, INFORMATIONAL, SUCCESSFUL, REDIRECTION, CLIENT_ERROR, SERVER_ERROR};
+
         private final int value;
 
         Series(int value){
@@ -222,12 +320,7 @@ public enum CloneHttpStatus {
         @Nullable
         public static Series resolve(int statusCode){
             int seriesCode = statusCode / 100;
-            for(Series series : values()){
-                if(series.value == seriesCode){
-                    return series;
-                }
-            }
-            return null;
+            return (seriesCode > 0 && seriesCode < BY_DIGIT.length ? BY_DIGIT[seriesCode] : null);
         }
     }
 
@@ -1,50 +1,106 @@
-import org.springframework.http.MediaType;
 import org.springframework.lang.Nullable;
 import org.springframework.util.MultiValueMap;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 class CloneReadOnlyHttpHeaders extends CloneHttpHeaders{
 
     private static final long serialVersionUID = -8578554704772377436L;
 
+    // unmodifiable views, created once and live like the ones of the wrapped map
     @Nullable
-    private MediaType cachedContentType;
+    private transient Set<String> keySet;
 
     @Nullable
-    private List<MediaType> cachedAccept;
+    private transient Collection<List<String>> values;
+
+    @Nullable
+    private transient Set<Entry<String, List<String>>> entrySet;
+
+    /*
+     * get() results by header name, so looking the same header up again
+     * returns the same view. A view is reused while the wrapped map still
+     * returns its list, or, for the array-backed and forked stores, whose
+     * get() builds a new list each time that follows the name, while the name
+     * is there. Names go to one of a pair of slots, the free one or their
+     * own. Slots are written racily, which at worst wraps a list twice.
+     */
+    private static final int VIEW_SLOTS = 16;
+
+    @Nullable
+    private transient ListView[] views;
+
+    private static final class ListView {
+        final String name;
+        final List<String> target;
+        final List<String> view;
+
+        ListView(String name, List<String> target){
+            this.name = name;
+            this.target = target;
+            this.view = Collections.unmodifiableList(target);
+        }
+    }
 
     CloneReadOnlyHttpHeaders(MultiValueMap<String, String> headers){
         super(headers);
     }
 
     @Override
-    public MediaType getContentType(){
-        if (this.cachedContentType != null){
-            return this.cachedContentType;
-        }else{
-            MediaType contentType = super.getContentType();
-            this.cachedContentType = contentType;
-            return contentType;
+    public List<String> get(Object key) {
+        if(!(key instanceof String)){
+            List<String> values = this.headers.get(key);
+            return (values != null ? Collections.unmodifiableList(values) : null);
         }
+        String name = (String) key;
+        if(listsFollowNames()){
+            ListView cached = cached(name);
+            if(cached != null){
+                return (this.headers.containsKey(name) ? cached.view : null);
+            }
+        }
+        List<String> values = this.headers.get(name);
+        return (values != null ? viewOf(name, values) : null);
     }
 
-    @Override
-    public List<MediaType> getAccept(){
-        if(this.cachedAccept != null){
-            return this.cachedAccept;
-        }else{
-            List<MediaType> accept = super.getAccept();
-            this.cachedAccept = accept;
-            return accept;
+    private boolean listsFollowNames(){
+        return (this.headers instanceof CloneArrayHeaderMap || this.headers instanceof CloneForkedHeaderMap);
+    }
+
+    // a name may sit in either slot of its pair
+    @Nullable
+    private ListView cached(String name){
+        ListView[] views = this.views;
+        if(views != null){
+            int slot = CloneHeaderNames.hash(name) & (VIEW_SLOTS - 1);
+            for(int i = 0; i < 2; i++, slot ^= 1){
+                ListView cached = views[slot];
+                if(cached != null && CloneHeaderNames.sameName(cached.name, name)){
+                    return cached;
+                }
+            }
         }
+        return null;
     }
 
-    @Override
-    public List<String> get(Object key) {
-        List<String> values = this.headers.get(key);
-        return (values != null ? Collections.unmodifiableList(values) : null);
+    private List<String> viewOf(String name, List<String> values){
+        ListView cached = cached(name);
+        if(cached != null && (cached.target == values || listsFollowNames())){
+            return cached.view;
+        }
+        ListView[] views = this.views;
+        if(views == null){
+            views = new ListView[VIEW_SLOTS];
+            this.views = views;
+        }
+        int slot = CloneHeaderNames.hash(name) & (VIEW_SLOTS - 1);
+        ListView view = new ListView(name, values);
+        // over a stale view of the name, else into a free slot, else over the own one
+        if(cached != null ? views[slot] != cached : views[slot] != null && views[slot ^ 1] == null){
+            slot ^= 1;
+        }
+        views[slot] = view;
+        return view.view;
     }
 
     @Override
@@ -79,7 +135,12 @@ class CloneReadOnlyHttpHeaders extends CloneHttpHeaders{
 
     @Override
     public Set<String> keySet(){
-        return Collections.unmodifiableSet(this.headers.keySet());
+        Set<String> keySet = this.keySet;
+        if(keySet == null){
+            keySet = Collections.unmodifiableSet(this.headers.keySet());
+            this.keySet = keySet;
+        }
+        return keySet;
     }
 
     @Override
@@ -104,15 +165,65 @@ class CloneReadOnlyHttpHeaders extends CloneHttpHeaders{
 
     @Override
     public Collection<List<String>> values() {
-        return Collections.unmodifiableCollection(this.headers.values());
+        Collection<List<String>> values = this.values;
+        if(values == null){
+            values = new AbstractCollection<List<String>>() {
+                @Override
+                public Iterator<List<String>> iterator(){
+                    Iterator<List<String>> it = headers.values().iterator();
+                    return new Iterator<List<String>>() {
+                        @Override
+                        public boolean hasNext(){
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public List<String> next(){
+                            return Collections.unmodifiableList(it.next());
+                        }
+                    };
+                }
+
+                @Override
+                public int size(){
+                    return headers.size();
+                }
+            };
+            this.values = values;
+        }
+        return values;
     }
 
     @Override
     public Set<Entry<String, List<String>>> entrySet(){
-        return this.headers.entrySet().stream().map(AbstractMap.SimpleImmutableEntry::new)
-                .collect(Collectors.collectingAndThen(
-                        Collectors.toCollection(LinkedHashSet::new),
-                        Collections::unmodifiableSet));
+        Set<Entry<String, List<String>>> entrySet = this.entrySet;
+        if(entrySet == null){
+            entrySet = new AbstractSet<Entry<String, List<String>>>() {
+                @Override
+                public Iterator<Entry<String, List<String>>> iterator(){
+                    Iterator<Entry<String, List<String>>> it = headers.entrySet().iterator();
+                    return new Iterator<Entry<String, List<String>>>() {
+                        @Override
+                        public boolean hasNext(){
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, List<String>> next(){
+                            Entry<String, List<String>> entry = it.next();
+                            return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), viewOf(entry.getKey(), entry.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size(){
+                    return headers.size();
+                }
+            };
+            this.entrySet = entrySet;
+        }
+        return entrySet;
     }
 
 }
@@ -5,6 +5,7 @@ import org.springframework.util.MultiValueMap;
 import org.springframework.util.ObjectUtils;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.Arrays;
@@ -81,6 +82,11 @@ public class CloneResponseEntity<T> extends HttpEntity<T> {
         }
     }
 
+    // pre-encoded for every code, raw ones included; see CloneHttpStatus.writeStatusLine(int, Version, ByteBuffer)
+    public int writeStatusLine(CloneHttpStatus.Version version, ByteBuffer buffer){
+        return CloneHttpStatus.writeStatusLine(getStatusCodeValue(), version, buffer);
+    }
+
     @Override
     public boolean equals(@Nullable Object other){
         if(this == other){
@@ -0,0 +1,453 @@
+import org.springframework.lang.Nullable;
+import org.springframework.util.MultiValueMap;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/*
+ * A header block as received, for CloneHttpHeaders.readFrom(ByteBuffer).
+ *
+ * parse() scans the bytes once and only records where every name and value
+ * starts and ends; the map then answers from the buffer. Names that are
+ * CloneHttpHeaders constants (in any case) are recognized from the bytes and
+ * reported as the constant, other names and all values become Strings the
+ * first time they are asked for and are kept from then on. Lookups compare
+ * the bytes directly, so checking for or skipping a header creates nothing,
+ * and writing the block out again copies bytes.
+ *
+ * The map is read-only and keeps reading the buffer: its bytes must not be
+ * reused while the headers are in use. Lazily filled fields are written
+ * racily with immutable values, which at worst decodes something twice.
+ */
+final class CloneWireHeaders extends AbstractMap<String, List<String>>
+        implements MultiValueMap<String, String>, Serializable {
+
+    private static final long serialVersionUID = -2712947462419522874L;
+
+    // per entry in the table: name start, name end, value start, value end, name hash, first entry of the name
+    private static final int FIELDS = 6;
+
+    private final ByteBuffer buffer;
+
+    private final int[] table;
+
+    private final int count;
+
+    private final int keys;
+
+    private final String[] names;
+
+    private final String[] values;
+
+    @Nullable
+    private List<String>[] lists;
+
+    private CloneWireHeaders(ByteBuffer buffer, int[] table, int count){
+        this.buffer = buffer;
+        this.table = table;
+        this.count = count;
+        this.names = new String[count];
+        this.values = new String[count];
+        int keys = 0;
+        for(int i = 0; i < count; i++){
+            int t = i * FIELDS;
+            int start = table[t];
+            int end = table[t + 1];
+            int hash = hashName(start, end);
+            table[t + 4] = hash;
+            this.names[i] = CloneHeaderNames.knownName(buffer, start, end, hash);
+            int first = i;
+            for(int k = 0; k < i; k++){
+                if(table[k * FIELDS + 5] == k && table[k * FIELDS + 4] == hash && sameName(k, i)){
+                    first = k;
+                    break;
+                }
+            }
+            table[t + 5] = first;
+            if(first == i){
+                keys++;
+            }
+        }
+        this.keys = keys;
+    }
+
+    /*
+     * The header block at the buffer's position, up to and including the
+     * empty line that ends it; the position is then moved past that line.
+     * Returns null, leaving the position alone, while the empty line hasn't
+     * arrived yet. Lines may end in CRLF or a bare LF; folded lines, a bare
+     * CR and names with whitespace are rejected.
+     */
+    @Nullable
+    static CloneWireHeaders parse(ByteBuffer buffer){
+        int pos = buffer.position();
+        int limit = buffer.limit();
+        int[] table = new int[16 * FIELDS];
+        int count = 0;
+        while(true){
+            int lineEnd = pos;
+            while(lineEnd < limit && buffer.get(lineEnd) != '\n'){
+                lineEnd++;
+            }
+            if(lineEnd == limit){
+                return null;
+            }
+            int end = (lineEnd > pos && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd);
+            if(end == pos){
+                pos = lineEnd + 1;
+                break;
+            }
+
+            int colon = pos;
+            byte b;
+            while(colon < end && (b = buffer.get(colon)) != ':'){
+                if(b <= ' ' && b >= 0 || b == 0x7f){
+                    throw invalidLine(buffer, pos, end);
+                }
+                colon++;
+            }
+            if(colon == pos || colon == end){
+                throw invalidLine(buffer, pos, end);
+            }
+            int valueStart = colon + 1;
+            int valueEnd = end;
+            while(valueStart < valueEnd && isWhitespace(buffer.get(valueStart))){
+                valueStart++;
+            }
+            while(valueEnd > valueStart && isWhitespace(buffer.get(valueEnd - 1))){
+                valueEnd--;
+            }
+            for(int i = valueStart; i < valueEnd; i++){
+                if(buffer.get(i) == '\r'){
+                    throw invalidLine(buffer, pos, end);
+                }
+            }
+
+            if(count * FIELDS == table.length){
+                table = Arrays.copyOf(table, table.length * 2);
+            }
+            int t = count++ * FIELDS;
+            table[t] = pos;
+            table[t + 1] = colon;
+            table[t + 2] = valueStart;
+            table[t + 3] = valueEnd;
+            pos = lineEnd + 1;
+        }
+        CloneWireHeaders headers = new CloneWireHeaders(buffer.duplicate(), table, count);
+        buffer.position(pos);
+        return headers;
+    }
+
+    private static boolean isWhitespace(byte b){
+        return b == ' ' || b == '\t';
+    }
+
+    private static IllegalArgumentException invalidLine(ByteBuffer buffer, int start, int end){
+        return new IllegalArgumentException("Invalid header line \"" + decode(buffer, start, end) + "\"");
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end){
+        if(buffer.hasArray()){
+            return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.ISO_8859_1);
+        }
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    // CloneHeaderNames.hash of the name; only a name that isn't ASCII is decoded for it
+    private int hashName(int start, int end){
+        int h = 0;
+        for(int i = start; i < end; i++){
+            int b = this.buffer.get(i);
+            if(b < 0){
+                return CloneHeaderNames.hash(decode(this.buffer, start, end));
+            }
+            h = 31 * h + CloneHeaderNames.lowerCase(b);
+        }
+        return h;
+    }
+
+    private boolean sameName(int a, int b){
+        int aStart = this.table[a * FIELDS];
+        int aLength = this.table[a * FIELDS + 1] - aStart;
+        int bStart = this.table[b * FIELDS];
+        int bLength = this.table[b * FIELDS + 1] - bStart;
+        if(aLength != bLength){
+            return CloneHeaderNames.sameName(name(a), name(b));
+        }
+        for(int i = 0; i < aLength; i++){
+            int ca = this.buffer.get(aStart + i);
+            int cb = this.buffer.get(bStart + i);
+            if((ca | cb) < 0){
+                return CloneHeaderNames.sameName(name(a), name(b));
+            }
+            if(ca != cb && CloneHeaderNames.lowerCase(ca) != CloneHeaderNames.lowerCase(cb)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String name(int entry){
+        String name = this.names[entry];
+        if(name == null){
+            int t = entry * FIELDS;
+            name = decode(this.buffer, this.table[t], this.table[t + 1]);
+            this.names[entry] = name;
+        }
+        return name;
+    }
+
+    private String value(int entry){
+        String value = this.values[entry];
+        if(value == null){
+            int t = entry * FIELDS;
+            value = decode(this.buffer, this.table[t + 2], this.table[t + 3]);
+            this.values[entry] = value;
+        }
+        return value;
+    }
+
+    // the first entry of the name, or -1
+    private int indexOf(Object key){
+        if(!(key instanceof String)){
+            return -1;
+        }
+        String name = (String) key;
+        int hash = CloneHeaderNames.hash(name);
+        for(int i = 0; i < this.count; i++){
+            int t = i * FIELDS;
+            if(this.table[t + 4] != hash || this.table[t + 5] != i){
+                continue;
+            }
+            String decoded = this.names[i];
+            if(decoded != null){
+                if(decoded == name || CloneHeaderNames.sameName(decoded, name)){
+                    return i;
+                }
+            }else if(name.length() == this.table[t + 1] - this.table[t] &&
+                    CloneHeaderNames.matchesAscii(name, this.buffer, this.table[t])){
+                return i;
+            }else if(CloneHeaderNames.sameName(name(i), name)){
+                // a hash collision, or a name that only matches once lowercased
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> list(int first){
+        List<String>[] lists = this.lists;
+        if(lists == null){
+            lists = (List<String>[]) new List<?>[this.count];
+            this.lists = lists;
+        }
+        List<String> list = lists[first];
+        if(list == null){
+            int n = 0;
+            for(int i = first; i < this.count; i++){
+                if(this.table[i * FIELDS + 5] == first){
+                    n++;
+                }
+            }
+            if(n == 1){
+                list = Collections.singletonList(value(first));
+            }else{
+                String[] values = new String[n];
+                for(int i = first, k = 0; k < n; i++){
+                    if(this.table[i * FIELDS + 5] == first){
+                        values[k++] = value(i);
+                    }
+                }
+                list = Collections.unmodifiableList(Arrays.asList(values));
+            }
+            lists[first] = list;
+        }
+        return list;
+    }
+
+    @Override
+    @Nullable
+    public String getFirst(String key){
+        int i = indexOf(key);
+        return (i >= 0 ? value(i) : null);
+    }
+
+    @Override
+    @Nullable
+    public List<String> get(Object key){
+        int i = indexOf(key);
+        return (i >= 0 ? list(i) : null);
+    }
+
+    @Override
+    public boolean containsKey(Object key){
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size(){
+        return this.keys;
+    }
+
+    @Override
+    public boolean isEmpty(){
+        return this.keys == 0;
+    }
+
+    @Override
+    public Map<String, String> toSingleValueMap(){
+        Map<String, String> singleValueMap = new LinkedHashMap<>(this.keys * 4 / 3 + 1);
+        for(int i = 0; i < this.count; i++){
+            if(this.table[i * FIELDS + 5] == i){
+                singleValueMap.put(name(i), value(i));
+            }
+        }
+        return singleValueMap;
+    }
+
+    // the values of each name in turn, like entrySet()
+    void forEachHeader(BiConsumer<String, String> action){
+        for(int first = 0; first < this.count; first++){
+            if(this.table[first * FIELDS + 5] != first){
+                continue;
+            }
+            String name = name(first);
+            for(int i = first; i < this.count; i++){
+                if(this.table[i * FIELDS + 5] == first){
+                    action.accept(name, value(i));
+                }
+            }
+        }
+    }
+
+    // the length writeTo() will need, the same as CloneHttpHeaders.getWireLength() of the decoded headers
+    int getWireLength(){
+        int length = 0;
+        for(int i = 0; i < this.count; i++){
+            int t = i * FIELDS;
+            int first = this.table[t + 5] * FIELDS;
+            length += (this.table[first + 1] - this.table[first]) + (this.table[t + 3] - this.table[t + 2]) + 4;
+        }
+        return length;
+    }
+
+    // the lines CloneHttpHeaders.writeTo() writes for the decoded headers, copied from the received bytes
+    void writeTo(ByteBuffer target, int pos){
+        for(int first = 0; first < this.count; first++){
+            int f = first * FIELDS;
+            if(this.table[f + 5] != first){
+                continue;
+            }
+            byte[] prefix = (this.names[first] != null ? CloneHeaderNames.linePrefix(this.names[first]) : null);
+            for(int i = first; i < this.count; i++){
+                int t = i * FIELDS;
+                if(this.table[t + 5] != first){
+                    continue;
+                }
+                if(prefix != null){
+                    target.put(pos, prefix);
+                    pos += prefix.length;
+                }else{
+                    int nameLength = this.table[f + 1] - this.table[f];
+                    target.put(pos, this.buffer, this.table[f], nameLength);
+                    pos += nameLength;
+                    target.put(pos++, (byte) ':');
+                    target.put(pos++, (byte) ' ');
+                }
+                int valueLength = this.table[t + 3] - this.table[t + 2];
+                target.put(pos, this.buffer, this.table[t + 2], valueLength);
+                pos += valueLength;
+                target.put(pos++, (byte) '\r');
+                target.put(pos++, (byte) '\n');
+            }
+        }
+    }
+
+    @Override
+    public Set<Entry<String, List<String>>> entrySet(){
+        return new AbstractSet<Entry<String, List<String>>>() {
+            @Override
+            public Iterator<Entry<String, List<String>>> iterator(){
+                return new Iterator<Entry<String, List<String>>>() {
+
+                    private int next = skipTo(0);
+
+                    private int skipTo(int i){
+                        while(i < count && table[i * FIELDS + 5] != i){
+                            i++;
+                        }
+                        return i;
+                    }
+
+                    @Override
+                    public boolean hasNext(){
+                        return this.next < count;
+                    }
+
+                    @Override
+                    public Entry<String, List<String>> next(){
+                        if(this.next >= count){
+                            throw new NoSuchElementException();
+                        }
+                        int i = this.next;
+                        this.next = skipTo(i + 1);
+                        return new SimpleImmutableEntry<>(name(i), list(i));
+                    }
+                };
+            }
+
+            @Override
+            public int size(){
+                return keys;
+            }
+        };
+    }
+
+    @Override
+    public void add(String key, @Nullable String value){
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addAll(String key, List<? extends String> values){
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addAll(MultiValueMap<String, String> values){
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void set(String key, @Nullable String value){
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setAll(Map<String, String> values){
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<String> remove(Object key){
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear(){
+        throw new UnsupportedOperationException();
+    }
+
+    // serialized as the decoded headers, the buffer stays behind
+    private Object writeReplace(){
+        CloneArrayHeaderMap copy = new CloneArrayHeaderMap(this.count);
+        forEachHeader(copy::add);
+        return copy;
+    }
+}
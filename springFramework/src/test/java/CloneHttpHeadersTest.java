@@ -0,0 +1,777 @@
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CloneHttpHeadersTest {
+
+    private static final DateTimeFormatter RFC_1123 =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US).withZone(ZoneId.of("GMT"));
+
+    @Test
+    void datesMatchDateTimeFormatter(){
+        Random random = new Random(1123);
+        CloneHttpHeaders headers = new CloneHttpHeaders();
+        for(int i = 0; i < 10_000; i++){
+            long millis = Math.floorMod(random.nextLong(), 253402300800000L);     // 1970 to 9999
+            ZonedDateTime date = Instant.ofEpochMilli(millis).atZone(ZoneId.of("Asia/Seoul"));
+            String expected = RFC_1123.format(date);
+
+            headers.setDate(CloneHttpHeaders.DATE, millis);
+            assertEquals(expected, headers.getFirst(CloneHttpHeaders.DATE));
+            headers.setZonedDateTime(CloneHttpHeaders.EXPIRES, date);
+            assertEquals(expected, headers.getFirst(CloneHttpHeaders.EXPIRES));
+
+            assertEquals(ZonedDateTime.parse(expected, DateTimeFormatter.RFC_1123_DATE_TIME),
+                    headers.getFirstZonedDateTime(CloneHttpHeaders.DATE));
+            assertEquals(millis - Math.floorMod(millis, 1000), headers.getFirstDate(CloneHttpHeaders.DATE));
+        }
+    }
+
+    @Test
+    void obsoleteAndInvalidDates(){
+        CloneHttpHeaders headers = new CloneHttpHeaders();
+        long expected = 784111777000L;      // Sun, 06 Nov 1994 08:49:37 GMT
+        for(String value : new String[]{"Sun, 06 Nov 1994 08:49:37 GMT", "Sun, 6 Nov 1994 08:49:37 GMT",
+                "Sun Nov 06 08:49:37 1994", "Sun, 06 Nov 1994 08:49:37 GMT; length=42"}){
+            headers.set(CloneHttpHeaders.LAST_MODIFIED, value);
+            assertEquals(expected, headers.getLastModified(), value);
+            assertEquals(expected, headers.getFirstZonedDateTime(CloneHttpHeaders.LAST_MODIFIED).toInstant().toEpochMilli());
+        }
+        headers.set(CloneHttpHeaders.LAST_MODIFIED, "Sunday, 06-Nov-22 08:49:37 GMT");
+        assertEquals(1667724577000L, headers.getLastModified());
+
+        for(String value : new String[]{"Mon, 06 Nov 1994 08:49:37 GMT", "Sun, 31 Nov 1994 08:49:37 GMT", "0", "x"}){
+            headers.set(CloneHttpHeaders.DATE, value);
+            assertThrows(IllegalArgumentException.class, () -> headers.getFirstDate(CloneHttpHeaders.DATE), value);
+            assertThrows(IllegalArgumentException.class, () -> headers.getDate(), value);
+            headers.set(CloneHttpHeaders.EXPIRES, value);
+            assertEquals(-1, headers.getExpires());
+        }
+    }
+
+    @Test
+    void arrayBackedBehavesLikeDefault(){
+        String[] names = {CloneHttpHeaders.ACCEPT, "accept", "ACCEPT", CloneHttpHeaders.CONTENT_TYPE,
+                "content-type", "X-Trace-Id", "x-trace-id", "Vary", "Set-Cookie", "X-\u0130d", "x-\u0131d"};
+        Random random = new Random(39);
+        for(int run = 0; run < 200; run++){
+            CloneHttpHeaders expected = new CloneHttpHeaders();
+            CloneHttpHeaders actual = CloneHttpHeaders.arrayBacked(random.nextInt(4));
+            for(int op = 0; op < 40; op++){
+                String name = names[random.nextInt(names.length)];
+                // set/put keep the stored spelling only in the array store, so they reuse it
+                String stored = expected.keySet().stream().filter(name::equalsIgnoreCase).findFirst().orElse(name);
+                String value = random.nextInt(8) == 0 ? null : "v" + random.nextInt(5);
+                switch(random.nextInt(12)){
+                    case 0: case 1: case 2:
+                        expected.add(name, value);
+                        actual.add(name, value);
+                        break;
+                    case 3:
+                        expected.set(stored, value);
+                        actual.set(stored, value);
+                        break;
+                    case 4:
+                        List<String> values = random.nextBoolean() ? Collections.emptyList() : Arrays.asList("a", "b");
+                        assertEquals(expected.put(stored, new ArrayList<>(values)), actual.put(stored, new ArrayList<>(values)));
+                        break;
+                    case 5:
+                        assertEquals(expected.remove(name), actual.remove(name));
+                        break;
+                    case 6:
+                        expected.addAll(name, Arrays.asList("x", "y"));
+                        actual.addAll(name, Arrays.asList("x", "y"));
+                        break;
+                    case 7:
+                        List<String> e = expected.get(name);
+                        List<String> a = actual.get(name);
+                        assertEquals(e, a);
+                        if(e != null){
+                            e.add("w");
+                            a.add("w");
+                            if(e.size() > 1){
+                                assertEquals(e.remove(0), a.remove(0));
+                            }
+                        }
+                        break;
+                    case 8:
+                        Iterator<Map.Entry<String, List<String>>> ei = expected.entrySet().iterator();
+                        Iterator<Map.Entry<String, List<String>>> ai = actual.entrySet().iterator();
+                        while(ei.hasNext()){
+                            Map.Entry<String, List<String>> entry = ei.next();
+                            assertEquals(entry, ai.next());
+                            if(entry.getKey().equalsIgnoreCase(name)){
+                                ei.remove();
+                                ai.remove();
+                            }
+                        }
+                        assertFalse(ai.hasNext());
+                        break;
+                    case 9:
+                        CloneHttpHeaders other = new CloneHttpHeaders();
+                        other.add(name, "m");
+                        other.add("Warning", "n");
+                        expected.addAll(other);
+                        actual.addAll(other);
+                        break;
+                    case 10:
+                        if(random.nextInt(4) == 0){
+                            expected.clear();
+                            actual.clear();
+                        }
+                        break;
+                    default:
+                        assertEquals(expected.getFirst(name), actual.getFirst(name));
+                        assertEquals(expected.containsKey(name), actual.containsKey(name));
+                }
+                assertEquals(expected, actual);
+                assertEquals(actual, expected);
+                assertEquals(expected.hashCode(), actual.hashCode());
+                assertEquals(expected.size(), actual.size());
+                assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+                assertEquals(expected.toSingleValueMap(), actual.toSingleValueMap());
+                assertEquals(expected.toString(), actual.toString());
+            }
+        }
+    }
+
+    @Test
+    void arrayBackedViewsAndSerialization() throws Exception {
+        CloneHttpHeaders headers = CloneHttpHeaders.arrayBacked();
+        headers.add("content-type", "text/plain");
+        headers.add(new String("Accept"), "text/html");
+        headers.add("accept", "application/json");
+        headers.put("Vary", Collections.emptyList());
+        assertSame(CloneHttpHeaders.ACCEPT, new ArrayList<>(headers.keySet()).get(1));
+
+        List<String> accept = headers.get("ACCEPT");
+        headers.set("Content-Type", "text/xml");
+        assertEquals(Arrays.asList("text/html", "application/json"), accept);
+        headers.remove("Accept");
+        assertTrue(accept.isEmpty());
+        accept.add("*/*");
+        assertEquals("*/*", headers.getFirst("accept"));
+
+        assertTrue(headers.containsKey("vary"));
+        assertEquals(Collections.emptyList(), headers.get("Vary"));
+        assertNull(headers.getFirst("Vary"));
+        assertEquals("text/xml", headers.getContentType().toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)){
+            out.writeObject(headers);
+        }
+        CloneHttpHeaders copy;
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))){
+            copy = (CloneHttpHeaders)in.readObject();
+        }
+        assertEquals(headers, copy);
+        assertEquals(3, copy.size());
+        copy.add("ACCEPT", "text/plain");
+        assertEquals(Arrays.asList("*/*", "text/plain"), copy.get("Accept"));
+        assertEquals(Collections.emptyList(), copy.get("vary"));
+    }
+
+    @Test
+    void typedValuesFollowEveryChange(){
+        MultiValueMap<String, String> shared = new LinkedMultiValueMap<>();
+        CloneHttpHeaders headers = new CloneHttpHeaders(shared);
+        CloneHttpHeaders readOnly = CloneHttpHeaders.readOnlyHttpHeaders(headers);
+
+        headers.set(CloneHttpHeaders.ACCEPT, "text/html, application/json;q=0.9");
+        List<MediaType> accept = headers.getAccept();
+        assertEquals(MediaType.parseMediaTypes("text/html, application/json;q=0.9"), accept);
+        accept.clear();
+        assertEquals(2, headers.getAccept().size());
+        assertEquals(2, readOnly.getAccept().size());
+
+        headers.add(CloneHttpHeaders.ACCEPT, "*/*");
+        assertEquals(3, headers.getAccept().size());
+        headers.get(CloneHttpHeaders.ACCEPT).remove(0);
+        assertEquals(Collections.singletonList(MediaType.ALL), headers.getAccept());
+        shared.remove(CloneHttpHeaders.ACCEPT);
+        assertTrue(headers.getAccept().isEmpty());
+        assertTrue(readOnly.getAccept().isEmpty());
+
+        headers.setContentType(MediaType.TEXT_PLAIN);
+        assertSame(headers.getContentType(), headers.getContentType());
+        shared.set(CloneHttpHeaders.CONTENT_TYPE, "application/xml");
+        assertEquals(MediaType.APPLICATION_XML, headers.getContentType());
+        assertEquals(MediaType.APPLICATION_XML, readOnly.getContentType());
+        headers.remove(CloneHttpHeaders.CONTENT_TYPE);
+        assertNull(headers.getContentType());
+
+        headers.set(CloneHttpHeaders.ALLOW, "GET, POST, BREW");
+        Set<HttpMethod> allow = headers.getAllow();
+        assertEquals(EnumSet.of(HttpMethod.GET, HttpMethod.POST), allow);
+        allow.add(HttpMethod.PUT);
+        assertEquals(EnumSet.of(HttpMethod.GET, HttpMethod.POST), headers.getAllow());
+        headers.set(CloneHttpHeaders.ALLOW, "BREW");
+        assertTrue(headers.getAllow().isEmpty());
+
+        headers.set(CloneHttpHeaders.VARY, "Accept, Origin");
+        headers.set(CloneHttpHeaders.CONNECTION, "close");
+        headers.set(CloneHttpHeaders.IF_NONE_MATCH, "\"a\", W/\"b\"");
+        for(int i = 0; i < 2; i++){
+            assertEquals(Arrays.asList("Accept", "Origin"), headers.getVary());
+            assertEquals(Collections.singletonList("close"), headers.getConnection());
+            assertEquals(Arrays.asList("\"a\"", "W/\"b\""), headers.getETagValuesAsList(CloneHttpHeaders.IF_NONE_MATCH));
+        }
+        headers.setCacheControl("no-cache");
+        assertEquals("no-cache", headers.getCacheControl());
+        headers.add(CloneHttpHeaders.CACHE_CONTROL, "no-store");
+        assertEquals("no-cache, no-store", headers.getCacheControl());
+        headers.clear();
+        assertNull(headers.getCacheControl());
+        assertTrue(headers.getVary().isEmpty());
+
+        headers.set(CloneHttpHeaders.IF_MATCH, "bogus");
+        assertThrows(IllegalArgumentException.class, headers::getIfMatch);
+        assertThrows(IllegalArgumentException.class, headers::getIfMatch);
+    }
+
+    @Test
+    void readOnlyViewsAreCachedAndLive(){
+        for(CloneHttpHeaders headers : new CloneHttpHeaders[]{new CloneHttpHeaders(), CloneHttpHeaders.arrayBacked(),
+                CloneHttpHeaders.arrayBacked().fork()}){
+            headers.add(CloneHttpHeaders.VARY, "Accept");
+            headers.add(CloneHttpHeaders.VARY, "Origin");
+            headers.set(CloneHttpHeaders.SERVER, "clone");
+            CloneHttpHeaders readOnly = CloneHttpHeaders.readOnlyHttpHeaders(headers);
+
+            assertSame(readOnly.keySet(), readOnly.keySet());
+            assertSame(readOnly.values(), readOnly.values());
+            assertSame(readOnly.entrySet(), readOnly.entrySet());
+            assertSame(readOnly.get(CloneHttpHeaders.VARY), readOnly.get(CloneHttpHeaders.VARY));
+            assertSame(readOnly.get("vary"), readOnly.get(CloneHttpHeaders.VARY));
+            assertEquals(headers.entrySet(), readOnly.entrySet());
+            assertEquals(new ArrayList<>(headers.values()), new ArrayList<>(readOnly.values()));
+
+            Map.Entry<String, List<String>> entry = readOnly.entrySet().iterator().next();
+            assertThrows(UnsupportedOperationException.class, () -> entry.setValue(Collections.emptyList()));
+            assertThrows(UnsupportedOperationException.class, () -> entry.getValue().add("x"));
+            assertThrows(UnsupportedOperationException.class, () -> readOnly.values().iterator().next().clear());
+            assertThrows(UnsupportedOperationException.class, () -> readOnly.keySet().remove(CloneHttpHeaders.VARY));
+            assertThrows(UnsupportedOperationException.class, () -> readOnly.entrySet().clear());
+            assertThrows(UnsupportedOperationException.class, () -> readOnly.get(CloneHttpHeaders.SERVER).set(0, "x"));
+
+            headers.add(CloneHttpHeaders.ETAG, "\"1\"");
+            assertEquals(3, readOnly.entrySet().size());
+            assertTrue(readOnly.keySet().contains(CloneHttpHeaders.ETAG));
+
+            // cached views follow the header through changes
+            headers.remove(CloneHttpHeaders.VARY);
+            assertNull(readOnly.get(CloneHttpHeaders.VARY));
+            headers.set(CloneHttpHeaders.VARY, "Cookie");
+            assertEquals(Collections.singletonList("Cookie"), readOnly.get(CloneHttpHeaders.VARY));
+            assertEquals(Collections.singletonList("Cookie"), readOnly.get("vary"));
+        }
+    }
+
+    @Test
+    void forEachHeaderVisitsValuesInOrder(){
+        for(CloneHttpHeaders headers : new CloneHttpHeaders[]{new CloneHttpHeaders(), CloneHttpHeaders.arrayBacked()}){
+            headers.add(CloneHttpHeaders.VARY, "Accept");
+            headers.set(CloneHttpHeaders.SERVER, "clone");
+            headers.add("vary", "Origin");
+            headers.put(CloneHttpHeaders.ALLOW, Collections.emptyList());
+            headers.add(CloneHttpHeaders.WARNING, null);
+
+            List<String> visited = new ArrayList<>();
+            CloneHttpHeaders.readOnlyHttpHeaders(headers).forEachHeader((name, value) -> visited.add(name + "=" + value));
+            assertEquals(Arrays.asList("Vary=Accept", "Vary=Origin", "Server=clone", "Warning=null"), visited);
+        }
+    }
+
+    @Test
+    void writeToEmitsHttp1Lines(){
+        String expected = "Content-Type: text/plain\r\nX-Trace: a\u00e9\r\nX-Trace: ?\r\nVary: Accept\r\n";
+        for(CloneHttpHeaders headers : new CloneHttpHeaders[]{new CloneHttpHeaders(), CloneHttpHeaders.arrayBacked()}){
+            headers.setContentType(MediaType.TEXT_PLAIN);
+            headers.add("X-Trace", "a\u00e9");
+            headers.add("X-Trace", "\u0100");
+            headers.add(CloneHttpHeaders.WARNING, null);
+            headers.add(new String("Vary"), "Accept");
+            CloneHttpHeaders readOnly = CloneHttpHeaders.readOnlyHttpHeaders(headers);
+            assertEquals(expected.length(), readOnly.getWireLength());
+
+            for(ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(100), ByteBuffer.allocateDirect(100),
+                    ByteBuffer.allocate(120).position(10).slice()}){
+                buffer.position(3);
+                assertEquals(expected.length(), readOnly.writeTo(buffer));
+                assertEquals(3 + expected.length(), buffer.position());
+                buffer.flip().position(3);
+                assertEquals(expected, StandardCharsets.ISO_8859_1.decode(buffer).toString());
+            }
+
+            DataBuffer dataBuffer = new DefaultDataBufferFactory().allocateBuffer(4);
+            dataBuffer.write((byte) '>');
+            assertEquals(expected.length(), readOnly.writeTo(dataBuffer));
+            assertEquals(">" + expected, dataBuffer.toString(StandardCharsets.ISO_8859_1));
+
+            ByteBuffer small = ByteBuffer.allocate(expected.length() - 1);
+            assertThrows(BufferOverflowException.class, () -> readOnly.writeTo(small));
+            assertEquals(0, small.position());
+
+            headers.set("X-Injected", "a\r\nSet-Cookie: x");
+            ByteBuffer buffer = ByteBuffer.allocate(200);
+            assertThrows(IllegalArgumentException.class, () -> headers.writeTo(buffer));
+            assertEquals(0, buffer.position());
+        }
+    }
+
+    @Test
+    void readFromParsesInPlace() throws Exception {
+        String block = "content-type: text/html; charset=UTF-8\r\n" +
+                "X-Forwarded-For:  10.0.0.1 \r\n" +
+                "Accept: text/html\n" +
+                "ACCEPT:application/json\r\n" +
+                "x-forwarded-for: 10.0.0.2\r\n" +
+                "X-Empty:\r\n" +
+                "\r\n";
+        for(ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(300), ByteBuffer.allocateDirect(300)}){
+            buffer.put("GET / HTTP/1.1\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            int start = buffer.position();
+            buffer.put(block.substring(0, 40).getBytes(StandardCharsets.ISO_8859_1)).flip().position(start);
+            assertNull(CloneHttpHeaders.readFrom(buffer));
+            assertEquals(start, buffer.position());
+
+            buffer.limit(buffer.capacity()).position(start + 40);
+            buffer.put(block.substring(40).getBytes(StandardCharsets.ISO_8859_1)).put((byte) 'B').flip().position(start);
+            CloneHttpHeaders headers = CloneHttpHeaders.readFrom(buffer);
+            assertNotNull(headers);
+            assertEquals(buffer.limit() - 1, buffer.position());
+
+            assertEquals(4, headers.size());
+            assertEquals(Arrays.asList(CloneHttpHeaders.CONTENT_TYPE, "X-Forwarded-For", CloneHttpHeaders.ACCEPT, "X-Empty"),
+                    new ArrayList<>(headers.keySet()));
+            assertSame(CloneHttpHeaders.CONTENT_TYPE, headers.keySet().iterator().next());
+            assertEquals(MediaType.parseMediaType("text/html;charset=UTF-8"), headers.getContentType());
+            assertEquals(MediaType.parseMediaTypes("text/html, application/json"), headers.getAccept());
+            assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), headers.get("x-FORWARDED-for"));
+            assertEquals("", headers.getFirst("x-empty"));
+            assertTrue(headers.containsKey("Content-Type"));
+            assertFalse(headers.containsKey("Content-Length"));
+            assertThrows(UnsupportedOperationException.class, () -> headers.add("X-Other", "1"));
+
+            CloneHttpHeaders copy = CloneHttpHeaders.writableHttpHeaders(headers);
+            copy.add("X-Other", "1");
+            assertFalse(headers.containsKey("X-Other"));
+            copy.remove("X-Other");
+            assertEquals(copy, headers);
+            assertEquals(copy.getWireLength(), headers.getWireLength());
+            ByteBuffer expected = ByteBuffer.allocate(200);
+            copy.writeTo(expected);
+            ByteBuffer actual = ByteBuffer.allocateDirect(200);
+            headers.writeTo(actual);
+            assertEquals(expected.flip(), actual.flip());
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try(ObjectOutputStream out = new ObjectOutputStream(bytes)){
+                out.writeObject(headers);
+            }
+            try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))){
+                assertEquals(headers, in.readObject());
+            }
+        }
+
+        for(String invalid : new String[]{"Host : x\r\n\r\n", ": x\r\n\r\n", "Host\r\n\r\n",
+                "Host: a\r\n b\r\n\r\n", "Host: a\rb\r\n\r\n"}){
+            ByteBuffer buffer = ByteBuffer.wrap(invalid.getBytes(StandardCharsets.ISO_8859_1));
+            assertThrows(IllegalArgumentException.class, () -> CloneHttpHeaders.readFrom(buffer), invalid);
+        }
+        ByteBuffer empty = ByteBuffer.wrap("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        assertTrue(CloneHttpHeaders.readFrom(empty).isEmpty());
+        assertFalse(empty.hasRemaining());
+    }
+
+    @Test
+    void hpackRoundTripsAndShrinksRepeatedBlocks(){
+        Random random = new Random(44);
+        String[] names = {CloneHttpHeaders.CONTENT_TYPE, CloneHttpHeaders.ACCEPT, "X-Request-Id", "x-custom", CloneHttpHeaders.VARY};
+        CloneHpack.CloneEncoder encoder = CloneHpack.newEncoder(512);
+        CloneHpack.CloneDecoder decoder = CloneHpack.newDecoder(512);
+        for(int round = 0; round < 300; round++){
+            CloneHttpHeaders headers = CloneHttpHeaders.arrayBacked();
+            for(int i = random.nextInt(8); i > 0; i--){
+                char[] value = new char[random.nextInt(random.nextInt(5) == 0 ? 600 : 20)];
+                for(int j = 0; j < value.length; j++){
+                    value[j] = (char)(random.nextInt(4) == 0 ? random.nextInt(256) : 'a' + random.nextInt(3));
+                }
+                headers.add(names[random.nextInt(names.length)], new String(value));
+            }
+            if(round % 50 == 7){
+                encoder.setMaxTableSize(random.nextInt(512));
+                encoder.setMaxTableSize(random.nextInt(512));
+            }
+            assertEquals(headers, decoder.decode(encoder.encode(headers)));
+        }
+
+        CloneHttpHeaders headers = new CloneHttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(Arrays.asList(MediaType.TEXT_HTML, MediaType.APPLICATION_XML));
+        headers.add("User-Agent", "Mozilla/5.0 (X11; Linux x86_64; rv:109.0) Gecko/20100101 Firefox/118.0");
+        headers.add(CloneHttpHeaders.CACHE_CONTROL, "no-cache");
+        headers.add("X-Trace", "\u0100");
+        headers.add(CloneHttpHeaders.WARNING, null);
+        encoder = CloneHpack.newEncoder();
+        decoder = CloneHpack.newDecoder();
+        byte[] first = encoder.encode(headers);
+        assertTrue(first.length < headers.getWireLength());
+        headers.remove(CloneHttpHeaders.WARNING);
+        headers.set("X-Trace", "?");
+        assertEquals(headers, decoder.decode(first));
+
+        DataBuffer buffer = new DefaultDataBufferFactory().allocateBuffer(4);
+        encoder.encode(headers, buffer);
+        assertTrue(buffer.readableByteCount() * 10 <= headers.getWireLength());
+        CloneHttpHeaders decoded = decoder.decode(buffer);
+        assertEquals(headers, decoded);
+        assertEquals(0, buffer.readableByteCount());
+        assertSame(decoded.getFirst("User-Agent"), decoder.decode(encoder.encode(headers)).getFirst("User-Agent"));
+    }
+
+    @Test
+    void hpackHuffmanAndInvalidBlocks(){
+        char[] all = new char[256];
+        for(int c = 0; c < all.length; c++){
+            all[c] = (char) c;
+        }
+        String octets = new String(all);
+        byte[] encoded = new byte[CloneHpack.Huffman.encodedLength(octets)];
+        assertEquals(encoded.length, CloneHpack.Huffman.encode(octets, encoded, 0));
+        byte[] decoded = new byte[CloneHpack.Huffman.maxDecodedLength(encoded.length)];
+        ByteBuffer block = ByteBuffer.wrap(encoded);
+        assertEquals(256, CloneHpack.Huffman.decode(block, encoded.length, decoded));
+        assertEquals(octets, new String(decoded, 0, 256, StandardCharsets.ISO_8859_1));
+        assertFalse(block.hasRemaining());
+        assertTrue(CloneHpack.Huffman.encodedLength("application/json; charset=utf-8") < 24);
+
+        byte[][] invalid = {
+                {(byte) 0x80},                          // index 0
+                {(byte) 0x81},                          // static entries have no value
+                {(byte) 0xff, 0x00},                    // past the table
+                {0x41},                                 // ends before the value
+                {0x00},                                 // ends before the name
+                {0x41, 0x05, 'a'},                      // truncated value
+                {0x40, (byte) 0x81, 0x00, 0x00},        // truncated Huffman name
+                {0x00, (byte) 0x81, (byte) 0xff},       // all-ones Huffman octet decodes to padding only
+                {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x7f},   // integer overflow
+                {0x3f, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01},   // integer longer than 5 octets
+                {0x3f, (byte) 0xe2, 0x1f},              // table size over the limit
+                {0x41, 0x00, 0x20},                     // size update after a header field
+        };
+        for(byte[] bytes : invalid){
+            assertThrows(IllegalArgumentException.class, () -> CloneHpack.newDecoder().decode(bytes), Arrays.toString(bytes));
+        }
+
+        CloneHpack.CloneEncoder encoder = CloneHpack.newEncoder(100);
+        CloneHpack.CloneDecoder decoder = CloneHpack.newDecoder(100);
+        CloneHttpHeaders headers = CloneHttpHeaders.arrayBacked();
+        headers.add("X-A", "1");
+        headers.add("X-B", "2");
+        headers.add("X-C", "3");   // evicts X-A
+        assertEquals(headers, decoder.decode(encoder.encode(headers)));
+        CloneHttpHeaders again = CloneHttpHeaders.arrayBacked();
+        again.add("X-C", "3");
+        again.add("X-A", "1");
+        byte[] block2 = encoder.encode(again);
+        assertEquals((byte) (0x80 | CloneHeaderNames.KNOWN.length + 1), block2[0]);
+        assertEquals(again, decoder.decode(block2));
+        encoder.setMaxTableSize(0);
+        assertEquals(0x20, encoder.encode(CloneHttpHeaders.arrayBacked())[0]);
+    }
+
+    @Test
+    void negotiationFollowsQualityThenClientOrder(){
+        CloneContentNegotiation.CloneMediaTypes producible = CloneContentNegotiation.CloneMediaTypes.of(
+                MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_HTML);
+        String[][] cases = {
+                {"text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8", "text/html"},
+                {"application/json, text/plain, */*", "application/json"},
+                {"text/plain, application/xml, application/json", "application/xml"},
+                {"*/*", "application/json"},
+                {"*/*, application/json;q=0", "application/xml"},
+                {"application/*;q=0.5, text/html;q=0.4", "application/json"},
+                {"text/*", "text/html"},
+                {"image/png", null},
+                {null, "application/json"},
+        };
+        for(String[] c : cases){
+            CloneHttpHeaders headers = new CloneHttpHeaders();
+            if(c[0] != null){
+                headers.set(CloneHttpHeaders.ACCEPT, c[0]);
+            }
+            MediaType expected = (c[1] != null ? MediaType.parseMediaType(c[1]) : null);
+            assertEquals(expected, headers.negotiateContentType(producible), c[0]);
+            assertEquals(expected, headers.negotiateContentType(producible), c[0]);
+        }
+
+        CloneContentNegotiation.CloneMediaTypes anyApplication = CloneContentNegotiation.CloneMediaTypes.of(
+                MediaType.parseMediaType("application/*"));
+        CloneHttpHeaders headers = new CloneHttpHeaders();
+        headers.add(CloneHttpHeaders.ACCEPT, "text/html");
+        headers.add(CloneHttpHeaders.ACCEPT, "application/json;q=0.5");
+        assertEquals(MediaType.APPLICATION_JSON, headers.negotiateContentType(anyApplication));
+        assertEquals(MediaType.parseMediaTypes("text/html, application/json;q=0.5"), headers.getAccept());
+        assertSame(CloneContentNegotiation.accept("text/html, application/json;q=0.5"),
+                CloneContentNegotiation.accept(new String("text/html, application/json;q=0.5")));
+        assertEquals(MediaType.parseMediaTypes("text/html, application/json;q=0.5"),
+                CloneContentNegotiation.accept("application/json;q=0.5, text/html").getMediaTypesByPreference());
+
+        headers.set(CloneHttpHeaders.ACCEPT, "text/html;q=x");
+        assertThrows(InvalidMediaTypeException.class, headers::getAccept);
+        assertThrows(InvalidMediaTypeException.class, () -> headers.negotiateContentType(producible));
+
+        CloneContentNegotiation.CloneLocales supported = CloneContentNegotiation.CloneLocales.of(Locale.ENGLISH, Locale.GERMAN);
+        headers.set(CloneHttpHeaders.ACCEPT_LANGUAGE, "de-DE,de;q=0.9,en;q=0.8");
+        assertEquals(Locale.GERMAN, headers.negotiateLocale(supported));
+        assertEquals(Locale.LanguageRange.parse("de-DE,de;q=0.9,en;q=0.8"), headers.getAcceptLanguage());
+        headers.set(CloneHttpHeaders.ACCEPT_LANGUAGE, "fr");
+        assertNull(headers.negotiateLocale(supported));
+        headers.remove(CloneHttpHeaders.ACCEPT_LANGUAGE);
+        assertEquals(Locale.ENGLISH, headers.negotiateLocale(supported));
+        assertTrue(headers.getAcceptLanguage().isEmpty());
+    }
+
+    @Test
+    void eTagScannerMatchesPatternAndComparisons(){
+        Pattern pattern = Pattern.compile("\\*|\\s*((W\\/)?(\"[^\"]*\"))\\s*,?");
+        Random random = new Random(46);
+        String alphabet = "\"\"W/*a ,\t";
+        for(int round = 0; round < 5000; round++){
+            char[] chars = new char[random.nextInt(16)];
+            for(int i = 0; i < chars.length; i++){
+                chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+            }
+            String value = new String(chars);
+            List<String> expected = new ArrayList<>();
+            Matcher matcher = pattern.matcher(value);
+            while(matcher.find()){
+                expected.add("*".equals(matcher.group()) ? matcher.group() : matcher.group(1));
+            }
+            CloneHttpHeaders headers = new CloneHttpHeaders();
+            headers.setIfNoneMatch(value);
+            if(expected.isEmpty()){
+                assertThrows(IllegalArgumentException.class, headers::getIfNoneMatch, value);
+            }else{
+                assertEquals(expected, headers.getIfNoneMatch(), value);
+            }
+        }
+
+        CloneHttpHeaders headers = new CloneHttpHeaders();
+        assertFalse(headers.matchesETag("\"a\""));
+        headers.setIfNoneMatch("W/\"a\", \"b\"");
+        headers.setIfMatch(Arrays.asList("W/\"a\"", "\"b\""));
+        assertTrue(headers.matchesETag("\"a\""));
+        assertTrue(headers.matchesETag("W/\"a\""));
+        assertTrue(headers.matchesETag("a"));
+        assertTrue(headers.matchesETag("W/\"b\""));
+        assertFalse(headers.matchesETag("\"c\""));
+        assertFalse(headers.matchesETag("\"\""));
+        assertFalse(headers.matchesETag(CloneHttpHeaders.IF_MATCH, "\"a\""));
+        assertTrue(headers.matchesETag(CloneHttpHeaders.IF_MATCH, "\"b\""));
+        assertTrue(headers.matchesETag("if-match", "b"));
+        assertFalse(headers.matchesETag(CloneHttpHeaders.IF_MATCH, "W/\"b\""));
+        headers.setIfNoneMatch("*");
+        assertTrue(headers.matchesETag("\"anything\""));
+        headers.setIfMatch("*");
+        assertTrue(headers.matchesETag(CloneHttpHeaders.IF_MATCH, "W/\"1\""));
+        assertTrue(headers.matchesETag(CloneHttpHeaders.IF_MATCH, "\"1\""));
+        headers.setIfNoneMatch("garbage");
+        assertFalse(headers.matchesETag("garbage"));
+    }
+
+    @Test
+    void tokensMatchTokenizeToStringArray(){
+        Random random = new Random(47);
+        String alphabet = ",, \tab;*\u0001";
+        for(int round = 0; round < 5000; round++){
+            char[] chars = new char[random.nextInt(12)];
+            for(int i = 0; i < chars.length; i++){
+                chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+            }
+            String value = new String(chars);
+            CloneHttpHeaders headers = new CloneHttpHeaders();
+            headers.add(CloneHttpHeaders.VARY, value);
+            headers.add(CloneHttpHeaders.VARY, "c");
+            List<String> expected = new ArrayList<>(Arrays.asList(StringUtils.tokenizeToStringArray(value, ",")));
+            expected.add("c");
+            assertEquals(expected, headers.getValuesAsList(CloneHttpHeaders.VARY), value);
+
+            List<String> tokens = new ArrayList<>();
+            headers.forEachToken(CloneHttpHeaders.VARY, (sequence, start, end) -> tokens.add(sequence.subSequence(start, end).toString()));
+            assertEquals(expected, tokens, value);
+        }
+
+        CloneHttpHeaders headers = CloneHttpHeaders.arrayBacked();
+        headers.set(CloneHttpHeaders.ALLOW, " GET,,HEAD , get,BREW, OPTIONS");
+        assertEquals(EnumSet.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS), headers.getAllow());
+        headers.getAllow().clear();
+        assertEquals(3, headers.getAllow().size());
+        headers.set(CloneHttpHeaders.ALLOW, "");
+        assertEquals(EnumSet.noneOf(HttpMethod.class), headers.getAllow());
+        headers.set(CloneHttpHeaders.ACCESS_CONTROL_ALLOW_METHODS, "PUT, POST,PUT");
+        assertEquals(Arrays.asList(HttpMethod.PUT, HttpMethod.POST, HttpMethod.PUT), headers.getAccessControlAllowMethods());
+        headers.set(CloneHttpHeaders.ACCEPT_CHARSET, "utf-8;q=0.5, *, ISO-8859-1");
+        assertEquals(Arrays.asList(StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1), headers.getAcceptCharset());
+
+        headers.add(CloneHttpHeaders.CONNECTION, "keep-alive, Upgrade");
+        headers.add(CloneHttpHeaders.CONNECTION, "close");
+        assertTrue(headers.containsToken(CloneHttpHeaders.CONNECTION, "upgrade"));
+        assertTrue(headers.containsToken("connection", "Close"));
+        assertFalse(headers.containsToken(CloneHttpHeaders.CONNECTION, "keep"));
+        assertFalse(headers.containsToken(CloneHttpHeaders.VARY, "close"));
+        assertEquals(Arrays.asList("keep-alive", "Upgrade", "close"), headers.getConnection());
+    }
+
+    @Test
+    void forksStayApartFromTheirSource(){
+        Random random = new Random(48);
+        for(int run = 0; run < 200; run++){
+            CloneHttpHeaders source = (run % 3 == 0 ? new CloneHttpHeaders() : CloneHttpHeaders.arrayBacked());
+            CloneHttpHeaders sourceExpected = new CloneHttpHeaders();
+            for(int op = 0; op < 10; op++){
+                changeBoth(random, sourceExpected, source);
+            }
+            if(run % 3 == 2){
+                ByteBuffer buffer = ByteBuffer.allocate(source.getWireLength() + 2);
+                source.writeTo(buffer);
+                buffer.put((byte) '\r').put((byte) '\n').flip();
+                source = CloneHttpHeaders.readFrom(buffer);
+                sourceExpected = new CloneHttpHeaders();
+                source.forEachHeader(sourceExpected::add);
+            }
+
+            List<CloneHttpHeaders[]> pairs = new ArrayList<>();
+            pairs.add(new CloneHttpHeaders[]{sourceExpected, source});
+            for(int op = 0; op < 30; op++){
+                if(op % 10 == 0){
+                    CloneHttpHeaders[] pair = pairs.get(random.nextInt(pairs.size()));
+                    CloneHttpHeaders expected = new CloneHttpHeaders();
+                    pair[0].forEach(expected::addAll);
+                    pairs.add(new CloneHttpHeaders[]{expected, pair[1].fork()});
+                }
+                CloneHttpHeaders[] pair = pairs.get(random.nextInt(pairs.size()));
+                if(pair[1] != source || run % 3 != 2){
+                    changeBoth(random, pair[0], pair[1]);
+                }
+                for(CloneHttpHeaders[] each : pairs){
+                    CloneHttpHeaders expected = each[0];
+                    CloneHttpHeaders actual = each[1];
+                    assertEquals(expected, actual);
+                    assertEquals(actual, expected);
+                    assertEquals(expected.size(), actual.size());
+                    Map<String, String> single = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                    single.putAll(actual.toSingleValueMap());
+                    assertEquals(expected.toSingleValueMap(), single);
+                    List<String> visited = new ArrayList<>();
+                    actual.forEachHeader((name, value) -> visited.add(name.toLowerCase(Locale.ROOT) + "=" + value));
+                    List<String> listed = new ArrayList<>();
+                    actual.forEach((name, values) -> values.forEach(value -> listed.add(name.toLowerCase(Locale.ROOT) + "=" + value)));
+                    visited.sort(Comparator.naturalOrder());
+                    listed.sort(Comparator.naturalOrder());
+                    assertEquals(listed, visited);
+                }
+            }
+        }
+
+        CloneHttpHeaders received = CloneHttpHeaders.readFrom(ByteBuffer.wrap(
+                "Host: a\r\nAccept: text/html\r\nVia: 1.1 x\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1)));
+        assertEquals(MediaType.parseMediaTypes("text/html"), received.getAccept());
+        CloneHttpHeaders outbound = CloneHttpHeaders.writableHttpHeaders(received);
+        outbound.set(CloneHttpHeaders.HOST, "b");
+        outbound.add(CloneHttpHeaders.VIA, "1.1 y");
+        assertEquals(Arrays.asList(CloneHttpHeaders.HOST, CloneHttpHeaders.ACCEPT, CloneHttpHeaders.VIA), new ArrayList<>(outbound.keySet()));
+        assertEquals(Arrays.asList("1.1 x", "1.1 y"), outbound.get(CloneHttpHeaders.VIA));
+        assertEquals("a", received.getFirst(CloneHttpHeaders.HOST));
+        assertEquals(1, received.get(CloneHttpHeaders.VIA).size());
+        assertEquals(received.getAccept(), outbound.getAccept());
+        assertEquals("Host: b\r\nAccept: text/html\r\nVia: 1.1 x\r\nVia: 1.1 y\r\n",
+                StandardCharsets.ISO_8859_1.decode(ByteBuffer.wrap(outboundBytes(outbound))).toString());
+    }
+
+    private static byte[] outboundBytes(CloneHttpHeaders headers){
+        ByteBuffer buffer = ByteBuffer.allocate(headers.getWireLength());
+        headers.writeTo(buffer);
+        return buffer.array();
+    }
+
+    // the same random change to both, expected being a plain CloneHttpHeaders
+    private static void changeBoth(Random random, CloneHttpHeaders expected, CloneHttpHeaders actual){
+        String[] names = {CloneHttpHeaders.ACCEPT, "accept", CloneHttpHeaders.CONTENT_TYPE, "X-Trace-Id", "x-trace-id", "Vary"};
+        String name = names[random.nextInt(names.length)];
+        String value = "v" + random.nextInt(5);
+        switch(random.nextInt(9)){
+            case 0: case 1:
+                expected.add(name, value);
+                actual.add(name, value);
+                break;
+            case 2:
+                expected.set(name, value);
+                actual.set(name, value);
+                break;
+            case 3:
+                List<String> values = random.nextBoolean() ? Collections.emptyList() : Arrays.asList("a", "b");
+                assertEquals(expected.put(name, new ArrayList<>(values)), actual.put(name, new ArrayList<>(values)));
+                break;
+            case 4:
+                assertEquals(expected.remove(name), actual.remove(name));
+                break;
+            case 5:
+                expected.addAll(name, Arrays.asList("x", "y"));
+                actual.addAll(name, Arrays.asList("x", "y"));
+                break;
+            case 6:
+                List<String> e = expected.get(name);
+                List<String> a = actual.get(name);
+                assertEquals(e, a);
+                if(e != null){
+                    e.add("w");
+                    a.add("w");
+                    if(e.size() > 1){
+                        assertEquals(e.remove(0), a.remove(0));
+                        e.set(0, value);
+                        a.set(0, value);
+                    }
+                }
+                break;
+            case 7:
+                for(Iterator<Map.Entry<String, List<String>>> i = actual.entrySet().iterator(); i.hasNext(); ){
+                    Map.Entry<String, List<String>> entry = i.next();
+                    if(entry.getKey().equalsIgnoreCase(name)){
+                        i.remove();
+                    }
+                }
+                expected.remove(name);
+                break;
+            default:
+                assertEquals(expected.getFirst(name), actual.getFirst(name));
+                assertEquals(expected.containsKey(name), actual.containsKey(name));
+                assertEquals(expected.get(name), actual.get(name));
+        }
+    }
+}
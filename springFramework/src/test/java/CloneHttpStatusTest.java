@@ -0,0 +1,78 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CloneHttpStatusTest {
+
+    @Test
+    void resolveMatchesScanningTheConstants(){
+        for(int code = -200; code < 1200; code++){
+            CloneHttpStatus expected = null;
+            for(CloneHttpStatus status : CloneHttpStatus.values()){
+                if(status.value() == code){
+                    expected = status;
+                    break;
+                }
+            }
+            assertSame(expected, CloneHttpStatus.resolve(code), String.valueOf(code));
+
+            CloneHttpStatus.Series expectedSeries = null;
+            for(CloneHttpStatus.Series series : CloneHttpStatus.Series.values()){
+                if(series.value() == code / 100){
+                    expectedSeries = series;
+                }
+            }
+            assertSame(expectedSeries, CloneHttpStatus.Series.resolve(code), String.valueOf(code));
+        }
+        assertSame(CloneHttpStatus.FOUND, CloneHttpStatus.valueOf(302));
+        assertSame(CloneHttpStatus.PAYLOAD_TOO_LARGE, CloneHttpStatus.valueOf(413));
+        assertThrows(IllegalArgumentException.class, () -> CloneHttpStatus.valueOf(299));
+        assertThrows(IllegalArgumentException.class, () -> CloneHttpStatus.Series.valueOf(600));
+    }
+
+    @Test
+    void writesPreEncodedStatusLines(){
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        for(CloneHttpStatus status : CloneHttpStatus.values()){
+            for(CloneHttpStatus.Version version : CloneHttpStatus.Version.values()){
+                String expected = version + " " + status.value() + " " + status.getReasonPhrase() + "\r\n";
+                buffer.clear();
+                assertEquals(expected.length(), status.writeStatusLine(version, buffer));
+                assertEquals(expected, written(buffer));
+                assertEquals(expected, StandardCharsets.US_ASCII.decode(status.getStatusLine(version)).toString());
+            }
+        }
+        buffer.clear();
+        CloneHttpStatus.NOT_FOUND.writeStatusLine(buffer);
+        assertEquals("HTTP/1.1 404 Not Found\r\n", written(buffer));
+        assertThrows(ReadOnlyBufferException.class, () -> CloneHttpStatus.OK.getStatusLine(CloneHttpStatus.Version.HTTP_1_1).put(0, (byte) 'X'));
+
+        // raw codes, cached after the first time and the first constant of a code
+        for(int i = 0; i < 2; i++){
+            buffer.clear();
+            CloneHttpStatus.writeStatusLine(299, CloneHttpStatus.Version.HTTP_1_0, buffer);
+            assertEquals("HTTP/1.0 299 \r\n", written(buffer));
+        }
+        buffer.clear();
+        CloneHttpStatus.writeStatusLine(302, CloneHttpStatus.Version.HTTP_1_1, buffer);
+        assertEquals("HTTP/1.1 302 Found\r\n", written(buffer));
+        assertThrows(IllegalArgumentException.class, () -> CloneHttpStatus.writeStatusLine(1000, CloneHttpStatus.Version.HTTP_1_1, buffer));
+
+        buffer.clear();
+        new CloneResponseEntity<>(null, null, 599).writeStatusLine(CloneHttpStatus.Version.HTTP_1_1, buffer);
+        assertEquals("HTTP/1.1 599 \r\n", written(buffer));
+
+        ByteBuffer small = ByteBuffer.allocate(8);
+        assertThrows(BufferOverflowException.class, () -> CloneHttpStatus.OK.writeStatusLine(small));
+        assertEquals(0, small.position());
+    }
+
+    private static String written(ByteBuffer buffer){
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII);
+    }
+}
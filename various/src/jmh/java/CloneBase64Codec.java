@@ -0,0 +1,73 @@
+import benchmark.Base64Codec;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/*
+ * Bridges CloneBase64 into the benchmark package, see benchmark.Base64Codecs.
+ */
+public class CloneBase64Codec implements Base64Codec {
+
+    private final CloneBase64.CloneEncoder encoder;
+    private final CloneBase64.CloneDecoder decoder;
+
+    public CloneBase64Codec(String variant){
+        switch(variant){
+            case "basic":
+                encoder = CloneBase64.getEncoder();
+                decoder = CloneBase64.getDecoder();
+                break;
+            case "url":
+                encoder = CloneBase64.getUrlEncoder();
+                decoder = CloneBase64.getUrlDecoder();
+                break;
+            case "mime":
+                encoder = CloneBase64.getMimeEncoder();
+                decoder = CloneBase64.getMimeDecoder();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown variant " + variant);
+        }
+    }
+
+    @Override
+    public byte[] encode(byte[] src){
+        return encoder.encode(src);
+    }
+
+    @Override
+    public byte[] decode(byte[] src){
+        return decoder.decode(src);
+    }
+
+    @Override
+    public ByteBuffer encode(ByteBuffer src){
+        return encoder.encode(src);
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer src){
+        return decoder.decode(src);
+    }
+
+    @Override
+    public void encode(ByteBuffer src, ByteBuffer dst){
+        encoder.encode(src, dst);
+    }
+
+    @Override
+    public void decode(ByteBuffer src, ByteBuffer dst){
+        decoder.decode(src, dst);
+    }
+
+    @Override
+    public OutputStream wrap(OutputStream os){
+        return encoder.wrap(os);
+    }
+
+    @Override
+    public InputStream wrap(InputStream is){
+        return decoder.wrap(is);
+    }
+}
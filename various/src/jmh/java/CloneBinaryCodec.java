@@ -0,0 +1,82 @@
+import benchmark.BinaryCodec;
+
+/*
+ * Bridges CloneBase16, CloneBase32 and CloneBase58 into the benchmark
+ * package, see benchmark.BinaryCodecs.
+ */
+public class CloneBinaryCodec implements BinaryCodec {
+
+    private final BinaryCodec codec;
+
+    public CloneBinaryCodec(String variant){
+        switch(variant){
+            case "base16":
+                codec = of(CloneBase16.getEncoder()::encode, CloneBase16.getDecoder()::decode,
+                           CloneBase16.getEncoder()::encodeToString, CloneBase16.getDecoder()::decode);
+                break;
+            case "base32":
+                codec = of(CloneBase32.getEncoder()::encode, CloneBase32.getDecoder()::decode,
+                           CloneBase32.getEncoder()::encodeToString, CloneBase32.getDecoder()::decode);
+                break;
+            case "base32hex":
+                codec = of(CloneBase32.getHexEncoder()::encode, CloneBase32.getHexDecoder()::decode,
+                           CloneBase32.getHexEncoder()::encodeToString, CloneBase32.getHexDecoder()::decode);
+                break;
+            case "base58":
+                codec = of(CloneBase58.getEncoder()::encode, CloneBase58.getDecoder()::decode,
+                           CloneBase58.getEncoder()::encodeToString, CloneBase58.getDecoder()::decode);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown variant " + variant);
+        }
+    }
+
+    private interface Coder<S, T> {
+        T apply(S src);
+    }
+
+    private static BinaryCodec of(Coder<byte[], byte[]> encode, Coder<byte[], byte[]> decode,
+                                  Coder<byte[], String> encodeToString, Coder<String, byte[]> decodeString){
+        return new BinaryCodec() {
+            @Override
+            public byte[] encode(byte[] src){
+                return encode.apply(src);
+            }
+
+            @Override
+            public byte[] decode(byte[] src){
+                return decode.apply(src);
+            }
+
+            @Override
+            public String encodeToString(byte[] src){
+                return encodeToString.apply(src);
+            }
+
+            @Override
+            public byte[] decode(String src){
+                return decodeString.apply(src);
+            }
+        };
+    }
+
+    @Override
+    public byte[] encode(byte[] src){
+        return codec.encode(src);
+    }
+
+    @Override
+    public byte[] decode(byte[] src){
+        return codec.decode(src);
+    }
+
+    @Override
+    public String encodeToString(byte[] src){
+        return codec.encodeToString(src);
+    }
+
+    @Override
+    public byte[] decode(String src){
+        return codec.decode(src);
+    }
+}
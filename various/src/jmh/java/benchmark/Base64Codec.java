@@ -0,0 +1,33 @@
+package benchmark;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The operations the benchmarks drive, so that {@code CloneBase64} (which lives
+ * in the unnamed package and can't be imported here) and {@code java.util.Base64}
+ * are measured through the same call site.
+ */
+public interface Base64Codec {
+
+    byte[] encode(byte[] src);
+
+    byte[] decode(byte[] src);
+
+    ByteBuffer encode(ByteBuffer src);
+
+    ByteBuffer decode(ByteBuffer src);
+
+    /**
+     * Encodes the remaining bytes of {@code src} into {@code dst}, in place where
+     * the implementation can.
+     */
+    void encode(ByteBuffer src, ByteBuffer dst);
+
+    void decode(ByteBuffer src, ByteBuffer dst);
+
+    OutputStream wrap(OutputStream os);
+
+    InputStream wrap(InputStream is);
+}
@@ -0,0 +1,78 @@
+package benchmark;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+final class Base64Codecs {
+
+    private Base64Codecs() {}
+
+    /**
+     * The CloneBase64 adapter sits in the unnamed package next to CloneBase64,
+     * so it has to be looked up reflectively.
+     */
+    static Base64Codec clone(String variant){
+        try{
+            return (Base64Codec) Class.forName("CloneBase64Codec")
+                    .getConstructor(String.class)
+                    .newInstance(variant);
+        } catch (ReflectiveOperationException e){
+            throw new IllegalStateException("CloneBase64Codec is not on the classpath", e);
+        }
+    }
+
+    static Base64Codec jdk(String variant){
+        Base64.Encoder encoder;
+        Base64.Decoder decoder;
+        switch(variant){
+            case "basic": encoder = Base64.getEncoder(); decoder = Base64.getDecoder(); break;
+            case "url": encoder = Base64.getUrlEncoder(); decoder = Base64.getUrlDecoder(); break;
+            case "mime": encoder = Base64.getMimeEncoder(); decoder = Base64.getMimeDecoder(); break;
+            default: throw new IllegalArgumentException("Unknown variant " + variant);
+        }
+        return new Base64Codec() {
+            @Override
+            public byte[] encode(byte[] src){
+                return encoder.encode(src);
+            }
+
+            @Override
+            public byte[] decode(byte[] src){
+                return decoder.decode(src);
+            }
+
+            @Override
+            public ByteBuffer encode(ByteBuffer src){
+                return encoder.encode(src);
+            }
+
+            @Override
+            public ByteBuffer decode(ByteBuffer src){
+                return decoder.decode(src);
+            }
+
+            // java.util.Base64 has no in-place buffer API, it goes through a heap copy
+            @Override
+            public void encode(ByteBuffer src, ByteBuffer dst){
+                dst.put(encoder.encode(src));
+            }
+
+            @Override
+            public void decode(ByteBuffer src, ByteBuffer dst){
+                dst.put(decoder.decode(src));
+            }
+
+            @Override
+            public OutputStream wrap(OutputStream os){
+                return encoder.wrap(os);
+            }
+
+            @Override
+            public InputStream wrap(InputStream is){
+                return decoder.wrap(is);
+            }
+        };
+    }
+}
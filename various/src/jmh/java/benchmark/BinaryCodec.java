@@ -0,0 +1,16 @@
+package benchmark;
+
+/**
+ * Array and String entry points shared by the Base16/Base32/Base58 codecs and
+ * the library implementations they are measured against.
+ */
+public interface BinaryCodec {
+
+    byte[] encode(byte[] src);
+
+    byte[] decode(byte[] src);
+
+    String encodeToString(byte[] src);
+
+    byte[] decode(String src);
+}
@@ -0,0 +1,68 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * The array and String round trips shared by the Base16, Base32 and Base58
+ * benchmarks; subclasses pick the codec and the implementations to compare.
+ *
+ * <p>The {@code bytes} counter is reported in bytes per nanosecond, i.e. GB/s of
+ * unencoded payload for both directions.
+ */
+@State(Scope.Benchmark)
+public abstract class BinaryCodecBenchmark {
+
+    private BinaryCodec codec;
+    private int size;
+    private byte[] raw;
+    private byte[] encoded;
+    private String encodedString;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset(){
+            bytes = 0;
+        }
+    }
+
+    // the reference encoding comes from the clone codec, which the tests check
+    protected void setup(String impl, String variant, int size){
+        this.codec = BinaryCodecs.of(impl, variant);
+        this.size = size;
+        raw = new byte[size];
+        new Random(42).nextBytes(raw);
+        encoded = BinaryCodecs.clone(variant).encode(raw);
+        encodedString = new String(encoded, StandardCharsets.ISO_8859_1);
+    }
+
+    @Benchmark
+    public byte[] encodeArray(Throughput t){
+        t.bytes += size;
+        return codec.encode(raw);
+    }
+
+    @Benchmark
+    public byte[] decodeArray(Throughput t){
+        t.bytes += size;
+        return codec.decode(encoded);
+    }
+
+    @Benchmark
+    public String encodeString(Throughput t){
+        t.bytes += size;
+        return codec.encodeToString(raw);
+    }
+
+    @Benchmark
+    public byte[] decodeString(Throughput t){
+        t.bytes += size;
+        return codec.decode(encodedString);
+    }
+}
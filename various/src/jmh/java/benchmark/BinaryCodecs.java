@@ -0,0 +1,222 @@
+package benchmark;
+
+import com.google.common.io.BaseEncoding;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Base32;
+import org.apache.commons.codec.binary.Hex;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+final class BinaryCodecs {
+
+    private BinaryCodecs() {}
+
+    /**
+     * The adapter sits in the unnamed package next to the clone codecs, so it
+     * has to be looked up reflectively.
+     */
+    static BinaryCodec clone(String variant){
+        try{
+            return (BinaryCodec) Class.forName("CloneBinaryCodec")
+                    .getConstructor(String.class)
+                    .newInstance(variant);
+        } catch (ReflectiveOperationException e){
+            throw new IllegalStateException("CloneBinaryCodec is not on the classpath", e);
+        }
+    }
+
+    static BinaryCodec of(String impl, String variant){
+        switch(impl){
+            case "clone": return clone(variant);
+            case "jdk": return jdk(variant);
+            case "commons": return commons(variant);
+            case "guava": return guava(variant);
+            case "biginteger": return bigInteger(variant);
+            default: throw new IllegalArgumentException("Unknown implementation " + impl);
+        }
+    }
+
+    // java.util.HexFormat, upper case like CloneBase16.getEncoder()
+    static BinaryCodec jdk(String variant){
+        if(!"base16".equals(variant)){
+            throw new IllegalArgumentException("The JDK has no " + variant);
+        }
+        HexFormat hex = HexFormat.of().withUpperCase();
+        return new BinaryCodec() {
+            @Override
+            public byte[] encode(byte[] src){
+                return hex.formatHex(src).getBytes(StandardCharsets.ISO_8859_1);
+            }
+
+            @Override
+            public byte[] decode(byte[] src){
+                return hex.parseHex(new String(src, StandardCharsets.ISO_8859_1));
+            }
+
+            @Override
+            public String encodeToString(byte[] src){
+                return hex.formatHex(src);
+            }
+
+            @Override
+            public byte[] decode(String src){
+                return hex.parseHex(src);
+            }
+        };
+    }
+
+    static BinaryCodec commons(String variant){
+        switch(variant){
+            case "base16":
+                Hex hex = new Hex();
+                return new BinaryCodec() {
+                    @Override
+                    public byte[] encode(byte[] src){
+                        return hex.encode(src);
+                    }
+
+                    @Override
+                    public byte[] decode(byte[] src){
+                        try{
+                            return hex.decode(src);
+                        } catch (DecoderException e){
+                            throw new IllegalArgumentException(e);
+                        }
+                    }
+
+                    @Override
+                    public String encodeToString(byte[] src){
+                        return Hex.encodeHexString(src, false);
+                    }
+
+                    @Override
+                    public byte[] decode(String src){
+                        try{
+                            return Hex.decodeHex(src);
+                        } catch (DecoderException e){
+                            throw new IllegalArgumentException(e);
+                        }
+                    }
+                };
+            case "base32":
+            case "base32hex":
+                Base32 base32 = new Base32("base32hex".equals(variant));
+                return new BinaryCodec() {
+                    @Override
+                    public byte[] encode(byte[] src){
+                        return base32.encode(src);
+                    }
+
+                    @Override
+                    public byte[] decode(byte[] src){
+                        return base32.decode(src);
+                    }
+
+                    @Override
+                    public String encodeToString(byte[] src){
+                        return base32.encodeToString(src);
+                    }
+
+                    @Override
+                    public byte[] decode(String src){
+                        return base32.decode(src);
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("commons-codec has no " + variant);
+        }
+    }
+
+    // Guava only codes to and from Strings, the byte[] methods add the copy
+    static BinaryCodec guava(String variant){
+        BaseEncoding encoding;
+        switch(variant){
+            case "base16": encoding = BaseEncoding.base16(); break;
+            case "base32": encoding = BaseEncoding.base32(); break;
+            case "base32hex": encoding = BaseEncoding.base32Hex(); break;
+            default: throw new IllegalArgumentException("Guava has no " + variant);
+        }
+        return new BinaryCodec() {
+            @Override
+            public byte[] encode(byte[] src){
+                return encoding.encode(src).getBytes(StandardCharsets.ISO_8859_1);
+            }
+
+            @Override
+            public byte[] decode(byte[] src){
+                return encoding.decode(new String(src, StandardCharsets.ISO_8859_1));
+            }
+
+            @Override
+            public String encodeToString(byte[] src){
+                return encoding.encode(src);
+            }
+
+            @Override
+            public byte[] decode(String src){
+                return encoding.decode(src);
+            }
+        };
+    }
+
+    /**
+     * Base58 the way it is usually hand-rolled (and how bitcoinj did it for
+     * years): one BigInteger division per digit.
+     */
+    static BinaryCodec bigInteger(String variant){
+        if(!"base58".equals(variant)){
+            throw new IllegalArgumentException("No BigInteger codec for " + variant);
+        }
+        String alphabet = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+        BigInteger base = BigInteger.valueOf(58);
+        return new BinaryCodec() {
+            @Override
+            public byte[] encode(byte[] src){
+                return encodeToString(src).getBytes(StandardCharsets.ISO_8859_1);
+            }
+
+            @Override
+            public byte[] decode(byte[] src){
+                return decode(new String(src, StandardCharsets.ISO_8859_1));
+            }
+
+            @Override
+            public String encodeToString(byte[] src){
+                StringBuilder sb = new StringBuilder();
+                BigInteger n = new BigInteger(1, src);
+                while(n.signum() > 0){
+                    BigInteger[] qr = n.divideAndRemainder(base);
+                    sb.append(alphabet.charAt(qr[1].intValue()));
+                    n = qr[0];
+                }
+                for(int i = 0; i < src.length && src[i] == 0; i++){
+                    sb.append('1');
+                }
+                return sb.reverse().toString();
+            }
+
+            @Override
+            public byte[] decode(String src){
+                BigInteger n = BigInteger.ZERO;
+                int zeros = 0;
+                while(zeros < src.length() && src.charAt(zeros) == '1'){
+                    zeros++;
+                }
+                for(int i = zeros; i < src.length(); i++){
+                    int digit = alphabet.indexOf(src.charAt(i));
+                    if(digit < 0){
+                        throw new IllegalArgumentException("Illegal base58 character " + src.charAt(i));
+                    }
+                    n = n.multiply(base).add(BigInteger.valueOf(digit));
+                }
+                byte[] bytes = n.signum() == 0 ? new byte[0] : n.toByteArray();
+                int sign = bytes.length > 1 && bytes[0] == 0 ? 1 : 0;
+                byte[] dst = new byte[zeros + bytes.length - sign];
+                System.arraycopy(bytes, sign, dst, zeros, bytes.length - sign);
+                return dst;
+            }
+        };
+    }
+}
@@ -0,0 +1,31 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CloneBase16 against java.util.HexFormat, commons-codec Hex and Guava's base16().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CloneBase16Benchmark extends BinaryCodecBenchmark {
+
+    @Param({"clone", "jdk", "commons", "guava"})
+    String impl;
+
+    @Param({"base16"})
+    String variant;
+
+    @Param({"16", "256", "4096", "65536"})
+    int size;
+
+    @Setup
+    public void setup(){
+        setup(impl, variant, size);
+    }
+}
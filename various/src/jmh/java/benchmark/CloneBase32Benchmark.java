@@ -0,0 +1,31 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CloneBase32 against commons-codec Base32 and Guava's base32()/base32Hex().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CloneBase32Benchmark extends BinaryCodecBenchmark {
+
+    @Param({"clone", "commons", "guava"})
+    String impl;
+
+    @Param({"base32", "base32hex"})
+    String variant;
+
+    @Param({"16", "256", "4096", "65536"})
+    int size;
+
+    @Setup
+    public void setup(){
+        setup(impl, variant, size);
+    }
+}
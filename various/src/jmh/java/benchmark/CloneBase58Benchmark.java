@@ -0,0 +1,32 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CloneBase58 against the usual BigInteger conversion, at identifier sizes
+ * (UUIDs, 20-byte hashes, 32-byte keys).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CloneBase58Benchmark extends BinaryCodecBenchmark {
+
+    @Param({"clone", "biginteger"})
+    String impl;
+
+    @Param({"base58"})
+    String variant;
+
+    @Param({"16", "20", "32", "64", "256"})
+    int size;
+
+    @Setup
+    public void setup(){
+        setup(impl, variant, size);
+    }
+}
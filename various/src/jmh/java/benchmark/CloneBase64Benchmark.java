@@ -0,0 +1,136 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CloneBase64 against java.util.Base64 over the array, ByteBuffer and stream
+ * APIs of every variant.
+ *
+ * <p>The {@code bytes} counter is reported in bytes per nanosecond, i.e. GB/s of
+ * unencoded payload. {@code gradle jmh} writes the results as JSON to
+ * build/reports/jmh/results.json, with allocation rates from the gc profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Xmx2g"})
+public class CloneBase64Benchmark {
+
+    private static final int STREAM_CHUNK = 8192;
+
+    @Param({"clone", "jdk"})
+    String impl;
+
+    @Param({"basic", "url", "mime"})
+    String variant;
+
+    @Param({"16", "256", "4096", "65536", "1048576", "67108864"})
+    int size;
+
+    private Base64Codec codec;
+    private byte[] raw;
+    private byte[] encoded;
+    private ByteBuffer rawHeap;
+    private ByteBuffer encodedHeap;
+    private ByteBuffer rawDirect;
+    private ByteBuffer encodedDirect;
+    private ByteBuffer rawOut;
+    private ByteBuffer encodedOut;
+    private final byte[] chunk = new byte[STREAM_CHUNK];
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset(){
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup(){
+        codec = "clone".equals(impl) ? Base64Codecs.clone(variant) : Base64Codecs.jdk(variant);
+        raw = new byte[size];
+        new Random(42).nextBytes(raw);
+        encoded = Base64Codecs.jdk(variant).encode(raw);
+        rawHeap = ByteBuffer.wrap(raw);
+        encodedHeap = ByteBuffer.wrap(encoded);
+        rawDirect = ByteBuffer.allocateDirect(raw.length).put(raw).flip();
+        encodedDirect = ByteBuffer.allocateDirect(encoded.length).put(encoded).flip();
+        rawOut = ByteBuffer.allocateDirect(raw.length);
+        encodedOut = ByteBuffer.allocateDirect(encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encodeArray(Throughput t){
+        t.bytes += size;
+        return codec.encode(raw);
+    }
+
+    @Benchmark
+    public byte[] decodeArray(Throughput t){
+        t.bytes += size;
+        return codec.decode(encoded);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeHeapBuffer(Throughput t){
+        t.bytes += size;
+        return codec.encode(rawHeap.rewind());
+    }
+
+    @Benchmark
+    public ByteBuffer decodeHeapBuffer(Throughput t){
+        t.bytes += size;
+        return codec.decode(encodedHeap.rewind());
+    }
+
+    @Benchmark
+    public ByteBuffer encodeDirectBuffer(Throughput t){
+        t.bytes += size;
+        codec.encode(rawDirect.rewind(), encodedOut.clear());
+        return encodedOut;
+    }
+
+    @Benchmark
+    public ByteBuffer decodeDirectBuffer(Throughput t){
+        t.bytes += size;
+        codec.decode(encodedDirect.rewind(), rawOut.clear());
+        return rawOut;
+    }
+
+    @Benchmark
+    public void encodeStream(Throughput t) throws IOException {
+        t.bytes += size;
+        try(OutputStream os = codec.wrap(OutputStream.nullOutputStream())){
+            for(int off = 0; off < raw.length; off += STREAM_CHUNK){
+                os.write(raw, off, Math.min(STREAM_CHUNK, raw.length - off));
+            }
+        }
+    }
+
+    @Benchmark
+    public int decodeStream(Throughput t) throws IOException {
+        t.bytes += size;
+        int total = 0;
+        try(InputStream is = codec.wrap(new ByteArrayInputStream(encoded))){
+            int n;
+            while((n = is.read(chunk)) != -1){
+                total += n;
+            }
+        }
+        return total;
+    }
+}
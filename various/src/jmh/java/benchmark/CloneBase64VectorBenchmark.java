@@ -0,0 +1,92 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vector path vs. the scalar loop vs. java.util.Base64.
+ *
+ * <p>The {@code bytes} counter is reported in bytes per nanosecond, i.e. GB/s of
+ * unencoded payload for both directions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class CloneBase64VectorBenchmark {
+
+    private static final String SCALAR = "-Dclonebase64.vectorized=false";
+
+    @Param({"1024", "65536", "4194304"})
+    int size;
+
+    @Param({"basic", "url", "mime"})
+    String variant;
+
+    private byte[] raw;
+    private byte[] encoded;
+    private Base64Codec clone;
+    private Base64Codec jdk;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset(){
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup(){
+        raw = new byte[size];
+        new Random(42).nextBytes(raw);
+        clone = Base64Codecs.clone(variant);
+        jdk = Base64Codecs.jdk(variant);
+        encoded = jdk.encode(raw);
+    }
+
+    @Benchmark
+    public byte[] encodeVector(Throughput t){
+        t.bytes += size;
+        return clone.encode(raw);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", SCALAR})
+    public byte[] encodeScalar(Throughput t){
+        t.bytes += size;
+        return clone.encode(raw);
+    }
+
+    @Benchmark
+    public byte[] encodeJdk(Throughput t){
+        t.bytes += size;
+        return jdk.encode(raw);
+    }
+
+    @Benchmark
+    public byte[] decodeVector(Throughput t){
+        t.bytes += size;
+        return clone.decode(encoded);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", SCALAR})
+    public byte[] decodeScalar(Throughput t){
+        t.bytes += size;
+        return clone.decode(encoded);
+    }
+
+    @Benchmark
+    public byte[] decodeJdk(Throughput t){
+        t.bytes += size;
+        return jdk.decode(encoded);
+    }
+}
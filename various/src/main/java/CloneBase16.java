@@ -0,0 +1,527 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/*
+ * RFC 4648 Base16 (hex), laid out like CloneBase64: table-driven
+ * encode0/decode0 cores behind array, ByteBuffer and stream entry points.
+ * The decoder accepts both upper and lower case digits.
+ */
+public class CloneBase16 {
+
+    private CloneBase16() {}
+
+    public static CloneEncoder getEncoder(){
+        return CloneEncoder.UPPER;
+    }
+
+    public static CloneEncoder getLowerCaseEncoder(){
+        return CloneEncoder.LOWER;
+    }
+
+    public static CloneDecoder getDecoder(){
+        return CloneDecoder.RFC4648;
+    }
+
+    public static class CloneEncoder {
+
+        private final boolean isLower;
+
+        private CloneEncoder(boolean isLower){
+            this.isLower = isLower;
+        }
+
+        private static final char[] toBase16 = {
+            '0', '1', '2', '3', '4', '5', '6', '7',
+            '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+        };
+
+        private static final char[] toBase16Lower = {
+            '0', '1', '2', '3', '4', '5', '6', '7',
+            '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+        };
+
+        // byte -> its two digits, high digit in the upper half
+        private static final short[] pairs = pairs(toBase16);
+        private static final short[] pairsLower = pairs(toBase16Lower);
+
+        private static short[] pairs(char[] base16){
+            short[] pairs = new short[256];
+            for(int i=0; i<256; i++){
+                pairs[i] = (short)(base16[i >> 4] << 8 | base16[i & 0xf]);
+            }
+            return pairs;
+        }
+
+        static final CloneEncoder UPPER = new CloneEncoder(false);
+        static final CloneEncoder LOWER = new CloneEncoder(true);
+
+        private static int outLength(int srclen){
+            if(srclen > Integer.MAX_VALUE / 2){
+                throw new OutOfMemoryError("Encoded size is too large");
+            }
+            return srclen * 2;
+        }
+
+        public byte[] encode(byte[] src){
+            byte[] dst = new byte[outLength(src.length)];
+            encode0(src, 0, src.length, dst, 0);
+            return dst;
+        }
+
+        public int encode(byte[] src, byte[] dst){
+            int len = outLength(src.length);
+            if(dst.length < len){
+                throw new IllegalArgumentException(
+                    "Output byte array is too small for encoding all input bytes");
+            }
+            return encode0(src, 0, src.length, dst, 0);
+        }
+
+        /*
+         * Encodes src[srcOff, srcOff + srcLen) into dst starting at dstOff and
+         * returns the number of bytes written.
+         */
+        public int encode(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff){
+            Objects.checkFromIndexSize(srcOff, srcLen, src.length);
+            Objects.checkFromIndexSize(dstOff, 0, dst.length);
+            int len = outLength(srcLen);
+            if(dst.length - dstOff < len){
+                throw new IllegalArgumentException(
+                    "Output byte array is too small for encoding all input bytes");
+            }
+            return encode0(src, srcOff, srcOff + srcLen, dst, dstOff) - dstOff;
+        }
+
+        // appends the encoded chars to sb, growing it at most once
+        public StringBuilder encodeTo(byte[] src, int off, int len, StringBuilder sb){
+            Objects.checkFromIndexSize(off, len, src.length);
+            sb.ensureCapacity(sb.length() + outLength(len));
+            char[] base16 = isLower ? toBase16Lower : toBase16;
+            for(int sp = off; sp < off + len; sp++){
+                int b = src[sp] & 0xff;
+                sb.append(base16[b >> 4]);
+                sb.append(base16[b & 0xf]);
+            }
+            return sb;
+        }
+
+        @SuppressWarnings("deprecation")
+        public String encodeToString(byte[] src){
+            byte[] encoded = encode(src);
+            return new String(encoded, 0, 0, encoded.length);
+        }
+
+        public ByteBuffer encode(ByteBuffer buffer){
+            byte[] dst = new byte[outLength(buffer.remaining())];
+            if(buffer.hasArray()){
+                encode0(buffer.array(),
+                        buffer.arrayOffset() + buffer.position(),
+                        buffer.arrayOffset() + buffer.limit(),
+                        dst, 0);
+                buffer.position(buffer.limit());
+            }else{
+                byte[] src = new byte[buffer.remaining()];
+                buffer.get(src);
+                encode0(src, 0, src.length, dst, 0);
+            }
+            return ByteBuffer.wrap(dst);
+        }
+
+        /*
+         * Encodes the remaining bytes of src straight into dst and returns the
+         * number of bytes written. Stops early when dst fills up, with both
+         * positions left just past what was consumed and produced.
+         */
+        public int encode(ByteBuffer src, ByteBuffer dst){
+            int sp = src.position();
+            int n = Math.min(src.remaining(), dst.remaining() / 2);
+            int dp0 = dst.position();
+            int dp;
+            if(src.hasArray() && dst.hasArray()){
+                int soff = src.arrayOffset();
+                int doff = dst.arrayOffset();
+                dp = encode0(src.array(), soff + sp, soff + sp + n, dst.array(), doff + dp0) - doff;
+            }else{
+                short[] base16 = isLower ? pairsLower : pairs;
+                dp = dp0;
+                for(int i = sp; i < sp + n; i++){
+                    short s = base16[src.get(i) & 0xff];
+                    dst.put(dp++, (byte)(s >> 8));
+                    dst.put(dp++, (byte)s);
+                }
+            }
+            src.position(sp + n);
+            dst.position(dp);
+            return dp - dp0;
+        }
+
+        public OutputStream wrap(OutputStream os){
+            Objects.requireNonNull(os);
+            return new CloneEncOutputStream(os, this);
+        }
+
+        // returns the new dp
+        private int encode0(byte[] src, int off, int end, byte[] dst, int dp){
+            short[] base16 = isLower ? pairsLower : pairs;
+            for(int sp = off; sp < end; sp++){
+                short s = base16[src[sp] & 0xff];
+                dst[dp++] = (byte)(s >> 8);
+                dst[dp++] = (byte)s;
+            }
+            return dp;
+        }
+    }
+
+    public static class CloneDecoder {
+
+        private CloneDecoder() {}
+
+        private static final int[] fromBase16 = new int[256];
+        static {
+            Arrays.fill(fromBase16, -1);
+            for(int i=0; i<CloneEncoder.toBase16.length; i++){
+                fromBase16[CloneEncoder.toBase16[i]] = i;
+                fromBase16[CloneEncoder.toBase16Lower[i]] = i;
+            }
+        }
+
+        static final CloneDecoder RFC4648 = new CloneDecoder();
+
+        private static int outLength(int srclen){
+            if((srclen & 1) != 0){
+                throw new IllegalArgumentException(
+                    "Input byte array has odd length " + srclen);
+            }
+            return srclen / 2;
+        }
+
+        public byte[] decode(byte[] src){
+            byte[] dst = new byte[outLength(src.length)];
+            decode0(src, 0, src.length, dst, 0);
+            return dst;
+        }
+
+        public byte[] decode(String src){
+            return decode((CharSequence)src);
+        }
+
+        // chars are taken as is, anything above 0xff is outside the alphabet
+        public byte[] decode(CharSequence src){
+            byte[] dst = new byte[outLength(src.length())];
+            decode0(src, 0, src.length(), dst, 0);
+            return dst;
+        }
+
+        public int decode(byte[] src, byte[] dst){
+            int len = outLength(src.length);
+            if(dst.length < len){
+                throw new IllegalArgumentException(
+                    "Output byte array is too small for decoding all input bytes");
+            }
+            return decode0(src, 0, src.length, dst, 0);
+        }
+
+        /*
+         * Decodes src[srcOff, srcOff + srcLen) into dst starting at dstOff and
+         * returns the number of bytes written.
+         */
+        public int decode(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff){
+            Objects.checkFromIndexSize(srcOff, srcLen, src.length);
+            Objects.checkFromIndexSize(dstOff, 0, dst.length);
+            int len = outLength(srcLen);
+            if(dst.length - dstOff < len){
+                throw new IllegalArgumentException(
+                    "Output byte array is too small for decoding all input bytes");
+            }
+            return decode0(src, srcOff, srcOff + srcLen, dst, dstOff) - dstOff;
+        }
+
+        public ByteBuffer decode(ByteBuffer buffer){
+            int pos0 = buffer.position();
+            try{
+                byte[] dst = new byte[outLength(buffer.remaining())];
+                if(buffer.hasArray()){
+                    decode0(buffer.array(),
+                            buffer.arrayOffset() + buffer.position(),
+                            buffer.arrayOffset() + buffer.limit(),
+                            dst, 0);
+                    buffer.position(buffer.limit());
+                }else{
+                    byte[] src = new byte[buffer.remaining()];
+                    buffer.get(src);
+                    decode0(src, 0, src.length, dst, 0);
+                }
+                return ByteBuffer.wrap(dst);
+            } catch (IllegalArgumentException iae){
+                buffer.position(pos0);
+                throw iae;
+            }
+        }
+
+        /*
+         * Decodes the remaining chars of src straight into dst and returns the
+         * number of bytes written. Stops early when dst fills up; a dangling
+         * last digit is only rejected once it is all that remains. On illegal
+         * input the positions stay at the last complete pair.
+         */
+        public int decode(ByteBuffer src, ByteBuffer dst){
+            int sp = src.position();
+            int sl = src.limit();
+            int dp0 = dst.position();
+            int dp = dp0;
+            int dl = dst.limit();
+            try{
+                if(src.hasArray() && dst.hasArray()){
+                    int n = Math.min((sl - sp) / 2, dl - dp);
+                    int soff = src.arrayOffset();
+                    int doff = dst.arrayOffset();
+                    decode0(src.array(), soff + sp, soff + sp + n * 2, dst.array(), doff + dp);
+                    sp += n * 2;
+                    dp += n;
+                }else{
+                    while(sl - sp >= 2 && dp < dl){
+                        int hi = fromBase16[src.get(sp) & 0xff];
+                        int lo = fromBase16[src.get(sp + 1) & 0xff];
+                        if((hi | lo) < 0){
+                            throw illegal(hi < 0 ? src.get(sp) : src.get(sp + 1));
+                        }
+                        dst.put(dp++, (byte)(hi << 4 | lo));
+                        sp += 2;
+                    }
+                }
+                if(sl - sp == 1){
+                    throw new IllegalArgumentException(
+                        "Input byte array has a dangling last digit");
+                }
+            } finally {
+                src.position(sp);
+                dst.position(dp);
+            }
+            return dp - dp0;
+        }
+
+        public InputStream wrap(InputStream is){
+            Objects.requireNonNull(is);
+            return new CloneDecInputStream(is);
+        }
+
+        // srclen is even; on illegal input nothing past the bad pair is written
+        private int decode0(byte[] src, int sp, int sl, byte[] dst, int dp){
+            while(sp < sl){
+                int hi = fromBase16[src[sp++] & 0xff];
+                int lo = fromBase16[src[sp++] & 0xff];
+                if((hi | lo) < 0){
+                    throw illegal(hi < 0 ? src[sp - 2] : src[sp - 1]);
+                }
+                dst[dp++] = (byte)(hi << 4 | lo);
+            }
+            return dp;
+        }
+
+        private int decode0(CharSequence src, int sp, int sl, byte[] dst, int dp){
+            while(sp < sl){
+                char c0 = src.charAt(sp++);
+                char c1 = src.charAt(sp++);
+                int hi = c0 > 0xff ? -1 : fromBase16[c0];
+                int lo = c1 > 0xff ? -1 : fromBase16[c1];
+                if((hi | lo) < 0){
+                    throw new IllegalArgumentException(
+                        "Illegal base16 character " + Integer.toString(hi < 0 ? c0 : c1, 16));
+                }
+                dst[dp++] = (byte)(hi << 4 | lo);
+            }
+            return dp;
+        }
+
+        private static IllegalArgumentException illegal(byte b){
+            return new IllegalArgumentException(
+                "Illegal base16 character " + Integer.toString(b, 16));
+        }
+    }
+
+    /*
+     * An output stream for encoding bytes into Base16. Every byte maps to a
+     * whole pair of digits, so nothing is held back between writes.
+     */
+    private static class CloneEncOutputStream extends FilterOutputStream {
+
+        private final CloneEncoder encoder;
+        private final short[] base16;       // byte -> pair of digits
+        private boolean closed = false;
+
+        // encoded output is collected here and handed to "out" in large writes
+        private final byte[] buf = new byte[8192];
+        private int count = 0;
+
+        CloneEncOutputStream(OutputStream os, CloneEncoder encoder){
+            super(os);
+            this.encoder = encoder;
+            this.base16 = encoder.isLower ? CloneEncoder.pairsLower : CloneEncoder.pairs;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if(closed){
+                throw new IOException("Stream is closed");
+            }
+            if(buf.length - count < 2){
+                flushBuffer();
+            }
+            short s = base16[b & 0xff];
+            buf[count++] = (byte)(s >> 8);
+            buf[count++] = (byte)s;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if(closed){
+                throw new IOException("Stream is closed");
+            }
+            if(off < 0 || len < 0 || len > b.length - off){
+                throw new ArrayIndexOutOfBoundsException();
+            }
+            while(len > 0){
+                int n = Math.min(len, (buf.length - count) / 2);
+                if(n == 0){
+                    flushBuffer();
+                    continue;
+                }
+                count = encoder.encode0(b, off, off + n, buf, count);
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            if(count > 0){
+                out.write(buf, 0, count);
+                count = 0;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(!closed){
+                closed = true;
+                flushBuffer();
+            }
+            out.close();
+        }
+    }
+
+    private static class CloneDecInputStream extends InputStream {
+
+        private final InputStream is;
+        private int hi = -1;            // first digit of a pair split across reads
+        private boolean eof = false;
+        private boolean closed = false;
+
+        // read-ahead of the underlying stream, decoded a pair at a time
+        private final byte[] inBuf = new byte[8192];
+        private int inPos = 0;
+        private int inLimit = 0;
+
+        CloneDecInputStream(InputStream is){
+            this.is = is;
+        }
+
+        private boolean fill() throws IOException {
+            int n;
+            do {
+                n = is.read(inBuf, 0, inBuf.length);
+            } while(n == 0);
+            if(n < 0){
+                return false;
+            }
+            inPos = 0;
+            inLimit = n;
+            return true;
+        }
+
+        private byte[] sbBuf = new byte[1];
+
+        @Override
+        public int read() throws IOException {
+            return read(sbBuf, 0, 1) == -1 ? -1 : sbBuf[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(closed){
+                throw new IOException("Stream is closed");
+            }
+            if(off < 0 || len < 0 || len > b.length - off){
+                throw new IndexOutOfBoundsException();
+            }
+            if(eof){
+                return -1;
+            }
+            int[] base16 = CloneDecoder.fromBase16;
+            int oldOff = off;
+            while(len > 0){
+                if(inPos == inLimit && !fill()){
+                    eof = true;
+                    if(hi >= 0){
+                        throw new IOException("Base16 stream has a dangling last digit");
+                    }
+                    break;
+                }
+                if(hi < 0){
+                    int n = Math.min((inLimit - inPos) / 2, len);
+                    for(int sl = inPos + n * 2; inPos < sl; ){
+                        int h = base16[inBuf[inPos++] & 0xff];
+                        int l = base16[inBuf[inPos++] & 0xff];
+                        if((h | l) < 0){
+                            throw new IOException("Illegal base16 character " +
+                                Integer.toString(inBuf[h < 0 ? inPos - 2 : inPos - 1], 16));
+                        }
+                        b[off++] = (byte)(h << 4 | l);
+                    }
+                    len -= n;
+                    if(len == 0 || inPos == inLimit){
+                        continue;
+                    }
+                }
+                int v = inBuf[inPos++] & 0xff;
+                int d = base16[v];
+                if(d < 0){
+                    throw new IOException("Illegal base16 character " + Integer.toString(v, 16));
+                }
+                if(hi < 0){
+                    hi = d;
+                }else{
+                    b[off++] = (byte)(hi << 4 | d);
+                    len--;
+                    hi = -1;
+                }
+            }
+            return off == oldOff && eof ? -1 : off - oldOff;
+        }
+
+        @Override
+        public int available() throws IOException{
+            if(closed)
+                throw new IOException("Stream is closed");
+            return (inLimit - inPos) / 2 + is.available() / 2;
+        }
+
+        @Override
+        public void close() throws IOException{
+            if(!closed){
+                closed = true;
+                is.close();
+            }
+        }
+    }
+}
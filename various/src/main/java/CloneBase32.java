@@ -0,0 +1,815 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/*
+ * RFC 4648 Base32 and its "extended hex" alphabet, laid out like CloneBase64:
+ * 5-byte groups become 8-char units, with a partial last unit padded by '='
+ * unless the encoder was built withoutPadding(). Decoders take padded and
+ * unpadded input alike.
+ */
+public class CloneBase32 {
+
+    private CloneBase32() {}
+
+    public static CloneEncoder getEncoder(){
+        return CloneEncoder.RFC4648;
+    }
+
+    public static CloneEncoder getHexEncoder(){
+        return CloneEncoder.RFC4648_HEX;
+    }
+
+    public static CloneDecoder getDecoder(){
+        return CloneDecoder.RFC4648;
+    }
+
+    public static CloneDecoder getHexDecoder(){
+        return CloneDecoder.RFC4648_HEX;
+    }
+
+    public static class CloneEncoder {
+
+        private final boolean isHex;
+        private final boolean doPadding;
+
+        private CloneEncoder(boolean isHex, boolean doPadding){
+            this.isHex = isHex;
+            this.doPadding = doPadding;
+        }
+
+        private static final char[] toBase32 = {
+            'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M',
+            'N', 'O', 'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z',
+            '2', '3', '4', '5', '6', '7'
+        };
+
+        private static final char[] toBase32Hex = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M',
+            'N', 'O', 'P', 'Q', 'R', 'S', 'T', 'U', 'V'
+        };
+
+        // chars carrying the bits of a 0-4 byte partial group
+        private static final int[] TAIL_CHARS = {0, 2, 4, 5, 7};
+
+        static final CloneEncoder RFC4648 = new CloneEncoder(false, true);
+        static final CloneEncoder RFC4648_HEX = new CloneEncoder(true, true);
+
+        private int outLength(int srclen){
+            long len = 8L * (srclen / 5);
+            int n = srclen % 5;
+            if(n != 0){
+                len += doPadding ? 8 : TAIL_CHARS[n];
+            }
+            if(len > Integer.MAX_VALUE){
+                throw new OutOfMemoryError("Encoded size is too large");
+            }
+            return (int)len;
+        }
+
+        public byte[] encode(byte[] src){
+            byte[] dst = new byte[outLength(src.length)];
+            encode0(src, 0, src.length, dst, 0);
+            return dst;
+        }
+
+        public int encode(byte[] src, byte[] dst){
+            int len = outLength(src.length);
+            if(dst.length < len){
+                throw new IllegalArgumentException(
+                    "Output byte array is too small for encoding all input bytes");
+            }
+            return encode0(src, 0, src.length, dst, 0);
+        }
+
+        /*
+         * Encodes src[srcOff, srcOff + srcLen) into dst starting at dstOff and
+         * returns the number of bytes written.
+         */
+        public int encode(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff){
+            Objects.checkFromIndexSize(srcOff, srcLen, src.length);
+            Objects.checkFromIndexSize(dstOff, 0, dst.length);
+            int len = outLength(srcLen);
+            if(dst.length - dstOff < len){
+                throw new IllegalArgumentException(
+                    "Output byte array is too small for encoding all input bytes");
+            }
+            return encode0(src, srcOff, srcOff + srcLen, dst, dstOff) - dstOff;
+        }
+
+        @SuppressWarnings("deprecation")
+        public String encodeToString(byte[] src){
+            byte[] encoded = encode(src);
+            return new String(encoded, 0, 0, encoded.length);
+        }
+
+        public ByteBuffer encode(ByteBuffer buffer){
+            byte[] dst = new byte[outLength(buffer.remaining())];
+            if(buffer.hasArray()){
+                encode0(buffer.array(),
+                        buffer.arrayOffset() + buffer.position(),
+                        buffer.arrayOffset() + buffer.limit(),
+                        dst, 0);
+                buffer.position(buffer.limit());
+            }else{
+                byte[] src = new byte[buffer.remaining()];
+                buffer.get(src);
+                encode0(src, 0, src.length, dst, 0);
+            }
+            return ByteBuffer.wrap(dst);
+        }
+
+        /*
+         * Encodes the remaining bytes of src straight into dst and returns the
+         * number of bytes written. The remaining bytes of src are taken to be
+         * the rest of the input. Stops early, at a group boundary, when dst
+         * fills up; both positions are left just past what was consumed and
+         * produced, so the call can be repeated with a drained dst.
+         */
+        public int encode(ByteBuffer src, ByteBuffer dst){
+            int sp = src.position();
+            int sl = src.limit();
+            int dp0 = dst.position();
+            int dp = dp0;
+            int dl = dst.limit();
+
+            int slen = Math.min((sl - sp) / 5, (dl - dp) / 8) * 5;
+            dp = encodeBlock(src, sp, sp + slen, dst, dp);
+            sp += slen;
+            if(sp < sl && sl - sp < 5 && dl - dp >= outLength(sl - sp)){
+                byte[] tail = new byte[5];
+                src.get(sp, tail, 0, sl - sp);
+                byte[] out = new byte[8];
+                int n = encodeTail(tail, 0, sl - sp, out, 0);
+                dst.put(dp, out, 0, n);
+                dp += n;
+                sp = sl;
+            }
+            src.position(sp);
+            dst.position(dp);
+            return dp - dp0;
+        }
+
+        public OutputStream wrap(OutputStream os){
+            Objects.requireNonNull(os);
+            return new CloneEncOutputStream(os, this);
+        }
+
+        public CloneEncoder withoutPadding(){
+            if(!doPadding){
+                return this;
+            }
+            return new CloneEncoder(isHex, false);
+        }
+
+        // returns the new dp
+        private int encode0(byte[] src, int off, int end, byte[] dst, int dp){
+            int sl = off + (end - off) / 5 * 5;
+            dp = encodeBlock(src, off, sl, dst, dp);
+            return encodeTail(src, sl, end - sl, dst, dp);
+        }
+
+        // encodes whole 5-byte groups, returns the new dp
+        private int encodeBlock(byte[] src, int sp, int sl, byte[] dst, int dp){
+            char[] base32 = isHex ? toBase32Hex : toBase32;
+            while(sp < sl){
+                long bits = (src[sp++] & 0xffL) << 32 |
+                            (src[sp++] & 0xffL) << 24 |
+                            (src[sp++] & 0xffL) << 16 |
+                            (src[sp++] & 0xffL) <<  8 |
+                            (src[sp++] & 0xffL);
+                dst[dp++] = (byte)base32[(int)(bits >>> 35) & 0x1f];
+                dst[dp++] = (byte)base32[(int)(bits >>> 30) & 0x1f];
+                dst[dp++] = (byte)base32[(int)(bits >>> 25) & 0x1f];
+                dst[dp++] = (byte)base32[(int)(bits >>> 20) & 0x1f];
+                dst[dp++] = (byte)base32[(int)(bits >>> 15) & 0x1f];
+                dst[dp++] = (byte)base32[(int)(bits >>> 10) & 0x1f];
+                dst[dp++] = (byte)base32[(int)(bits >>> 5)  & 0x1f];
+                dst[dp++] = (byte)base32[(int)bits & 0x1f];
+            }
+            return dp;
+        }
+
+        private int encodeBlock(ByteBuffer src, int sp, int sl, ByteBuffer dst, int dp){
+            if(src.hasArray() && dst.hasArray()){
+                int soff = src.arrayOffset();
+                int doff = dst.arrayOffset();
+                return encodeBlock(src.array(), soff + sp, soff + sl, dst.array(), doff + dp) - doff;
+            }
+            char[] base32 = isHex ? toBase32Hex : toBase32;
+            while(sp < sl){
+                long bits = (src.get(sp++) & 0xffL) << 32 |
+                            (src.get(sp++) & 0xffL) << 24 |
+                            (src.get(sp++) & 0xffL) << 16 |
+                            (src.get(sp++) & 0xffL) <<  8 |
+                            (src.get(sp++) & 0xffL);
+                for(int shift = 35; shift >= 0; shift -= 5){
+                    dst.put(dp++, (byte)base32[(int)(bits >>> shift) & 0x1f]);
+                }
+            }
+            return dp;
+        }
+
+        // encodes the n < 5 bytes at src[sp], returns the new dp
+        private int encodeTail(byte[] src, int sp, int n, byte[] dst, int dp){
+            if(n == 0){
+                return dp;
+            }
+            char[] base32 = isHex ? toBase32Hex : toBase32;
+            long bits = 0;
+            for(int i = 0; i < n; i++){
+                bits |= (src[sp + i] & 0xffL) << (32 - 8 * i);
+            }
+            int chars = TAIL_CHARS[n];
+            for(int i = 0; i < chars; i++){
+                dst[dp++] = (byte)base32[(int)(bits >>> (35 - 5 * i)) & 0x1f];
+            }
+            if(doPadding){
+                for(int i = chars; i < 8; i++){
+                    dst[dp++] = '=';
+                }
+            }
+            return dp;
+        }
+    }
+
+    public static class CloneDecoder {
+
+        private final boolean isHex;
+
+        private CloneDecoder(boolean isHex){
+            this.isHex = isHex;
+        }
+
+        private static final int[] fromBase32 = new int[256];
+        static {
+            Arrays.fill(fromBase32, -1);
+            for(int i=0; i<CloneEncoder.toBase32.length; i++){
+                fromBase32[CloneEncoder.toBase32[i]] = i;
+            }
+            fromBase32['='] = -2;
+        }
+
+        private static final int[] fromBase32Hex = new int[256];
+        static {
+            Arrays.fill(fromBase32Hex, -1);
+            for(int i=0; i<CloneEncoder.toBase32Hex.length; i++){
+                fromBase32Hex[CloneEncoder.toBase32Hex[i]] = i;
+            }
+            fromBase32Hex['='] = -2;
+        }
+
+        static final CloneDecoder RFC4648 = new CloneDecoder(false);
+        static final CloneDecoder RFC4648_HEX = new CloneDecoder(true);
+
+        public byte[] decode(byte[] src){
+            byte[] dst = new byte[outLength(src, 0, src.length)];
+            int ret = decode0(src, 0, src.length, dst, 0);
+            if(ret != dst.length){
+                dst = Arrays.copyOf(dst, ret);
+            }
+            return dst;
+        }
+
+        public byte[] decode(String src){
+            return decode((CharSequence)src);
+        }
+
+        // chars are taken as is, anything above 0xff is outside the alphabet
+        public byte[] decode(CharSequence src){
+            byte[] dst = new byte[outLength(src, 0, src.length())];
+            int ret = decode0(src, 0, src.length(), dst, 0);
+            if(ret != dst.length){
+                dst = Arrays.copyOf(dst, ret);
+            }
+            return dst;
+        }
+
+        public int decode(byte[] src, byte[] dst){
+            int len = outLength(src, 0, src.length);
+            if(dst.length < len){
+                throw new IllegalArgumentException(
+                    "Output byte array is too small for decoding all input bytes");
+            }
+            return decode0(src, 0, src.length, dst, 0);
+        }
+
+        /*
+         * Decodes src[srcOff, srcOff + srcLen) into dst starting at dstOff and
+         * returns the number of bytes written.
+         */
+        public int decode(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff){
+            Objects.checkFromIndexSize(srcOff, srcLen, src.length);
+            Objects.checkFromIndexSize(dstOff, 0, dst.length);
+            int len = outLength(src, srcOff, srcOff + srcLen);
+            if(dst.length - dstOff < len){
+                throw new IllegalArgumentException(
+                    "Output byte array is too small for decoding all input bytes");
+            }
+            return decode0(src, srcOff, srcOff + srcLen, dst, dstOff) - dstOff;
+        }
+
+        public ByteBuffer decode(ByteBuffer buffer){
+            int pos0 = buffer.position();
+            try{
+                byte[] src;
+                int sp, sl;
+                if(buffer.hasArray()){
+                    src = buffer.array();
+                    sp = buffer.arrayOffset() + buffer.position();
+                    sl = buffer.arrayOffset() + buffer.limit();
+                    buffer.position(buffer.limit());
+                }else{
+                    src = new byte[buffer.remaining()];
+                    buffer.get(src);
+                    sp = 0;
+                    sl = src.length;
+                }
+                byte[] dst = new byte[outLength(src, sp, sl)];
+                return ByteBuffer.wrap(dst, 0, decode0(src, sp, sl, dst, 0));
+            } catch (IllegalArgumentException iae){
+                buffer.position(pos0);
+                throw iae;
+            }
+        }
+
+        /*
+         * Decodes the remaining chars of src straight into dst and returns the
+         * number of bytes written. The remaining chars of src are taken to be
+         * the rest of the input. Stops early, at an 8-char unit boundary, when
+         * dst fills up; both positions are left just past what was consumed
+         * and produced. On illegal input the positions stay at the last
+         * complete unit before the exception is thrown.
+         */
+        public int decode(ByteBuffer src, ByteBuffer dst){
+            int sp = src.position();
+            int sl = src.limit();
+            int dp0 = dst.position();
+            int dp = dp0;
+            int dl = dst.limit();
+            try{
+                // every unit but the last one is a whole, unpadded unit
+                while(sl - sp > 8 && dl - dp >= 5){
+                    int n = decodeBlock(src, sp, sp + Math.min((sl - sp - 1) / 8, (dl - dp) / 5) * 8,
+                                        dst, dp);
+                    if(n == 0){
+                        byte[] rest = new byte[sl - sp];
+                        src.get(sp, rest);
+                        decode0(rest, 0, rest.length, new byte[outLength(rest, 0, rest.length)], 0);
+                        throw new IllegalArgumentException(
+                            "Input byte array has wrong 8-byte ending unit");
+                    }
+                    sp += n;
+                    dp += n / 8 * 5;
+                }
+                if(0 < sl - sp && sl - sp <= 8){
+                    byte[] unit = new byte[sl - sp];
+                    src.get(sp, unit);
+                    byte[] out = new byte[5];
+                    int n = decode0(unit, 0, unit.length, out, 0);
+                    if(dl - dp >= n){
+                        dst.put(dp, out, 0, n);
+                        dp += n;
+                        sp = sl;
+                    }
+                }
+            } finally {
+                src.position(sp);
+                dst.position(dp);
+            }
+            return dp - dp0;
+        }
+
+        public InputStream wrap(InputStream is){
+            Objects.requireNonNull(is);
+            return new CloneDecInputStream(is, this);
+        }
+
+        // trailing padding is not counted, illegal chars are left to decode0
+        private int outLength(byte[] src, int sp, int sl){
+            int paddings = 0;
+            while(sl - paddings > sp && paddings < 6 && src[sl - paddings - 1] == '='){
+                paddings++;
+            }
+            return (int)((long)(sl - sp - paddings) * 5 / 8);
+        }
+
+        private int outLength(CharSequence src, int sp, int sl){
+            int paddings = 0;
+            while(sl - paddings > sp && paddings < 6 && src.charAt(sl - paddings - 1) == '='){
+                paddings++;
+            }
+            return (int)((long)(sl - sp - paddings) * 5 / 8);
+        }
+
+        private int decode0(byte[] src, int sp, int sl, byte[] dst, int dp){
+            int[] base32 = isHex ? fromBase32Hex : fromBase32;
+            int n = decodeBlock(src, sp, sp + (sl - sp) / 8 * 8, dst, dp);
+            sp += n;
+            dp += n / 8 * 5;
+
+            // the last unit, or whatever stopped decodeBlock
+            long bits = 0;
+            int chars = 0;
+            while(sp < sl){
+                int b = base32[src[sp++] & 0xff];
+                if(b < 0){
+                    if(b == -2){
+                        // the padding has to complete the unit and end the input
+                        if(chars == 0 || sl - sp != 7 - chars){
+                            throw new IllegalArgumentException(
+                                "Input byte array has wrong 8-byte ending unit");
+                        }
+                        while(sp < sl){
+                            if(src[sp++] != '='){
+                                throw new IllegalArgumentException(
+                                    "Input byte array has wrong 8-byte ending unit");
+                            }
+                        }
+                        break;
+                    }
+                    throw new IllegalArgumentException(
+                        "Illegal base32 character " + Integer.toString(src[sp - 1], 16));
+                }
+                bits = bits << 5 | b;
+                if(++chars == 8){
+                    dp = putUnit(bits, 5, dst, dp);
+                    bits = 0;
+                    chars = 0;
+                }
+            }
+            return decodeTail(bits, chars, dst, dp);
+        }
+
+        // decode0 for char sources, without going through getBytes
+        private int decode0(CharSequence src, int sp, int sl, byte[] dst, int dp){
+            int[] base32 = isHex ? fromBase32Hex : fromBase32;
+            long bits = 0;
+            int chars = 0;
+            while(sp < sl){
+                char c = src.charAt(sp++);
+                int b = c > 0xff ? -1 : base32[c];
+                if(b < 0){
+                    if(b == -2){        // padding, see decode0(byte[])
+                        if(chars == 0 || sl - sp != 7 - chars){
+                            throw new IllegalArgumentException(
+                                "Input byte array has wrong 8-byte ending unit");
+                        }
+                        while(sp < sl){
+                            if(src.charAt(sp++) != '='){
+                                throw new IllegalArgumentException(
+                                    "Input byte array has wrong 8-byte ending unit");
+                            }
+                        }
+                        break;
+                    }
+                    throw new IllegalArgumentException(
+                        "Illegal base32 character " + Integer.toString(c, 16));
+                }
+                bits = bits << 5 | b;
+                if(++chars == 8){
+                    dp = putUnit(bits, 5, dst, dp);
+                    bits = 0;
+                    chars = 0;
+                }
+            }
+            return decodeTail(bits, chars, dst, dp);
+        }
+
+        /*
+         * Decodes whole 8-char units until one holds padding or an illegal
+         * char, and returns the number of chars consumed.
+         */
+        private int decodeBlock(byte[] src, int sp, int sl, byte[] dst, int dp){
+            int[] base32 = isHex ? fromBase32Hex : fromBase32;
+            int sp0 = sp;
+            while(sp < sl){
+                int b0 = base32[src[sp] & 0xff];
+                int b1 = base32[src[sp + 1] & 0xff];
+                int b2 = base32[src[sp + 2] & 0xff];
+                int b3 = base32[src[sp + 3] & 0xff];
+                int b4 = base32[src[sp + 4] & 0xff];
+                int b5 = base32[src[sp + 5] & 0xff];
+                int b6 = base32[src[sp + 6] & 0xff];
+                int b7 = base32[src[sp + 7] & 0xff];
+                if((b0 | b1 | b2 | b3 | b4 | b5 | b6 | b7) < 0){
+                    break;
+                }
+                long bits = (long)b0 << 35 | (long)b1 << 30 | (long)b2 << 25 |
+                            b3 << 20 | b4 << 15 | b5 << 10 | b6 << 5 | b7;
+                dst[dp++] = (byte)(bits >>> 32);
+                dst[dp++] = (byte)(bits >>> 24);
+                dst[dp++] = (byte)(bits >>> 16);
+                dst[dp++] = (byte)(bits >>> 8);
+                dst[dp++] = (byte)bits;
+                sp += 8;
+            }
+            return sp - sp0;
+        }
+
+        private int decodeBlock(ByteBuffer src, int sp, int sl, ByteBuffer dst, int dp){
+            if(src.hasArray() && dst.hasArray()){
+                int soff = src.arrayOffset();
+                int doff = dst.arrayOffset();
+                return decodeBlock(src.array(), soff + sp, soff + sl, dst.array(), doff + dp);
+            }
+            int[] base32 = isHex ? fromBase32Hex : fromBase32;
+            int sp0 = sp;
+            while(sp < sl){
+                long bits = 0;
+                int check = 0;
+                for(int i = 0; i < 8; i++){
+                    int b = base32[src.get(sp + i) & 0xff];
+                    check |= b;
+                    bits = bits << 5 | (b & 0x1f);
+                }
+                if(check < 0){
+                    break;
+                }
+                for(int shift = 32; shift >= 0; shift -= 8){
+                    dst.put(dp++, (byte)(bits >>> shift));
+                }
+                sp += 8;
+            }
+            return sp - sp0;
+        }
+
+        // writes the top n of the 5 bytes in a 40-bit unit
+        private static int putUnit(long bits, int n, byte[] dst, int dp){
+            for(int i = 0; i < n; i++){
+                dst[dp++] = (byte)(bits >>> (32 - 8 * i));
+            }
+            return dp;
+        }
+
+        // a partial last unit of 2, 4, 5 or 7 chars carries 1-4 bytes
+        private static int decodeTail(long bits, int chars, byte[] dst, int dp){
+            if(chars == 1 || chars == 3 || chars == 6){
+                throw new IllegalArgumentException(
+                    "Last unit does not have enough valid bits");
+            }
+            return putUnit(bits << (40 - 5 * chars), chars * 5 / 8, dst, dp);
+        }
+    }
+
+    /*
+     * An output stream for encoding bytes into Base32.
+     */
+    private static class CloneEncOutputStream extends FilterOutputStream {
+
+        private final CloneEncoder encoder;
+        private final byte[] group = new byte[5];   // bytes of a partial group
+        private int leftover = 0;
+        private boolean closed = false;
+
+        // encoded output is collected here and handed to "out" in large writes
+        private final byte[] buf = new byte[8192];
+        private int count = 0;
+
+        CloneEncOutputStream(OutputStream os, CloneEncoder encoder){
+            super(os);
+            this.encoder = encoder;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if(closed){
+                throw new IOException("Stream is closed");
+            }
+            group[leftover++] = (byte)b;
+            if(leftover == 5){
+                writeGroup();
+            }
+        }
+
+        private void writeGroup() throws IOException {
+            if(buf.length - count < 8){
+                flushBuffer();
+            }
+            count = encoder.encodeBlock(group, 0, 5, buf, count);
+            leftover = 0;
+        }
+
+        private void flushBuffer() throws IOException {
+            if(count > 0){
+                out.write(buf, 0, count);
+                count = 0;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if(closed){
+                throw new IOException("Stream is closed");
+            }
+            if(off < 0 || len < 0 || len > b.length - off){
+                throw new ArrayIndexOutOfBoundsException();
+            }
+            while(leftover != 0 && len > 0){
+                group[leftover++] = b[off++];
+                len--;
+                if(leftover == 5){
+                    writeGroup();
+                }
+            }
+            if(leftover != 0){
+                return;
+            }
+            int sl = off + len / 5 * 5;
+            while(off < sl){
+                int groups = Math.min((sl - off) / 5, (buf.length - count) / 8);
+                if(groups == 0){
+                    flushBuffer();
+                    continue;
+                }
+                count = encoder.encodeBlock(b, off, off + groups * 5, buf, count);
+                off += groups * 5;
+            }
+            leftover = len % 5;
+            System.arraycopy(b, off, group, 0, leftover);
+        }
+
+        // only whole groups have been encoded so far, a pending 1-4 bytes stay
+        // until close()
+        @Override
+        public void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(!closed){
+                closed = true;
+                if(leftover != 0){
+                    if(buf.length - count < 8){
+                        flushBuffer();
+                    }
+                    count = encoder.encodeTail(group, 0, leftover, buf, count);
+                }
+                flushBuffer();
+            }
+            leftover = 0;
+            out.close();
+        }
+    }
+
+    private static class CloneDecInputStream extends InputStream {
+
+        private final InputStream is;
+        private final CloneDecoder decoder;
+        private final int[] base32;     // base32 -> 5-bit mapping
+        private long bits = 0;          // 40-bit buffer for decoding
+        private int chars = 0;          // chars collected in "bits"
+        private int nout = 0;           // decoded bytes of "bits" not yet returned
+        private int nextout = 32;       // "off" in "bits" of the next one
+        private boolean eof = false;
+        private boolean closed = false;
+
+        // read-ahead of the underlying stream; whole 8-char units are decoded
+        // straight out of it, everything else goes char by char through next()
+        private final byte[] inBuf = new byte[8192];
+        private int inPos = 0;
+        private int inLimit = 0;
+
+        CloneDecInputStream(InputStream is, CloneDecoder decoder){
+            this.is = is;
+            this.decoder = decoder;
+            this.base32 = decoder.isHex ? CloneDecoder.fromBase32Hex : CloneDecoder.fromBase32;
+        }
+
+        private int next() throws IOException {
+            if(inPos == inLimit && !fill()){
+                return -1;
+            }
+            return inBuf[inPos++] & 0xff;
+        }
+
+        private boolean fill() throws IOException {
+            int n;
+            do {
+                n = is.read(inBuf, 0, inBuf.length);
+            } while(n == 0);
+            if(n < 0){
+                return false;
+            }
+            inPos = 0;
+            inLimit = n;
+            return true;
+        }
+
+        private byte[] sbBuf = new byte[1];
+
+        @Override
+        public int read() throws IOException {
+            return read(sbBuf, 0, 1) == -1 ? -1 : sbBuf[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(closed){
+                throw new IOException("Stream is closed");
+            }
+            if(eof && nout == 0){
+                return -1;
+            }
+            if(off < 0 || len < 0 || len > b.length - off){
+                throw new IndexOutOfBoundsException();
+            }
+            if(len == 0){
+                return 0;
+            }
+
+            int oldOff = off;
+            while(true){
+                while(nout > 0 && len > 0){
+                    b[off++] = (byte)(bits >>> nextout);
+                    nextout -= 8;
+                    nout--;
+                    len--;
+                }
+                if(len == 0 || eof){
+                    break;
+                }
+                // end of input is left to next() below
+                if(chars == 0 && len >= 5 && (inPos < inLimit || fill())){
+                    int n = decoder.decodeBlock(inBuf, inPos,
+                            inPos + Math.min((inLimit - inPos) / 8, len / 5) * 8, b, off);
+                    inPos += n;
+                    off += n / 8 * 5;
+                    len -= n / 8 * 5;
+                    if(len == 0){
+                        break;
+                    }
+                }
+                int v = next();
+                if(v == -1){
+                    eof = true;
+                    endUnit();
+                    continue;
+                }
+                if(v == '='){
+                    // the padding has to complete the unit
+                    if(chars == 0){
+                        throw new IOException("Illegal base32 ending sequence:" + chars);
+                    }
+                    for(int i = chars + 1; i < 8; i++){
+                        if(next() != '='){
+                            throw new IOException("Illegal base32 ending sequence:" + chars);
+                        }
+                    }
+                    eof = true;
+                    endUnit();
+                    continue;
+                }
+                int c = v;
+                if((v = base32[v]) < 0){
+                    throw new IOException("Illegal base32 character " + Integer.toString(c, 16));
+                }
+                if(chars == 0){
+                    bits = 0;
+                }
+                bits = bits << 5 | v;
+                if(++chars == 8){
+                    chars = 0;
+                    nout = 5;
+                    nextout = 32;
+                }
+            }
+            return off == oldOff ? -1 : off - oldOff;
+        }
+
+        // hands out the bytes of a partial last unit
+        private void endUnit() throws IOException {
+            if(chars == 1 || chars == 3 || chars == 6){
+                throw new IOException("Base32 stream has an incomplete last unit of " + chars);
+            }
+            if(chars > 0){
+                bits <<= 40 - 5 * chars;
+                nout = chars * 5 / 8;
+                nextout = 32;
+                chars = 0;
+            }
+        }
+
+        @Override
+        public int available() throws IOException{
+            if(closed)
+                throw new IOException("Stream is closed");
+            return (inLimit - inPos) + is.available();
+        }
+
+        @Override
+        public void close() throws IOException{
+            if(!closed){
+                closed = true;
+                is.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/*
+ * Base58 with the Bitcoin alphabet, for short identifiers. Unlike the
+ * RFC 4648 codecs the input is one big-endian number, so every output char
+ * depends on the whole input: there are no fixed-size units, no padding and
+ * no streaming. Each leading zero byte is kept as a leading '1'.
+ *
+ * The number is held in 32-bit limbs and converted five digits at a time
+ * (58^5 still fits in an int), which cuts the quadratic base conversion
+ * down by that factor.
+ */
+public class CloneBase58 {
+
+    private CloneBase58() {}
+
+    private static final int DIGITS_PER_STEP = 5;
+    private static final long STEP = 58L * 58 * 58 * 58 * 58;
+
+    public static CloneEncoder getEncoder(){
+        return CloneEncoder.BITCOIN;
+    }
+
+    public static CloneDecoder getDecoder(){
+        return CloneDecoder.BITCOIN;
+    }
+
+    public static class CloneEncoder {
+
+        private CloneEncoder() {}
+
+        private static final char[] toBase58 = {
+            '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'J', 'K', 'L', 'M', 'N',
+            'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z',
+            'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'm', 'n',
+            'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z'
+        };
+
+        static final CloneEncoder BITCOIN = new CloneEncoder();
+
+        // log(256) / log(58) = 1.3657 digits per byte
+        private static int maxOutLength(int srclen){
+            return (int)((long)srclen * 137 / 100) + 1;
+        }
+
+        public byte[] encode(byte[] src){
+            return encode0(src, 0, src.length);
+        }
+
+        public byte[] encode(byte[] src, int off, int len){
+            Objects.checkFromIndexSize(off, len, src.length);
+            return encode0(src, off, off + len);
+        }
+
+        @SuppressWarnings("deprecation")
+        public String encodeToString(byte[] src){
+            byte[] encoded = encode(src);
+            return new String(encoded, 0, 0, encoded.length);
+        }
+
+        public ByteBuffer encode(ByteBuffer buffer){
+            byte[] dst;
+            if(buffer.hasArray()){
+                dst = encode0(buffer.array(),
+                              buffer.arrayOffset() + buffer.position(),
+                              buffer.arrayOffset() + buffer.limit());
+                buffer.position(buffer.limit());
+            }else{
+                byte[] src = new byte[buffer.remaining()];
+                buffer.get(src);
+                dst = encode0(src, 0, src.length);
+            }
+            return ByteBuffer.wrap(dst);
+        }
+
+        private byte[] encode0(byte[] src, int off, int end){
+            int zeros = 0;
+            while(off < end && src[off] == 0){
+                off++;
+                zeros++;
+            }
+
+            // big-endian limbs, the first one holding the odd 1-3 bytes
+            int len = end - off;
+            int[] limbs = new int[(len + 3) / 4];
+            for(int i = 0, sp = off; sp < end; i++){
+                int n = i == 0 && (len & 3) != 0 ? len & 3 : 4;
+                int limb = 0;
+                for(int k = 0; k < n; k++){
+                    limb = limb << 8 | (src[sp++] & 0xff);
+                }
+                limbs[i] = limb;
+            }
+
+            // digits come out least significant first, right to left in buf
+            byte[] buf = new byte[maxOutLength(len) + DIGITS_PER_STEP];
+            int bp = buf.length;
+            int first = 0;
+            while(first < limbs.length){
+                long rem = 0;
+                for(int i = first; i < limbs.length; i++){
+                    long cur = rem << 32 | (limbs[i] & 0xffffffffL);
+                    limbs[i] = (int)(cur / STEP);
+                    rem = cur % STEP;
+                }
+                while(first < limbs.length && limbs[first] == 0){
+                    first++;
+                }
+                // all five digits count unless this was the most significant step
+                for(int k = 0; k < DIGITS_PER_STEP; k++){
+                    buf[--bp] = (byte)toBase58[(int)(rem % 58)];
+                    rem /= 58;
+                    if(rem == 0 && first == limbs.length){
+                        break;
+                    }
+                }
+            }
+
+            byte[] dst = new byte[zeros + buf.length - bp];
+            Arrays.fill(dst, 0, zeros, (byte)'1');
+            System.arraycopy(buf, bp, dst, zeros, buf.length - bp);
+            return dst;
+        }
+    }
+
+    public static class CloneDecoder {
+
+        private CloneDecoder() {}
+
+        private static final int[] fromBase58 = new int[256];
+        static {
+            Arrays.fill(fromBase58, -1);
+            for(int i=0; i<CloneEncoder.toBase58.length; i++){
+                fromBase58[CloneEncoder.toBase58[i]] = i;
+            }
+        }
+
+        static final CloneDecoder BITCOIN = new CloneDecoder();
+
+        public byte[] decode(byte[] src){
+            return decode(src, 0, src.length);
+        }
+
+        public byte[] decode(byte[] src, int off, int len){
+            Objects.checkFromIndexSize(off, len, src.length);
+            byte[] digits = new byte[len];
+            for(int i = 0; i < len; i++){
+                int b = fromBase58[src[off + i] & 0xff];
+                if(b < 0){
+                    throw new IllegalArgumentException(
+                        "Illegal base58 character " + Integer.toString(src[off + i], 16));
+                }
+                digits[i] = (byte)b;
+            }
+            return decode0(digits);
+        }
+
+        public byte[] decode(String src){
+            return decode((CharSequence)src);
+        }
+
+        // chars are taken as is, anything above 0xff is outside the alphabet
+        public byte[] decode(CharSequence src){
+            byte[] digits = new byte[src.length()];
+            for(int i = 0; i < digits.length; i++){
+                char c = src.charAt(i);
+                int b = c > 0xff ? -1 : fromBase58[c];
+                if(b < 0){
+                    throw new IllegalArgumentException(
+                        "Illegal base58 character " + Integer.toString(c, 16));
+                }
+                digits[i] = (byte)b;
+            }
+            return decode0(digits);
+        }
+
+        public ByteBuffer decode(ByteBuffer buffer){
+            int pos0 = buffer.position();
+            try{
+                byte[] dst;
+                if(buffer.hasArray()){
+                    dst = decode(buffer.array(),
+                                 buffer.arrayOffset() + buffer.position(),
+                                 buffer.remaining());
+                    buffer.position(buffer.limit());
+                }else{
+                    byte[] src = new byte[buffer.remaining()];
+                    buffer.get(src);
+                    dst = decode(src);
+                }
+                return ByteBuffer.wrap(dst);
+            } catch (IllegalArgumentException iae){
+                buffer.position(pos0);
+                throw iae;
+            }
+        }
+
+        // digits holds the already validated digit values, most significant first
+        private byte[] decode0(byte[] digits){
+            int zeros = 0;
+            while(zeros < digits.length && digits[zeros] == 0){
+                zeros++;
+            }
+
+            // little-endian limbs, log(58) / log(256) = 0.7322 bytes per digit
+            int n = digits.length - zeros;
+            int[] limbs = new int[(int)((long)n * 733 / 1000 + 4) / 4 + 1];
+            int used = 0;
+            for(int dp = zeros; dp < digits.length; ){
+                int step = Math.min(DIGITS_PER_STEP, digits.length - dp);
+                long mul = 1;
+                long carry = 0;
+                for(int k = 0; k < step; k++){
+                    mul *= 58;
+                    carry = carry * 58 + digits[dp++];
+                }
+                for(int i = 0; i < used; i++){
+                    long cur = (limbs[i] & 0xffffffffL) * mul + carry;
+                    limbs[i] = (int)cur;
+                    carry = cur >>> 32;
+                }
+                if(carry != 0){
+                    limbs[used++] = (int)carry;
+                }
+            }
+
+            int bytes = used * 4;
+            while(bytes > 0 && (limbs[(bytes - 1) / 4] >>> ((bytes - 1) % 4 * 8) & 0xff) == 0){
+                bytes--;
+            }
+            byte[] dst = new byte[zeros + bytes];
+            for(int i = 0; i < bytes; i++){
+                dst[dst.length - 1 - i] = (byte)(limbs[i / 4] >>> (i % 4 * 8));
+            }
+            return dst;
+        }
+    }
+}
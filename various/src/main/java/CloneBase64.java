@@ -1,16 +1,62 @@
+import java.io.EOFException;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteOrder;
+import java.nio.charset.CoderResult;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+import static jdk.incubator.vector.VectorOperators.EQ;
+import static jdk.incubator.vector.VectorOperators.GE;
+import static jdk.incubator.vector.VectorOperators.LE;
+import static jdk.incubator.vector.VectorOperators.LSHL;
+import static jdk.incubator.vector.VectorOperators.LSHR;
 
 public class CloneBase64 {
 
     private CloneBase64() {}
 
+    // The vector path is only taken when jdk.incubator.vector was added to the
+    // boot layer (--add-modules) and the hardware has real SIMD registers.
+    // -Dclonebase64.vectorized=false forces the scalar loops.
+    private static final boolean VECTORIZED = vectorSupported();
+
+    // smallest piece of work handed to a task by encodeParallel/decodeParallel
+    private static final int PARALLEL_CHUNK = 1 << 20;
+
+    private static boolean vectorSupported(){
+        if(!Boolean.parseBoolean(System.getProperty("clonebase64.vectorized", "true"))){
+            return false;
+        }
+        if(!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()){
+            return false;
+        }
+        return CloneVectorCodec.supported();
+    }
+
     public static CloneEncoder getEncoder(){
         return CloneEncoder.RFC4648;
     }
@@ -33,10 +79,12 @@ public class CloneBase64 {
                 );
             }
         }
+        // rounded down first, so lengths under 4 mean no line breaks as well
+        lineLength = lineLength >> 2 << 2;
         if(lineLength <= 0){
             return CloneEncoder.RFC4648;
         }
-        return new CloneEncoder(false, lineSeparator, lineLength >> 2 << 2, true);
+        return new CloneEncoder(false, lineSeparator, lineLength, true);
     }
 
     public static CloneDecoder getDecoder(){
@@ -106,7 +154,7 @@ public class CloneBase64 {
         public byte[] encode(byte[] src){
             int len = outLength(src.length);
             byte[] dst = new byte[len];
-            int ret = encode0(src, 0, src.length, dst);
+            int ret = encode0(src, 0, src.length, dst, 0);
             if(ret != dst.length){
                 return Arrays.copyOf(dst, ret);
             }
@@ -120,7 +168,39 @@ public class CloneBase64 {
                 throw new IllegalArgumentException(
                     "Output byte array is too small for encoding all input bytes");
             }
-            return encode0(src, 0, src.length, dst);
+            return encode0(src, 0, src.length, dst, 0);
+        }
+
+        /*
+         * Encodes src[srcOff, srcOff + srcLen) into dst starting at dstOff and
+         * returns the number of bytes written.
+         */
+        public int encode(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff){
+            Objects.checkFromIndexSize(srcOff, srcLen, src.length);
+            Objects.checkFromIndexSize(dstOff, 0, dst.length);
+            int len = outLength(srcLen);
+            if(dst.length - dstOff < len){
+                throw new IllegalArgumentException(
+                    "Output byte array is too small for encoding all input bytes");
+            }
+            return encode0(src, srcOff, srcOff + srcLen, dst, dstOff) - dstOff;
+        }
+
+        // appends the encoded chars to sb, growing it at most once
+        public StringBuilder encodeTo(byte[] src, int off, int len, StringBuilder sb){
+            Objects.checkFromIndexSize(off, len, src.length);
+            sb.ensureCapacity(sb.length() + outLength(len));
+            try{
+                encode0(src, off, off + len, sb);
+            } catch (IOException e){
+                throw new UncheckedIOException(e);     // not thrown by StringBuilder
+            }
+            return sb;
+        }
+
+        public void encodeTo(byte[] src, int off, int len, Appendable out) throws IOException {
+            Objects.checkFromIndexSize(off, len, src.length);
+            encode0(src, off, off + len, out);
         }
 
         @SuppressWarnings("deprecation")
@@ -137,12 +217,12 @@ public class CloneBase64 {
                 ret = encode0(buffer.array(),
                             buffer.arrayOffset() + buffer.position(),
                             buffer.arrayOffset() + buffer.limit(),
-                            dst);
+                            dst, 0);
                 buffer.position(buffer.limit());
             }else{
                 byte[] src = new byte[buffer.remaining()];
                 buffer.get(src);
-                ret = encode0(src, 0, src.length, dst);
+                ret = encode0(src, 0, src.length, dst, 0);
             }
 
             if(ret != dst.length){
@@ -152,10 +232,188 @@ public class CloneBase64 {
             return ByteBuffer.wrap(dst);
         }
 
+        /*
+         * Encodes the remaining bytes of src straight into dst, without any
+         * intermediate array, and returns the number of bytes written. The
+         * remaining bytes of src are taken to be the rest of the input.
+         *
+         * Stops early when dst fills up; both positions are left just past what
+         * was consumed and produced, so the call can be repeated with a drained
+         * dst until src has nothing remaining. MIME encoders only stop at line
+         * boundaries (or inside the last line), so dst must hold at least one
+         * line and its separator.
+         */
+        public int encode(ByteBuffer src, ByteBuffer dst){
+            char[] base64 = isURL ? toBase64URL : toBase64;
+            int sp = src.position();
+            int sl = src.limit();
+            int dp0 = dst.position();
+            int dp = dp0;
+            int dl = dst.limit();
+            int linelen = linemax > 0 ? linemax / 4 * 3 : Integer.MAX_VALUE;
+
+            // a full line followed by more input carries its separator
+            while(sl - sp > linelen && dl - dp >= linemax + newline.length){
+                dp = encodeBlock(src, sp, sp + linelen, dst, dp);
+                sp += linelen;
+                for(byte b : newline){
+                    dst.put(dp++, b);
+                }
+            }
+            if(sl - sp <= linelen){
+                // the last line may stop at any group
+                int slen = Math.min((sl - sp) / 3, (dl - dp) / 4) * 3;
+                dp = encodeBlock(src, sp, sp + slen, dst, dp);
+                sp += slen;
+                if(sp < sl && sl - sp < 3 && dl - dp >= outLength(sl - sp)){
+                    int b0 = src.get(sp++) & 0xff;
+                    dst.put(dp++, (byte)base64[b0 >> 2]);
+                    if(sp == sl){
+                        dst.put(dp++, (byte)base64[(b0 << 4) & 0x3f]);
+                        if(doPadding){
+                            dst.put(dp++, (byte)'=');
+                            dst.put(dp++, (byte)'=');
+                        }
+                    }else{
+                        int b1 = src.get(sp++) & 0xff;
+                        dst.put(dp++, (byte)base64[(b0 << 4) & 0x3f | (b1 >> 4)]);
+                        dst.put(dp++, (byte)base64[(b1 << 2) & 0x3f]);
+                        if(doPadding){
+                            dst.put(dp++, (byte)'=');
+                        }
+                    }
+                }
+            }
+            src.position(sp);
+            dst.position(dp);
+            return dp - dp0;
+        }
+
+        /*
+         * Same output as encode(byte[]), but large inputs are cut into chunks of
+         * whole 3-byte groups (whole lines for MIME) that are encoded
+         * concurrently into their precomputed slots of one destination array.
+         */
+        public byte[] encodeParallel(byte[] src){
+            return encodeParallel(src, ForkJoinPool.commonPool());
+        }
+
+        public byte[] encodeParallel(byte[] src, ForkJoinPool pool){
+            Objects.requireNonNull(pool);
+            if(src.length < 2 * PARALLEL_CHUNK){
+                return encode(src);
+            }
+            byte[] dst = new byte[outLength(src.length)];
+            pool.invoke(new EncodeTask(src, 0, src.length, dst, 0));
+            return dst;
+        }
+
+        /*
+         * Encodes src[sp, sl) into dst at dp. All but the last task cover whole
+         * units (a group, or a line plus its separator for MIME), so the
+         * position of every split is known up front.
+         */
+        private class EncodeTask extends RecursiveAction {
+
+            private static final long serialVersionUID = -3425718936621034585L;
+
+            private final byte[] src;
+            private final int sp, sl;
+            private final byte[] dst;
+            private final int dp;
+
+            EncodeTask(byte[] src, int sp, int sl, byte[] dst, int dp){
+                this.src = src;
+                this.sp = sp;
+                this.sl = sl;
+                this.dst = dst;
+                this.dp = dp;
+            }
+
+            @Override
+            protected void compute(){
+                int unit = linemax > 0 ? linemax / 4 * 3 : 3;
+                int units = (sl - sp) / unit;
+                if(sl - sp < 2 * PARALLEL_CHUNK || units < 2){
+                    int end = encode0(src, sp, sl, dst, dp);
+                    if(linemax > 0 && sl < src.length){
+                        for(byte b : newline){
+                            dst[end++] = b;
+                        }
+                    }
+                    return;
+                }
+                int mid = sp + units / 2 * unit;
+                int unitlen = linemax > 0 ? linemax + newline.length : 4;
+                invokeAll(new EncodeTask(src, sp, mid, dst, dp),
+                          new EncodeTask(src, mid, sl, dst, dp + (mid - sp) / unit * unitlen));
+            }
+        }
+
         public OutputStream wrap(OutputStream os){
             Objects.requireNonNull(os);
-            return new CloneEncOutputStream(os, isURL ? toBase64URL : toBase64,
-                    newline, linemax, doPadding);
+            return new CloneEncOutputStream(os, this);
+        }
+
+        /*
+         * Compresses and encodes in one pass: whatever is written is deflated
+         * (zlib framing) into a fixed 8 KB block that is encoded straight into
+         * the output buffer, so no compressed copy of the payload is ever held.
+         * Closing the stream finishes both and closes os.
+         */
+        public OutputStream wrapDeflating(OutputStream os){
+            Objects.requireNonNull(os);
+            Deflater deflater = new Deflater();
+            return new DeflaterOutputStream(new CloneEncOutputStream(os, this), deflater, 8192){
+                @Override
+                public void close() throws IOException {
+                    try{
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        // deflater is left to the caller, e.g. to be reset() and reused
+        public OutputStream wrapDeflating(OutputStream os, Deflater deflater){
+            Objects.requireNonNull(os);
+            Objects.requireNonNull(deflater);
+            return new DeflaterOutputStream(new CloneEncOutputStream(os, this), deflater, 8192);
+        }
+
+        // same as wrapDeflating, with GZIP framing; the header is written here
+        public OutputStream wrapGzip(OutputStream os) throws IOException {
+            Objects.requireNonNull(os);
+            return new GZIPOutputStream(new CloneEncOutputStream(os, this), 8192);
+        }
+
+        /*
+         * Deflates the remaining bytes of src (zlib framing) and writes them
+         * encoded to out, through one fixed 8 KB block; direct buffers are
+         * read in place. Returns the number of bytes written. out is neither
+         * flushed nor closed.
+         */
+        public long encodeDeflated(ByteBuffer src, OutputStream out) throws IOException {
+            Objects.requireNonNull(out);
+            CloneEncOutputStream enc = new CloneEncOutputStream(out, this);
+            Deflater deflater = new Deflater();
+            try{
+                byte[] block = new byte[8192];
+                deflater.setInput(src);
+                deflater.finish();
+                while(!deflater.finished()){
+                    enc.write(block, 0, deflater.deflate(block));
+                }
+                return enc.finish();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        public CloneStreamEncoder newStreamEncoder(){
+            return new CloneStreamEncoder(this);
         }
 
         public CloneEncoder withoutPadding(){
@@ -165,7 +423,7 @@ public class CloneBase64 {
             return new CloneEncoder(isURL, newline, linemax, false);
         }
 
-        private int encode0(byte[] src, int off, int end, byte[] dst){
+        private int encode0(byte[] src, int off, int end, byte[] dst, int dp){
             char[] base64 = isURL ? toBase64URL : toBase64;
             int sp = off;
             int slen = (end - off) / 3 * 3;
@@ -174,18 +432,9 @@ public class CloneBase64 {
                 slen = linemax / 4 * 3;
             }
 
-            int dp = 0;
-
             while(sp < sl){
                 int sl0 = Math.min(sp + slen, sl);
-                for(int sp0 = sp, dp0 = dp; sp0 < sl0; ){
-                    int bits = (src[sp0++] & 0xff) << 16 |
-                               (src[sp0++] & 0xff) <<  8 |
-                               (src[sp0++] & 0xff);
-                    dst[dp0++] = (byte)base64[(bits >>> 18) & 0x3f];
-                    dst[dp0++] = (byte)base64[(bits >>> 12) & 0x3f];
-                    dst[dp0++] = (byte)base64[bits & 0x3f];
-                }
+                encodeBlock(src, sp, sl0, dst, dp);
                 int dlen = (sl0 - sp) / 3 * 4;
                 dp += dlen;
                 sp = sl0;
@@ -216,6 +465,94 @@ public class CloneBase64 {
             return dp;
         }
 
+        // encode0 for char sinks, without an intermediate byte[]
+        private void encode0(byte[] src, int off, int end, Appendable dst) throws IOException {
+            char[] base64 = isURL ? toBase64URL : toBase64;
+            int sp = off;
+            int slen = (end - off) / 3 * 3;
+            int sl = off + slen;
+            if(linemax > 0 && slen > linemax / 4 * 3){
+                slen = linemax / 4 * 3;
+            }
+
+            while(sp < sl){
+                int sl0 = Math.min(sp + slen, sl);
+                for(int sp0 = sp; sp0 < sl0; ){
+                    int bits = (src[sp0++] & 0xff) << 16 |
+                               (src[sp0++] & 0xff) <<  8 |
+                               (src[sp0++] & 0xff);
+                    dst.append(base64[(bits >>> 18) & 0x3f]);
+                    dst.append(base64[(bits >>> 12) & 0x3f]);
+                    dst.append(base64[(bits >>> 6)  & 0x3f]);
+                    dst.append(base64[bits & 0x3f]);
+                }
+                int dlen = (sl0 - sp) / 3 * 4;
+                sp = sl0;
+                if(dlen == linemax && sp < end){
+                    for(byte b : newline){
+                        dst.append((char)(b & 0xff));
+                    }
+                }
+            }
+            if(sp < end) {
+                int b0 = src[sp++] & 0xff;
+                dst.append(base64[b0 >> 2]);
+                if (sp == end){
+                    dst.append(base64[(b0 << 4) & 0x3f]);
+                    if(doPadding){
+                        dst.append('=');
+                        dst.append('=');
+                    }
+                }else{
+                    int b1 = src[sp++] & 0xff;
+                    dst.append(base64[(b0 << 4) & 0x3f | (b1 >> 4)]);
+                    dst.append(base64[(b1 << 2) & 0x3f]);
+                    if(doPadding){
+                        dst.append('=');
+                    }
+                }
+            }
+        }
+
+        // encodes whole 3-byte groups, returns the new dp
+        private int encodeBlock(byte[] src, int sp, int sl, byte[] dst, int dp){
+            char[] base64 = isURL ? toBase64URL : toBase64;
+            if(VECTORIZED){
+                int n = CloneVectorCodec.encode(src, sp, sl, dst, dp, isURL);
+                sp += n;
+                dp += n / 3 * 4;
+            }
+            while(sp < sl){
+                int bits = (src[sp++] & 0xff) << 16 |
+                           (src[sp++] & 0xff) <<  8 |
+                           (src[sp++] & 0xff);
+                dst[dp++] = (byte)base64[(bits >>> 18) & 0x3f];
+                dst[dp++] = (byte)base64[(bits >>> 12) & 0x3f];
+                dst[dp++] = (byte)base64[(bits >>> 6)  & 0x3f];
+                dst[dp++] = (byte)base64[bits & 0x3f];
+            }
+            return dp;
+        }
+
+        private int encodeBlock(ByteBuffer src, int sp, int sl, ByteBuffer dst, int dp){
+            if(src.hasArray() && dst.hasArray()){
+                int soff = src.arrayOffset();
+                int doff = dst.arrayOffset();
+                return encodeBlock(src.array(), soff + sp, soff + sl, dst.array(), doff + dp) - doff;
+            }
+            char[] base64 = isURL ? toBase64URL : toBase64;
+            while(sp < sl){
+                int bits = (src.get(sp++) & 0xff) << 16 |
+                           (src.get(sp++) & 0xff) <<  8 |
+                           (src.get(sp++) & 0xff);
+                dst.put(dp++, (byte)base64[(bits >>> 18) & 0x3f]);
+                dst.put(dp++, (byte)base64[(bits >>> 12) & 0x3f]);
+                dst.put(dp++, (byte)base64[(bits >>> 6)  & 0x3f]);
+                dst.put(dp++, (byte)base64[bits & 0x3f]);
+            }
+            return dp;
+        }
+
     }
 
     public static class CloneDecoder {
@@ -239,20 +576,39 @@ public class CloneBase64 {
         private static final int[] fromBase64URL = new int[256];
 
         static{
-            Arrays.fill(fromBase64, -1);
+            Arrays.fill(fromBase64URL, -1);
             for(int i=0; i<CloneEncoder.toBase64URL.length; i++){
                 fromBase64URL[CloneEncoder.toBase64URL[i]] = i;
             }
             fromBase64URL['='] = -2;
         }
 
+        // two chars (first one in the high byte) -> their 12 bits, or -1 when
+        // either of them is outside the alphabet, padding included
+        private static final short[] fromBase64Pairs = pairs(fromBase64);
+        private static final short[] fromBase64URLPairs = pairs(fromBase64URL);
+
+        private static short[] pairs(int[] base64){
+            short[] pairs = new short[1 << 16];
+            for(int i=0; i<pairs.length; i++){
+                int hi = base64[i >>> 8];
+                int lo = base64[i & 0xff];
+                pairs[i] = (short)((hi | lo) < 0 ? -1 : hi << 6 | lo);
+            }
+            return pairs;
+        }
+
+        // reads 8 chars at once, the first one in the high byte
+        private static final VarHandle LONG_BE =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
         static final CloneDecoder RFC4648 = new CloneDecoder(false, false);
         static final CloneDecoder RFC4648_URLSAFE = new CloneDecoder(true, false);
         static final CloneDecoder RFC2045 = new CloneDecoder(false, true);
 
         public byte[] decode(byte[] src){
-            byte[] dst = new byte[outLength(src, 0, src.length)];
-            int ret = decode0(src, 0, src.length, dst);
+            byte[] dst = new byte[isMIME ? maxOutLength(src.length) : outLength(src, 0, src.length)];
+            int ret = decode0(src, 0, src.length, dst, 0, dst.length);
             if(ret != dst.length){
                 dst = Arrays.copyOf(dst, ret);
             }
@@ -260,7 +616,33 @@ public class CloneBase64 {
         }
 
         public byte[] decode(String src){
-            return decode(src.getBytes(StandardCharsets.ISO_8859_1));
+            return decode((CharSequence)src);
+        }
+
+        // chars are taken as is, anything above 0xff is outside the alphabet
+        public byte[] decode(CharSequence src){
+            int len = src.length();
+            byte[] dst = new byte[isMIME ? maxOutLength(len) : outLength(src, 0, len)];
+            int ret = decode0(src, 0, src.length(), dst, 0);
+            if(ret != dst.length){
+                dst = Arrays.copyOf(dst, ret);
+            }
+            return dst;
+        }
+
+        /*
+         * Decodes src[start, end) into dst starting at dstOff and returns the
+         * number of bytes written.
+         */
+        public int decode(CharSequence src, int start, int end, byte[] dst, int dstOff){
+            Objects.checkFromToIndex(start, end, src.length());
+            Objects.checkFromIndexSize(dstOff, 0, dst.length);
+            int len = outLength(src, start, end);
+            if(dst.length - dstOff < len){
+                throw new IllegalArgumentException(
+                    "Output byte array is too small for decoding all input bytes");
+            }
+            return decode0(src, start, end, dst, dstOff) - dstOff;
         }
 
         public int decode(byte[] src, byte[] dst){
@@ -269,7 +651,22 @@ public class CloneBase64 {
                 throw new IllegalArgumentException(
                     "Output byte array is too small for decoding all input bytes");
             }
-            return decode0(src, 0, src.length, dst);
+            return decode0(src, 0, src.length, dst, 0, len);
+        }
+
+        /*
+         * Decodes src[srcOff, srcOff + srcLen) into dst starting at dstOff and
+         * returns the number of bytes written.
+         */
+        public int decode(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff){
+            Objects.checkFromIndexSize(srcOff, srcLen, src.length);
+            Objects.checkFromIndexSize(dstOff, 0, dst.length);
+            int len = outLength(src, srcOff, srcOff + srcLen);
+            if(dst.length - dstOff < len){
+                throw new IllegalArgumentException(
+                    "Output byte array is too small for decoding all input bytes");
+            }
+            return decode0(src, srcOff, srcOff + srcLen, dst, dstOff, dstOff + len) - dstOff;
         }
 
         public ByteBuffer decode(ByteBuffer buffer){
@@ -288,17 +685,288 @@ public class CloneBase64 {
                     sp = 0;
                     sl = src.length;
                 }
-                byte[] dst = new byte[outLength(src, sp, sl)];
-                return ByteBuffer.wrap(dst, 0, decode0(src, sp, sl, dst));
+                byte[] dst = new byte[isMIME ? maxOutLength(sl - sp) : outLength(src, sp, sl)];
+                return ByteBuffer.wrap(dst, 0, decode0(src, sp, sl, dst, 0, dst.length));
             } catch (IllegalArgumentException iae){
                 buffer.position(pos0);
                 throw iae;
             }
         }
 
+        /*
+         * Decodes src straight into out, in a single pass through a fixed 8 KB
+         * block, and returns the number of bytes written. out is neither
+         * flushed nor closed.
+         */
+        public long decode(byte[] src, OutputStream out) throws IOException {
+            return decode(ByteBuffer.wrap(src), out);
+        }
+
+        public long decode(ByteBuffer src, OutputStream out) throws IOException {
+            Objects.requireNonNull(out);
+            CloneStreamDecoder decoder = newStreamDecoder();
+            byte[] block = new byte[8192];
+            ByteBuffer dst = ByteBuffer.wrap(block);
+            long written = 0;
+            while(decoder.decode(src, dst, true).isOverflow()){
+                out.write(block, 0, dst.position());
+                written += dst.position();
+                dst.clear();
+            }
+            out.write(block, 0, dst.position());
+            return written + dst.position();
+        }
+
+        /*
+         * Decodes the remaining chars of src straight into dst, without any
+         * intermediate array, and returns the number of bytes written. The
+         * remaining chars of src are taken to be the rest of the input.
+         *
+         * Stops early, at a 4-char unit boundary, when dst fills up; both
+         * positions are left just past what was consumed and produced, so the
+         * call can be repeated with a drained dst until src has nothing
+         * remaining. On illegal input the positions stay at the last complete
+         * unit before the exception is thrown.
+         */
+        public int decode(ByteBuffer src, ByteBuffer dst){
+            int[] base64 = isURL ? fromBase64URL : fromBase64;
+            int sp = src.position();
+            int sl = src.limit();
+            int dp0 = dst.position();
+            int dp = dp0;
+            int dl = dst.limit();
+            boolean arrays = VECTORIZED && src.hasArray() && dst.hasArray();
+            int vsp = arrays ? sp : sl;     // next position worth a vector attempt
+            try{
+                while(sp < sl){
+                    if(sp >= vsp){
+                        int soff = src.arrayOffset();
+                        int doff = dst.arrayOffset();
+                        int n = CloneVectorCodec.decode(src.array(), soff + sp, soff + sl,
+                                dst.array(), doff + dp, doff + dl, isURL);
+                        sp += n;
+                        dp += n / 4 * 3;
+                        vsp = sl;
+                        continue;
+                    }
+                    int p = sp;
+                    int bits = 0;
+                    int shiftto = 18;
+                    boolean padding = false;
+                    while(shiftto >= 0 && p < sl){
+                        int b = base64[src.get(p++) & 0xff];
+                        if(b >= 0){
+                            bits |= (b << shiftto);
+                            shiftto -= 6;
+                        }else if(b == -2){
+                            padding = true;
+                            break;
+                        }else if(isMIME){
+                            if(arrays){
+                                vsp = p;
+                            }
+                        }else{
+                            throw new IllegalArgumentException(
+                                "Illegal base64 character " +
+                                Integer.toString(src.get(p - 1), 16)
+                            );
+                        }
+                    }
+                    if(shiftto < 0){
+                        if(dl - dp < 3){
+                            break;
+                        }
+                        dst.put(dp++, (byte)(bits >> 16));
+                        dst.put(dp++, (byte)(bits >> 8));
+                        dst.put(dp++, (byte)(bits));
+                        sp = p;
+                        continue;
+                    }
+
+                    // the last unit, same rules as decode0
+                    if(padding && (shiftto == 6 && (p == sl || src.get(p++) != '=') ||
+                                   shiftto == 18)){
+                        throw new IllegalArgumentException(
+                            "Input byte array has wrong 4-byte ending unit");
+                    }
+                    if(shiftto == 12){
+                        throw new IllegalArgumentException(
+                            "Last unit does not have enough valid bits");
+                    }
+                    while(p < sl){
+                        if(isMIME && base64[src.get(p++) & 0xff] < 0){
+                            continue;
+                        }
+                        throw new IllegalArgumentException(
+                            "Input byte array has incorrect ending byte at " + p
+                        );
+                    }
+                    int n = shiftto == 6 ? 1 : shiftto == 0 ? 2 : 0;
+                    if(dl - dp < n){
+                        break;
+                    }
+                    if(n > 0){
+                        dst.put(dp++, (byte)(bits >> 16));
+                    }
+                    if(n > 1){
+                        dst.put(dp++, (byte)(bits >> 8));
+                    }
+                    sp = sl;
+                }
+            } finally {
+                src.position(sp);
+                dst.position(dp);
+            }
+            return dp - dp0;
+        }
+
+        /*
+         * Same result as decode(byte[]), but large inputs are cut at 4-char
+         * boundaries and decoded concurrently into their slots of one
+         * destination array. MIME input has no fixed unit positions and is
+         * decoded serially. If any chunk finds something other than whole
+         * units, the input is decoded again serially so that the exception is
+         * exactly the one decode(byte[]) throws.
+         */
+        public byte[] decodeParallel(byte[] src){
+            return decodeParallel(src, ForkJoinPool.commonPool());
+        }
+
+        public byte[] decodeParallel(byte[] src, ForkJoinPool pool){
+            Objects.requireNonNull(pool);
+            if(isMIME || src.length < 2 * PARALLEL_CHUNK){
+                return decode(src);
+            }
+            byte[] dst = new byte[outLength(src, 0, src.length)];
+            try{
+                pool.invoke(new DecodeTask(src, 0, src.length, dst, 0));
+            } catch (IllegalArgumentException iae){
+                return decode(src);
+            }
+            return dst;
+        }
+
+        private class DecodeTask extends RecursiveAction {
+
+            private static final long serialVersionUID = 5790832213495817422L;
+
+            private final byte[] src;
+            private final int sp, sl;
+            private final byte[] dst;
+            private final int dp;
+
+            DecodeTask(byte[] src, int sp, int sl, byte[] dst, int dp){
+                this.src = src;
+                this.sp = sp;
+                this.sl = sl;
+                this.dst = dst;
+                this.dp = dp;
+            }
+
+            @Override
+            protected void compute(){
+                if(sl - sp < 2 * PARALLEL_CHUNK){
+                    // each chunk keeps its writes inside its own slot
+                    int dl = sl < src.length ? dp + (sl - sp) / 4 * 3 : dst.length;
+                    int end = decode0(src, sp, sl, dst, dp, dl);
+                    // padding is only allowed in the last chunk
+                    if(sl < src.length && end - dp != (sl - sp) / 4 * 3){
+                        throw new IllegalArgumentException(
+                            "Input byte array has incorrect ending byte at " + sl);
+                    }
+                    return;
+                }
+                int mid = sp + (sl - sp) / 8 * 4;
+                invokeAll(new DecodeTask(src, sp, mid, dst, dp),
+                          new DecodeTask(src, mid, sl, dst, dp + (mid - sp) / 4 * 3));
+            }
+        }
+
         public InputStream wrap(InputStream is){
             Objects.requireNonNull(is);
-            return new CloneDecInputStream(is, isURL ? fromBase64URL : fromBase64, isMIME);
+            return new CloneDecInputStream(is, this);
+        }
+
+        /*
+         * Decodes and decompresses in one pass, the counterpart of
+         * CloneEncoder.wrapDeflating: the inflater reads decoded bytes in
+         * 8 KB blocks, which are decoded straight out of the read-ahead of is.
+         */
+        public InputStream wrapInflating(InputStream is){
+            Objects.requireNonNull(is);
+            Inflater inflater = new Inflater();
+            return new InflaterInputStream(new CloneDecInputStream(is, this), inflater, 8192){
+                @Override
+                public void close() throws IOException {
+                    try{
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+
+        // inflater is left to the caller, e.g. to be reset() and reused
+        public InputStream wrapInflating(InputStream is, Inflater inflater){
+            Objects.requireNonNull(is);
+            Objects.requireNonNull(inflater);
+            return new InflaterInputStream(new CloneDecInputStream(is, this), inflater, 8192);
+        }
+
+        // same as wrapInflating, with GZIP framing; the header is read here
+        public InputStream wrapGzip(InputStream is) throws IOException {
+            Objects.requireNonNull(is);
+            return new GZIPInputStream(new CloneDecInputStream(is, this), 8192);
+        }
+
+        /*
+         * Decodes the remaining chars of src and inflates the result (zlib
+         * framing) into out, through two fixed 8 KB blocks. Returns the number
+         * of bytes written. out is neither flushed nor closed.
+         */
+        public long decodeInflated(ByteBuffer src, OutputStream out) throws IOException {
+            Objects.requireNonNull(out);
+            CloneStreamDecoder decoder = newStreamDecoder();
+            Inflater inflater = new Inflater();
+            try{
+                ByteBuffer block = ByteBuffer.allocate(8192);
+                byte[] inflated = new byte[8192];
+                long written = 0;
+                boolean more;
+                do {
+                    more = decoder.decode(src, block.clear(), true).isOverflow();
+                    inflater.setInput(block.flip());
+                    int n;
+                    while((n = inflater.inflate(inflated)) > 0 ||
+                          !inflater.needsInput() && !inflater.finished()){
+                        if(n == 0 && inflater.needsDictionary()){
+                            throw new ZipException("Deflated input needs a preset dictionary");
+                        }
+                        out.write(inflated, 0, n);
+                        written += n;
+                    }
+                } while(more && !inflater.finished());
+                if(!inflater.finished()){
+                    throw new EOFException("Unexpected end of deflated input");
+                }
+                return written;
+            } catch (DataFormatException e){
+                throw new ZipException(e.getMessage() != null ? e.getMessage() : "Invalid deflated input");
+            } finally {
+                inflater.end();
+            }
+        }
+
+        public CloneStreamDecoder newStreamDecoder(){
+            return new CloneStreamDecoder(this);
+        }
+
+        // MIME input is decoded in a single pass into a buffer sized for the
+        // case without any separators and trimmed afterwards, instead of
+        // pre-scanning it with outLength
+        private static int maxOutLength(int len){
+            return 3 * (len / 4) + (len & 0x3) * 3 / 4;
         }
 
         private int outLength(byte[] src, int sp, int sl){
@@ -349,12 +1017,128 @@ public class CloneBase64 {
             return 3 * ((len + 3) / 4) - paddings;
         }
 
-        private int decode0(byte[] src, int sp, int sl, byte[] dst){
+        private int outLength(CharSequence src, int sp, int sl){
+            int[] base64 = isURL ? fromBase64URL : fromBase64;
+            int paddings = 0;
+            int len = sl - sp;
+
+            if(len == 0){
+                return 0;
+            }
+
+            if(len < 2){
+                if(isMIME && base64[0] == -1){
+                    return 0;
+                }
+                throw new IllegalArgumentException(
+                    "input byte[] should at least have 2 bytes for base64 bytes");
+            }
+
+            if(isMIME){
+                int n = 0;
+                while(sp < sl){
+                    char c = src.charAt(sp++);
+                    if(c == '='){
+                        len -= (sl - sp + 1);
+                        break;
+                    }
+
+                    if(c > 0xff || base64[c] == -1){
+                        n++;
+                    }
+                }
+                len -= n;
+            }else{
+                if(src.charAt(sl - 1) == '='){
+                    paddings++;
+                    if(src.charAt(sl - 2) == '='){
+                        paddings++;
+                    }
+                }
+            }
+            if(paddings == 0 && (len & 0x3) != 0){
+                paddings = 4 - (len & 0x3);
+            }
+            return 3 * ((len + 3) / 4) - paddings;
+        }
+
+        // decode0 for char sources, without going through getBytes
+        private int decode0(CharSequence src, int sp, int sl, byte[] dst, int dp){
             int[] base64 = isURL ? fromBase64URL : fromBase64;
-            int dp = 0;
             int bits = 0;
             int shiftto = 18;       // pos of first byte of 4-byte atom
             while(sp < sl){
+                char c = src.charAt(sp++);
+                int b = c > 0xff ? -1 : base64[c];
+                if(b < 0){
+                    if(b == -2){        // padding byte '=', see decode0(byte[])
+                        if(shiftto == 6 && (sp == sl || src.charAt(sp++) != '=') ||
+                           shiftto == 18){
+                            throw new IllegalArgumentException(
+                                "Input byte array has wrong 4-byte ending unit");
+                        }
+                        break;
+                    }
+                    if(isMIME){
+                        continue;
+                    }else{
+                        throw new IllegalArgumentException(
+                            "Illegal base64 character " + Integer.toString(c, 16));
+                    }
+                }
+                bits |= (b << shiftto);
+                shiftto -= 6;
+                if(shiftto < 0){
+                    dst[dp++] = (byte)(bits >> 16);
+                    dst[dp++] = (byte)(bits >> 8);
+                    dst[dp++] = (byte)(bits);
+                    shiftto = 18;
+                    bits = 0;
+                }
+            }
+
+            if(shiftto == 6){
+                dst[dp++] = (byte)(bits >> 16);
+            }else if(shiftto == 0){
+                dst[dp++] = (byte)(bits >> 16);
+                dst[dp++] = (byte)(bits >> 8);
+            }else if(shiftto == 12){
+                throw new IllegalArgumentException(
+                    "Last unit does not have enough valid bits");
+            }
+
+            while(sp < sl){
+                char c = src.charAt(sp++);
+                if(isMIME && (c > 0xff || base64[c] < 0)){
+                    continue;
+                }
+                throw new IllegalArgumentException(
+                    "Input byte array has incorrect ending byte at " + sp
+                );
+            }
+            return dp;
+        }
+
+        // dl bounds the writes of the vector kernel, which stores whole vectors
+        private int decode0(byte[] src, int sp, int sl, byte[] dst, int dp, int dl){
+            int[] base64 = isURL ? fromBase64URL : fromBase64;
+            int bits = 0;
+            int shiftto = 18;       // pos of first byte of 4-byte atom
+            int vsp = sp;           // next position worth a decodeBlock attempt
+            while(sp < sl){
+                if(shiftto == 18 && sp >= vsp){
+                    int n = decodeBlock(src, sp, sl, dst, dp, dl);
+                    sp += n;
+                    dp += n / 4 * 3;
+                    // whatever stopped the block loops (padding, line breaks,
+                    // illegal chars) is left to the char loop below, which
+                    // reports it exactly and re-arms them once a MIME
+                    // separator has been skipped
+                    vsp = sl;
+                    if(sp == sl){
+                        break;
+                    }
+                }
                 int b = src[sp++] & 0xff;
                 if((b = base64[b]) < 0){
                     if(b == -2){        // padding byte '='
@@ -371,6 +1155,7 @@ public class CloneBase64 {
                         break;
                     }
                     if(isMIME){
+                        vsp = sp;
                         continue;
                     }else{
                         throw new IllegalArgumentException(
@@ -404,7 +1189,7 @@ public class CloneBase64 {
             //anything left is invalid, if is not MIME.
             // if MIME, ignore all non-base64 character
             while(sp < sl){
-                if(isMIME && base64[src[sp++]] < 0){
+                if(isMIME && base64[src[sp++] & 0xff] < 0){
                     continue;
                 }
                 throw new IllegalArgumentException(
@@ -413,6 +1198,335 @@ public class CloneBase64 {
             }
             return dp;
         }
+
+        // decodes whole 4-char units made of alphabet chars only and stops in
+        // front of anything else; returns the number of chars consumed
+        private int decodeBlock(byte[] src, int sp, int sl, byte[] dst, int dp, int dl){
+            int sp0 = sp;
+            if(VECTORIZED){
+                int n = CloneVectorCodec.decode(src, sp, sl, dst, dp, dl, isURL);
+                sp += n;
+                dp += n / 4 * 3;
+            }
+            // 8 chars per step, validated together with one check
+            short[] pairs = isURL ? fromBase64URLPairs : fromBase64Pairs;
+            while(sl - sp >= 8 && dl - dp >= 6){
+                long chars = (long)LONG_BE.get(src, sp);
+                int p0 = pairs[(int)(chars >>> 48)];
+                int p1 = pairs[(int)(chars >>> 32) & 0xffff];
+                int p2 = pairs[(int)(chars >>> 16) & 0xffff];
+                int p3 = pairs[(int)chars & 0xffff];
+                if((p0 | p1 | p2 | p3) < 0){
+                    break;
+                }
+                int bits0 = p0 << 12 | p1;
+                int bits1 = p2 << 12 | p3;
+                dst[dp++] = (byte)(bits0 >> 16);
+                dst[dp++] = (byte)(bits0 >> 8);
+                dst[dp++] = (byte)(bits0);
+                dst[dp++] = (byte)(bits1 >> 16);
+                dst[dp++] = (byte)(bits1 >> 8);
+                dst[dp++] = (byte)(bits1);
+                sp += 8;
+            }
+            int[] base64 = isURL ? fromBase64URL : fromBase64;
+            while(sl - sp >= 4 && dl - dp >= 3){
+                int b0 = base64[src[sp] & 0xff];
+                int b1 = base64[src[sp + 1] & 0xff];
+                int b2 = base64[src[sp + 2] & 0xff];
+                int b3 = base64[src[sp + 3] & 0xff];
+                if((b0 | b1 | b2 | b3) < 0){
+                    break;
+                }
+                int bits = b0 << 18 | b1 << 12 | b2 << 6 | b3;
+                dst[dp++] = (byte)(bits >> 16);
+                dst[dp++] = (byte)(bits >> 8);
+                dst[dp++] = (byte)(bits);
+                sp += 4;
+            }
+            return sp - sp0;
+        }
+
+        private int decodeBlock(ByteBuffer src, int sp, int sl, ByteBuffer dst, int dp){
+            int dl = dst.limit();
+            if(src.hasArray() && dst.hasArray()){
+                int soff = src.arrayOffset();
+                int doff = dst.arrayOffset();
+                return decodeBlock(src.array(), soff + sp, soff + sl, dst.array(), doff + dp, doff + dl);
+            }
+            int sp0 = sp;
+            int[] base64 = isURL ? fromBase64URL : fromBase64;
+            while(sl - sp >= 4 && dl - dp >= 3){
+                int b0 = base64[src.get(sp) & 0xff];
+                int b1 = base64[src.get(sp + 1) & 0xff];
+                int b2 = base64[src.get(sp + 2) & 0xff];
+                int b3 = base64[src.get(sp + 3) & 0xff];
+                if((b0 | b1 | b2 | b3) < 0){
+                    break;
+                }
+                int bits = b0 << 18 | b1 << 12 | b2 << 6 | b3;
+                dst.put(dp++, (byte)(bits >> 16));
+                dst.put(dp++, (byte)(bits >> 8));
+                dst.put(dp++, (byte)(bits));
+                sp += 4;
+            }
+            return sp - sp0;
+        }
+    }
+
+    /*
+     * Incremental encoder for non-blocking I/O, used the way a CharsetEncoder
+     * is: feed it whatever input has arrived with endOfInput == false, drain
+     * out whenever OVERFLOW comes back, and make a last call with
+     * endOfInput == true to write the final group. The 1-2 bytes of an
+     * incomplete group and the position on the current MIME line are carried
+     * over between calls, so the concatenated output is the same as
+     * CloneEncoder.encode over the whole input.
+     *
+     * Works with anything that hands out ByteBuffers: channel reads/writes, or
+     * DataBuffer.asByteBuffer() views of a Flux<DataBuffer>. Not thread-safe.
+     */
+    public static class CloneStreamEncoder {
+
+        private final CloneEncoder encoder;
+        private final char[] base64;
+        private final byte[] carry = new byte[3];
+        private int leftover = 0;
+        private int linepos = 0;
+
+        private CloneStreamEncoder(CloneEncoder encoder){
+            this.encoder = encoder;
+            this.base64 = encoder.isURL ? CloneEncoder.toBase64URL : CloneEncoder.toBase64;
+        }
+
+        /*
+         * Returns UNDERFLOW once all of in has been consumed (and, at the end of
+         * input, everything has been written), or OVERFLOW when out is full.
+         */
+        public CoderResult encode(ByteBuffer in, ByteBuffer out, boolean endOfInput){
+            while(leftover > 0 && leftover < 3 && in.hasRemaining()){
+                carry[leftover++] = in.get();
+            }
+            if(leftover == 3){
+                if(!checkNewLine(out) || out.remaining() < 4){
+                    return CoderResult.OVERFLOW;
+                }
+                int bits = (carry[0] & 0xff) << 16 | (carry[1] & 0xff) << 8 | (carry[2] & 0xff);
+                out.put((byte)base64[(bits >>> 18) & 0x3f]);
+                out.put((byte)base64[(bits >>> 12) & 0x3f]);
+                out.put((byte)base64[(bits >>> 6)  & 0x3f]);
+                out.put((byte)base64[bits & 0x3f]);
+                linepos += 4;
+                leftover = 0;
+            }
+            if(leftover == 0){
+                while(in.remaining() >= 3){
+                    if(!checkNewLine(out)){
+                        return CoderResult.OVERFLOW;
+                    }
+                    int groups = Math.min(in.remaining() / 3, out.remaining() / 4);
+                    if(encoder.linemax > 0){
+                        groups = Math.min(groups, (encoder.linemax - linepos) / 4);
+                    }
+                    if(groups == 0){
+                        return CoderResult.OVERFLOW;
+                    }
+                    int sp = in.position();
+                    int slen = groups * 3;
+                    out.position(encoder.encodeBlock(in, sp, sp + slen, out, out.position()));
+                    in.position(sp + slen);
+                    linepos += groups * 4;
+                }
+                while(in.hasRemaining()){
+                    carry[leftover++] = in.get();
+                }
+            }
+            if(!endOfInput || leftover == 0){
+                return CoderResult.UNDERFLOW;
+            }
+
+            int len = encoder.doPadding ? 4 : leftover + 1;
+            if(!checkNewLine(out) || out.remaining() < len){
+                return CoderResult.OVERFLOW;
+            }
+            int b0 = carry[0] & 0xff;
+            out.put((byte)base64[b0 >> 2]);
+            if(leftover == 1){
+                out.put((byte)base64[(b0 << 4) & 0x3f]);
+                if(encoder.doPadding){
+                    out.put((byte)'=');
+                    out.put((byte)'=');
+                }
+            }else{
+                int b1 = carry[1] & 0xff;
+                out.put((byte)base64[(b0 << 4) & 0x3f | (b1 >> 4)]);
+                out.put((byte)base64[(b1 << 2) & 0x3f]);
+                if(encoder.doPadding){
+                    out.put((byte)'=');
+                }
+            }
+            linepos += len;
+            leftover = 0;
+            return CoderResult.UNDERFLOW;
+        }
+
+        // the separator goes in front of the first group of a new line
+        private boolean checkNewLine(ByteBuffer out){
+            if(encoder.linemax > 0 && linepos == encoder.linemax){
+                if(out.remaining() < encoder.newline.length){
+                    return false;
+                }
+                out.put(encoder.newline);
+                linepos = 0;
+            }
+            return true;
+        }
+
+        public CloneStreamEncoder reset(){
+            leftover = 0;
+            linepos = 0;
+            return this;
+        }
+    }
+
+    /*
+     * Incremental decoder for non-blocking I/O, the counterpart of
+     * CloneStreamEncoder. The partial 4-char unit, decoded bytes that did not
+     * fit into out and the padding state are carried over between calls.
+     * Illegal input is reported with the same IllegalArgumentExceptions as
+     * CloneDecoder.decode. Not thread-safe.
+     */
+    public static class CloneStreamDecoder {
+
+        private final CloneDecoder decoder;
+        private final int[] base64;
+        private int bits = 0;
+        private int shiftto = 18;       // pos of next char in "bits"
+        private int outbits = 0;        // decoded bytes waiting for room in out
+        private int nextout = -8;       // 16, 8, 0, -8 (nothing pending)
+        private boolean padding = false;    // seen "xx=", the second '=' is due
+        private boolean eof = false;
+
+        private CloneStreamDecoder(CloneDecoder decoder){
+            this.decoder = decoder;
+            this.base64 = decoder.isURL ? CloneDecoder.fromBase64URL : CloneDecoder.fromBase64;
+        }
+
+        /*
+         * Returns UNDERFLOW once all of in has been consumed (and, at the end of
+         * input, everything has been written), or OVERFLOW when out is full.
+         */
+        public CoderResult decode(ByteBuffer in, ByteBuffer out, boolean endOfInput){
+            int sp = in.position();
+            int sl = in.limit();
+            int dp = out.position();
+            int dl = out.limit();
+            try{
+                while(true){
+                    while(nextout >= 0){
+                        if(dp == dl){
+                            return CoderResult.OVERFLOW;
+                        }
+                        out.put(dp++, (byte)(outbits >> nextout));
+                        nextout -= 8;
+                    }
+                    if(sp == sl){
+                        if(!endOfInput || eof){
+                            return CoderResult.UNDERFLOW;
+                        }
+                        finish();
+                        continue;
+                    }
+                    if(shiftto == 18 && !eof){
+                        int n = decoder.decodeBlock(in, sp, sl, out, dp);
+                        sp += n;
+                        dp += n / 4 * 3;
+                        if(sp == sl){
+                            continue;
+                        }
+                    }
+
+                    int c = in.get(sp++);
+                    int b = base64[c & 0xff];
+                    if(padding){
+                        if(c != '='){
+                            throw new IllegalArgumentException(
+                                "Input byte array has wrong 4-byte ending unit");
+                        }
+                        padding = false;
+                        eof = true;
+                        pending(bits >> 16, 0);
+                    }else if(eof){
+                        // if MIME, ignore all non-base64 character
+                        if(!decoder.isMIME || b >= 0){
+                            throw new IllegalArgumentException(
+                                "Input byte array has incorrect ending byte at " + sp);
+                        }
+                    }else if(b >= 0){
+                        bits |= (b << shiftto);
+                        shiftto -= 6;
+                        if(shiftto < 0){
+                            pending(bits, 16);
+                            bits = 0;
+                            shiftto = 18;
+                        }
+                    }else if(b == -2){
+                        if(shiftto == 18){
+                            throw new IllegalArgumentException(
+                                "Input byte array has wrong 4-byte ending unit");
+                        }
+                        if(shiftto == 12){
+                            throw new IllegalArgumentException(
+                                "Last unit does not have enough valid bits");
+                        }
+                        if(shiftto == 6){
+                            padding = true;
+                        }else{
+                            eof = true;
+                            pending(bits >> 8, 8);
+                        }
+                    }else if(!decoder.isMIME){
+                        throw new IllegalArgumentException(
+                            "Illegal base64 character " + Integer.toString(c, 16));
+                    }
+                }
+            } finally {
+                in.position(sp);
+                out.position(dp);
+            }
+        }
+
+        // end of input without padding, "xx" and "xxx" are legal
+        private void finish(){
+            if(padding){
+                throw new IllegalArgumentException(
+                    "Input byte array has wrong 4-byte ending unit");
+            }
+            if(shiftto == 12){
+                throw new IllegalArgumentException(
+                    "Last unit does not have enough valid bits");
+            }
+            if(shiftto == 6){
+                pending(bits >> 16, 0);
+            }else if(shiftto == 0){
+                pending(bits >> 8, 8);
+            }
+            eof = true;
+        }
+
+        private void pending(int outbits, int nextout){
+            this.outbits = outbits;
+            this.nextout = nextout;
+        }
+
+        public CloneStreamDecoder reset(){
+            bits = 0;
+            shiftto = 18;
+            nextout = -8;
+            padding = false;
+            eof = false;
+            return this;
+        }
     }
 
     /*
@@ -424,35 +1538,82 @@ public class CloneBase64 {
         private int b0, b1, b2;
         private boolean closed = false;
 
+        private final CloneEncoder encoder;
         private final char[] base64;         // byte -> base64 mapping
         private final byte[] newline;       // line separator, if needed
         private final int linemax;
         private final boolean doPadding;    // whether or not to pad
         private int linepos = 0;
 
-        CloneEncOutputStream(OutputStream os, char[] base64,
-                             byte[] newline, int linemax, boolean doPadding){
+        // encoded output is collected here and handed to "out" in large writes
+        private final byte[] buf = new byte[8192];
+        private int count = 0;
+        private long written = 0;
+
+        CloneEncOutputStream(OutputStream os, CloneEncoder encoder){
             super(os);
-            this.base64 = base64;
-            this.newline = newline;
-            this.linemax = linemax;
-            this.doPadding = doPadding;
+            this.encoder = encoder;
+            this.base64 = encoder.isURL ? CloneEncoder.toBase64URL : CloneEncoder.toBase64;
+            this.newline = encoder.newline;
+            this.linemax = encoder.linemax;
+            this.doPadding = encoder.doPadding;
         }
 
         @Override
         public void write(int b) throws IOException {
-            byte[] buf = new byte[1];
-            buf[0] = (byte)(b & 0xff);
-            write(buf, 0, 1);
+            if(closed){
+                throw new IOException("Stream is closed");
+            }
+            if(leftover == 0){
+                b0 = b & 0xff;
+                leftover++;
+            }else if(leftover == 1){
+                b1 = b & 0xff;
+                leftover++;
+            }else{
+                b2 = b & 0xff;
+                leftover = 0;
+                writeGroup(b0 << 16 | b1 << 8 | b2);
+            }
         }
 
         private void checkNewLine() throws IOException {
-            if(linepos == linemax){
-                out.write(newline);
+            if(linemax > 0 && linepos == linemax){
+                if(newline.length > buf.length - count){
+                    flushBuffer();
+                    if(newline.length > buf.length){
+                        out.write(newline);
+                        written += newline.length;
+                        linepos = 0;
+                        return;
+                    }
+                }
+                System.arraycopy(newline, 0, buf, count, newline.length);
+                count += newline.length;
                 linepos = 0;
             }
         }
 
+        private void writeGroup(int bits) throws IOException {
+            checkNewLine();
+            if(buf.length - count < 4){
+                flushBuffer();
+            }
+            buf[count++] = (byte)base64[(bits >>> 18) & 0x3f];
+            buf[count++] = (byte)base64[(bits >>> 12) & 0x3f];
+            buf[count++] = (byte)base64[(bits >>> 6)  & 0x3f];
+            buf[count++] = (byte)base64[bits & 0x3f];
+            linepos += 4;
+        }
+
+        private void flushBuffer() throws IOException {
+            if(count > 0){
+                out.write(buf, 0, count);
+                written += count;
+                count = 0;
+            }
+        }
+
         @Override
         public void write(byte[] b, int off, int len) throws IOException {
             if(closed){
@@ -475,25 +1636,24 @@ public class CloneBase64 {
                 }
                 b2 = b[off++] & 0xff;
                 len--;
-                checkNewLine();
-                out.write(base64[b0 >> 2]);
-                out.write(base64[(b0 << 4) & 0x3f | (b1 >> 4)]);
-                out.write(base64[(b1 << 2) & 0x3f | (b2 >> 6)]);
-                out.write(base64[b2 & 0x3f]);
-                linepos += 4;
+                writeGroup(b0 << 16 | b1 << 8 | b2);
             }
             int nBits24 = len / 3;
             leftover = len - (nBits24 * 3);
-            while(nBits24-- > 0){
+            int sl = off + nBits24 * 3;
+            while(off < sl){
                 checkNewLine();
-                int bits = (b[off++] & 0xff) << 16 |
-                           (b[off++] & 0xff) << 8  |
-                           (b[off++] & 0xff);
-                out.write(base64[(bits >>> 18) & 0x3f]);
-                out.write(base64[(bits >>> 12) & 0x3f]);
-                out.write(base64[(bits >>> 6)  & 0x3f]);
-                out.write(base64[bits & 0x3f]);
-                linepos += 4;
+                int groups = Math.min((sl - off) / 3, (buf.length - count) / 4);
+                if(linemax > 0){
+                    groups = Math.min(groups, (linemax - linepos) / 4);
+                }
+                if(groups == 0){
+                    flushBuffer();
+                    continue;
+                }
+                count = encoder.encodeBlock(b, off, off + groups * 3, buf, count);
+                off += groups * 3;
+                linepos += groups * 4;
             }
             if(leftover == 1){
                 b0 = b[off++] & 0xff;
@@ -503,30 +1663,49 @@ public class CloneBase64 {
             }
         }
 
+        // only whole groups have been encoded so far, a pending 1-2 bytes stay
+        // until close()
+        @Override
+        public void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+
         @Override
         public void close() throws IOException {
+            finish();
+            out.close();
+        }
+
+        // writes the last group and the buffer without closing out, and
+        // returns the number of bytes written to out in total
+        long finish() throws IOException {
             if(!closed){
                 closed = true;
-                if(leftover == 1){
+                if(leftover != 0){
                     checkNewLine();
-                    out.write(base64[b0 >> 2]);
-                    out.write(base64[(b0 << 4) & 0x3f]);
-                    if(doPadding){
-                        out.write('=');
-                        out.write('=');
+                    if(buf.length - count < 4){
+                        flushBuffer();
                     }
-                }else if(leftover == 2){
-                    checkNewLine();
-                    out.write(base64[b0 >> 2]);
-                    out.write(base64[(b0 << 4) & 0x3f | (b1 >> 4)]);
-                    out.write(base64[(b1 << 2) & 0x3f]);
-                    if(doPadding){
-                        out.write('=');
+                    buf[count++] = (byte)base64[b0 >> 2];
+                    if(leftover == 1){
+                        buf[count++] = (byte)base64[(b0 << 4) & 0x3f];
+                        if(doPadding){
+                            buf[count++] = '=';
+                            buf[count++] = '=';
+                        }
+                    }else{
+                        buf[count++] = (byte)base64[(b0 << 4) & 0x3f | (b1 >> 4)];
+                        buf[count++] = (byte)base64[(b1 << 2) & 0x3f];
+                        if(doPadding){
+                            buf[count++] = '=';
+                        }
                     }
                 }
+                flushBuffer();
             }
             leftover = 0;
-            out.close();
+            return written;
         }
 
     }
@@ -534,6 +1713,7 @@ public class CloneBase64 {
     private static class CloneDecInputStream extends InputStream {
 
         private final InputStream is;
+        private final CloneDecoder decoder;
         private final boolean isMIME;
         private final int[] base64;     // base64 -> byte mapping
         private int bits = 0;           // 24-bit buffer for decoding
@@ -544,10 +1724,37 @@ public class CloneBase64 {
         private boolean eof = false;
         private boolean closed = false;
 
-        CloneDecInputStream(InputStream is, int[] base64, boolean isMIME){
+        // read-ahead of the underlying stream; whole 4-char units are decoded
+        // straight out of it, everything else goes char by char through next()
+        private final byte[] inBuf = new byte[8192];
+        private int inPos = 0;
+        private int inLimit = 0;
+
+        CloneDecInputStream(InputStream is, CloneDecoder decoder){
             this.is = is;
-            this.base64 = base64;
-            this.isMIME = isMIME;
+            this.decoder = decoder;
+            this.base64 = decoder.isURL ? CloneDecoder.fromBase64URL : CloneDecoder.fromBase64;
+            this.isMIME = decoder.isMIME;
+        }
+
+        private int next() throws IOException {
+            if(inPos == inLimit && !fill()){
+                return -1;
+            }
+            return inBuf[inPos++] & 0xff;
+        }
+
+        private boolean fill() throws IOException {
+            int n;
+            do {
+                n = is.read(inBuf, 0, inBuf.length);
+            } while(n == 0);
+            if(n < 0){
+                return false;
+            }
+            inPos = 0;
+            inLimit = n;
+            return true;
         }
 
         private byte[] sbBuf = new byte[1];
@@ -578,11 +1785,25 @@ public class CloneBase64 {
                     b[off++] = (byte)(bits >> nextout);
                     len--;
                     nextout -= 8;
-                } while(nextout >= 8);
+                } while(nextout >= 0);
                 bits = 0;
+                if(eof){                // that was the last byte of the final unit
+                    return off - oldOff;
+                }
             }
             while(len > 0){
-                int v = is.read();
+                // end of input is left to next() below
+                if(nextin == 18 && len >= 3 && (inPos < inLimit || fill())){
+                    int n = decoder.decodeBlock(inBuf, inPos,
+                            inPos + Math.min(inLimit - inPos, len / 3 * 4), b, off, off + len);
+                    inPos += n;
+                    off += n / 4 * 3;
+                    len -= n / 4 * 3;
+                    if(len == 0){
+                        break;
+                    }
+                }
+                int v = next();
                 if(v == -1){
                     eof = true;
                     if (nextin != 18){
@@ -614,7 +1835,7 @@ public class CloneBase64 {
                     // xx=   shiftto==6 && missing last '='
                     // xx=y  or last is not '='
                     if(nextin == 18 || nextin == 12 ||
-                        nextin == 6 && is.read() != '='){
+                        nextin == 6 && next() != '='){
                         throw new IOException("Illegal base64 ending sequence:" + nextin);
                     }
                     b[off++] = (byte)(bits >> (16));
@@ -630,11 +1851,12 @@ public class CloneBase64 {
                     eof = true;
                     break;
                 }
+                int c = v;
                 if((v = base64[v]) == -1){
                     if(isMIME){
                         continue;
                     }else
-                        throw new IOException("Illegal base64 character " + Integer.toString(v, 16));
+                        throw new IOException("Illegal base64 character " + Integer.toString(c, 16));
                 }
 
                 bits |= (v << nextin);
@@ -660,7 +1882,7 @@ public class CloneBase64 {
         public int available() throws IOException{
             if(closed)
                 throw new IOException("Stream is closed");
-            return is.available();  // TBD;
+            return (inLimit - inPos) + is.available();  // TBD;
         }
 
         @Override
@@ -672,4 +1894,126 @@ public class CloneBase64 {
         }
     }
 
+    /*
+     * SIMD kernels for the encode0/decode0 inner loops. Each step turns
+     * VLEN / 4 * 3 source bytes into VLEN base64 chars (or back), using a
+     * byte shuffle to line the groups up in int lanes and compare/blend
+     * arithmetic in place of the table lookups.
+     *
+     * Only referenced when VECTORIZED is true, so the class (and the incubator
+     * module) is never loaded otherwise.
+     */
+    private static final class CloneVectorCodec {
+
+        private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+        private static final int VLEN = SPECIES.length();
+        private static final int GROUPS = VLEN / 4 * 3;     // bytes per vector step
+
+        // little-endian int lane g = s[3g] << 16 | s[3g+1] << 8 | s[3g+2]
+        private static final VectorShuffle<Byte> ENC_SHUFFLE;
+        // drops the spare 4th byte of each int lane
+        private static final VectorShuffle<Byte> DEC_SHUFFLE;
+        // lanes past the decoded bytes of a step, written back unchanged
+        private static final VectorMask<Byte> DEC_KEEP = SPECIES.indexInRange(0, GROUPS).not();
+
+        static {
+            int[] enc = new int[VLEN];
+            int[] dec = new int[VLEN];
+            for(int i = 0; i < VLEN; i++){
+                int g = i >> 2;
+                switch(i & 3){
+                    case 0: enc[i] = 3 * g + 2; break;
+                    case 1: enc[i] = 3 * g + 1; break;
+                    default: enc[i] = 3 * g;    break;
+                }
+                dec[i] = i < GROUPS ? (i / 3) * 4 + i % 3 : 0;
+            }
+            ENC_SHUFFLE = VectorShuffle.fromArray(SPECIES, enc, 0);
+            DEC_SHUFFLE = VectorShuffle.fromArray(SPECIES, dec, 0);
+        }
+
+        static boolean supported(){
+            return VectorShape.preferredShape().vectorBitSize() >= 128;
+        }
+
+        /*
+         * Encodes whole vector steps of src[sp, sl) to dst starting at dp and
+         * returns the number of source bytes consumed, always a multiple of 3.
+         */
+        static int encode(byte[] src, int sp, int sl, byte[] dst, int dp, boolean isURL){
+            int sp0 = sp;
+            int c62 = (isURL ? '-' : '+') - 62;
+            int c63 = (isURL ? '_' : '/') - 63;
+            // the load reads a full vector, a quarter more than one step consumes
+            while(sp + GROUPS <= sl && sp + VLEN <= src.length && dp + VLEN <= dst.length){
+                IntVector bits = ByteVector.fromArray(SPECIES, src, sp)
+                        .rearrange(ENC_SHUFFLE)
+                        .reinterpretAsInts();
+                ByteVector idx = bits.lanewise(LSHR, 18).and(0x3f)
+                        .or(bits.lanewise(LSHR, 4).and(0x3f00))
+                        .or(bits.lanewise(LSHL, 10).and(0x3f0000))
+                        .or(bits.lanewise(LSHL, 24).and(0x3f000000))
+                        .reinterpretAsBytes();
+                ByteVector off = idx.broadcast('A')
+                        .blend('a' - 26, idx.compare(GE, 26))
+                        .blend('0' - 52, idx.compare(GE, 52))
+                        .blend(c62, idx.compare(EQ, 62))
+                        .blend(c63, idx.compare(EQ, 63));
+                idx.add(off).intoArray(dst, dp);
+                sp += GROUPS;
+                dp += VLEN;
+            }
+            return sp - sp0;
+        }
+
+        /*
+         * Decodes whole vector steps of src[sp, sl) to dst starting at dp and
+         * returns the number of chars consumed, always a multiple of 4. Stops
+         * in front of the first step holding anything outside the alphabet, or
+         * once less than a full vector of room is left below dl. Each step
+         * stores a whole vector, with the bytes past its output merged back
+         * from dst: a masked store would do the same, but is not intrinsified
+         * on JDK 17 and boxes every vector.
+         */
+        static int decode(byte[] src, int sp, int sl, byte[] dst, int dp, int dl, boolean isURL){
+            int sp0 = sp;
+            byte c62 = (byte)(isURL ? '-' : '+');
+            byte c63 = (byte)(isURL ? '_' : '/');
+            while(sp + VLEN <= sl && dp + VLEN <= dl){
+                ByteVector c = ByteVector.fromArray(SPECIES, src, sp);
+                // bytes >= 0x80 are negative and fall in none of the ranges
+                VectorMask<Byte> upper = c.compare(GE, 'A').and(c.compare(LE, 'Z'));
+                VectorMask<Byte> lower = c.compare(GE, 'a').and(c.compare(LE, 'z'));
+                VectorMask<Byte> digit = c.compare(GE, '0').and(c.compare(LE, '9'));
+                VectorMask<Byte> is62 = c.compare(EQ, c62);
+                VectorMask<Byte> is63 = c.compare(EQ, c63);
+                if(!upper.or(lower).or(digit).or(is62).or(is63).allTrue()){
+                    break;
+                }
+                IntVector v = c.add(c.broadcast(0)
+                                .blend(-'A', upper)
+                                .blend(26 - 'a', lower)
+                                .blend(52 - '0', digit)
+                                .blend(62 - c62, is62)
+                                .blend(63 - c63, is63))
+                        .reinterpretAsInts();
+                IntVector bits = v.and(0x3f).lanewise(LSHL, 18)
+                        .or(v.lanewise(LSHR, 8).and(0x3f).lanewise(LSHL, 12))
+                        .or(v.lanewise(LSHR, 16).and(0x3f).lanewise(LSHL, 6))
+                        .or(v.lanewise(LSHR, 24).and(0x3f));
+                bits.lanewise(LSHR, 16).and(0xff)
+                        .or(bits.and(0xff00))
+                        .or(bits.and(0xff).lanewise(LSHL, 16))
+                        .reinterpretAsBytes()
+                        .rearrange(DEC_SHUFFLE)
+                        .blend(ByteVector.fromArray(SPECIES, dst, dp), DEC_KEEP)
+                        .intoArray(dst, dp);
+                sp += VLEN;
+                dp += GROUPS;
+            }
+            return sp - sp0;
+        }
+    }
+
 }
@@ -0,0 +1,99 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CloneBase16Test {
+
+    private static final int[] SIZES = {0, 1, 2, 3, 15, 16, 17, 1000, 4097, 10000};
+
+    private static byte[] random(int size){
+        byte[] b = new byte[size];
+        new Random(size).nextBytes(b);
+        return b;
+    }
+
+    @Test
+    void codingMatchesHexFormat(){
+        for(int size : SIZES){
+            byte[] src = random(size);
+            String upper = HexFormat.of().withUpperCase().formatHex(src);
+            String lower = HexFormat.of().formatHex(src);
+            assertEquals(upper, CloneBase16.getEncoder().encodeToString(src));
+            assertEquals(lower, CloneBase16.getLowerCaseEncoder().encodeToString(src));
+            assertArrayEquals(src, CloneBase16.getDecoder().decode(upper));
+            assertArrayEquals(src, CloneBase16.getDecoder().decode(lower.getBytes()));
+        }
+    }
+
+    @Test
+    void decodeRejectsIllegalInput(){
+        assertThrows(IllegalArgumentException.class, () -> CloneBase16.getDecoder().decode("abc"));
+        assertThrows(IllegalArgumentException.class, () -> CloneBase16.getDecoder().decode("0g"));
+        assertThrows(IllegalArgumentException.class, () -> CloneBase16.getDecoder().decode("0\u0100"));
+    }
+
+    @Test
+    void bufferCodingResumesIntoDirectBuffers(){
+        for(int size : SIZES){
+            byte[] src = random(size);
+            ByteBuffer in = ByteBuffer.allocateDirect(size).put(src).flip();
+            ByteBuffer window = ByteBuffer.allocateDirect(7);
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            do {
+                CloneBase16.getEncoder().encode(in, window.clear());
+                window.flip();
+                while(window.hasRemaining()){
+                    encoded.write(window.get());
+                }
+            } while(in.hasRemaining());
+            assertArrayEquals(CloneBase16.getEncoder().encode(src), encoded.toByteArray());
+
+            ByteBuffer chars = ByteBuffer.wrap(encoded.toByteArray());
+            ByteBuffer out = ByteBuffer.allocate(size);
+            while(chars.hasRemaining()){
+                CloneBase16.getDecoder().decode(chars, out.slice(out.position(), Math.min(5, out.remaining())));
+                out.position(size - (chars.remaining() / 2));
+            }
+            assertArrayEquals(src, out.array());
+        }
+    }
+
+    @Test
+    void wrappedStreamsRoundTrip() throws IOException {
+        for(int size : SIZES){
+            byte[] src = random(size);
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            try(OutputStream os = CloneBase16.getLowerCaseEncoder().wrap(sink)){
+                for(int off = 0; off < size; off += 3){
+                    if(off % 2 == 0){
+                        os.write(src[off]);
+                        os.write(src, off + 1, Math.min(2, size - off - 1));
+                    }else{
+                        os.write(src, off, Math.min(3, size - off));
+                    }
+                }
+            }
+            assertArrayEquals(CloneBase16.getLowerCaseEncoder().encode(src), sink.toByteArray());
+
+            InputStream is = CloneBase16.getDecoder().wrap(new ByteArrayInputStream(sink.toByteArray()));
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            byte[] buf = new byte[5];
+            int n;
+            while((n = is.read(buf, 0, 1 + decoded.size() % 5)) != -1){
+                decoded.write(buf, 0, n);
+            }
+            assertArrayEquals(src, decoded.toByteArray());
+        }
+        InputStream odd = CloneBase16.getDecoder().wrap(new ByteArrayInputStream("abc".getBytes()));
+        assertThrows(IOException.class, () -> odd.readAllBytes());
+    }
+}
@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CloneBase32Test {
+
+    private static final int[] SIZES = {0, 1, 2, 3, 4, 5, 6, 9, 10, 11, 1000, 4099, 10001};
+
+    private static byte[] random(int size){
+        byte[] b = new byte[size];
+        new Random(size).nextBytes(b);
+        return b;
+    }
+
+    @Test
+    void encodeMatchesRfc4648Vectors(){
+        String[] in = {"", "f", "fo", "foo", "foob", "fooba", "foobar"};
+        String[] base32 = {"", "MY======", "MZXQ====", "MZXW6===", "MZXW6YQ=", "MZXW6YTB", "MZXW6YTBOI======"};
+        String[] base32Hex = {"", "CO======", "CPNG====", "CPNMU===", "CPNMUOG=", "CPNMUOJ1", "CPNMUOJ1E8======"};
+        for(int i = 0; i < in.length; i++){
+            byte[] src = in[i].getBytes(StandardCharsets.US_ASCII);
+            assertEquals(base32[i], CloneBase32.getEncoder().encodeToString(src));
+            assertEquals(base32Hex[i], CloneBase32.getHexEncoder().encodeToString(src));
+            assertEquals(base32[i].replace("=", ""),
+                    CloneBase32.getEncoder().withoutPadding().encodeToString(src));
+            assertArrayEquals(src, CloneBase32.getDecoder().decode(base32[i]));
+            assertArrayEquals(src, CloneBase32.getHexDecoder().decode(base32Hex[i].getBytes()));
+            assertArrayEquals(src, CloneBase32.getDecoder().decode(base32[i].replace("=", "")));
+        }
+    }
+
+    @Test
+    void decodeRoundTrips(){
+        for(int size : SIZES){
+            byte[] src = random(size);
+            assertArrayEquals(src, CloneBase32.getDecoder().decode(CloneBase32.getEncoder().encode(src)));
+            assertArrayEquals(src, CloneBase32.getHexDecoder().decode(
+                    CloneBase32.getHexEncoder().withoutPadding().encodeToString(src)));
+        }
+    }
+
+    @Test
+    void decodeRejectsIllegalInput(){
+        CloneBase32.CloneDecoder decoder = CloneBase32.getDecoder();
+        for(String s : new String[]{"M", "MZX", "MZXW6Y", "MY=====", "MY======A", "MY=A====",
+                                    "MZXW6YTB========", "MZ1Q====", "mzxq===="}){
+            assertThrows(IllegalArgumentException.class, () -> decoder.decode(s), s);
+            assertThrows(IllegalArgumentException.class, () -> decoder.decode(s.getBytes()), s);
+        }
+    }
+
+    @Test
+    void bufferCodingResumesIntoDirectBuffers(){
+        for(int size : SIZES){
+            byte[] src = random(size);
+            ByteBuffer in = ByteBuffer.allocateDirect(size).put(src).flip();
+            ByteBuffer window = ByteBuffer.allocateDirect(19);
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            do {
+                CloneBase32.getEncoder().encode(in, window.clear());
+                window.flip();
+                while(window.hasRemaining()){
+                    encoded.write(window.get());
+                }
+            } while(in.hasRemaining());
+            assertArrayEquals(CloneBase32.getEncoder().encode(src), encoded.toByteArray());
+
+            ByteBuffer chars = ByteBuffer.allocateDirect(encoded.size()).put(encoded.toByteArray()).flip();
+            ByteBuffer out = ByteBuffer.allocateDirect(12);
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            while(chars.hasRemaining()){
+                CloneBase32.getDecoder().decode(chars, out.clear().limit(12));
+                out.flip();
+                while(out.hasRemaining()){
+                    decoded.write(out.get());
+                }
+            }
+            assertArrayEquals(src, decoded.toByteArray());
+        }
+    }
+
+    @Test
+    void wrappedStreamsRoundTrip() throws IOException {
+        for(int size : SIZES){
+            for(CloneBase32.CloneEncoder encoder : new CloneBase32.CloneEncoder[]{
+                    CloneBase32.getEncoder(), CloneBase32.getEncoder().withoutPadding()}){
+                byte[] src = random(size);
+                ByteArrayOutputStream sink = new ByteArrayOutputStream();
+                try(OutputStream os = encoder.wrap(sink)){
+                    for(int off = 0; off < size; off += 7){
+                        os.write(src[off]);
+                        os.write(src, off + 1, Math.min(6, size - off - 1));
+                    }
+                }
+                assertArrayEquals(encoder.encode(src), sink.toByteArray());
+
+                InputStream is = CloneBase32.getDecoder().wrap(new ByteArrayInputStream(sink.toByteArray()));
+                ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+                byte[] buf = new byte[4096];
+                int n;
+                while((n = is.read(buf, 0, 1 + decoded.size() % buf.length)) != -1){
+                    decoded.write(buf, 0, n);
+                }
+                assertArrayEquals(src, decoded.toByteArray());
+            }
+        }
+        InputStream broken = CloneBase32.getDecoder().wrap(new ByteArrayInputStream("MZX=====".getBytes()));
+        assertThrows(IOException.class, () -> broken.readAllBytes());
+    }
+}
@@ -0,0 +1,56 @@
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CloneBase58Test {
+
+    private static final String ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+
+    // the textbook conversion, one BigInteger division per digit
+    private static String reference(byte[] src){
+        StringBuilder sb = new StringBuilder();
+        BigInteger n = new BigInteger(1, src);
+        BigInteger base = BigInteger.valueOf(58);
+        while(n.signum() > 0){
+            BigInteger[] qr = n.divideAndRemainder(base);
+            sb.append(ALPHABET.charAt(qr[1].intValue()));
+            n = qr[0];
+        }
+        for(int i = 0; i < src.length && src[i] == 0; i++){
+            sb.append('1');
+        }
+        return sb.reverse().toString();
+    }
+
+    @Test
+    void codingMatchesReference(){
+        Random random = new Random(58);
+        for(int size = 0; size < 200; size++){
+            byte[] src = new byte[size];
+            random.nextBytes(src);
+            if(size % 3 == 0){
+                Arrays.fill(src, 0, Math.min(size, size / 10 + 1), (byte)0);
+            }
+            String expected = reference(src);
+            assertEquals(expected, CloneBase58.getEncoder().encodeToString(src));
+            assertArrayEquals(src, CloneBase58.getDecoder().decode(expected));
+            assertArrayEquals(src, CloneBase58.getDecoder().decode(ByteBuffer.wrap(expected.getBytes())).array());
+        }
+        assertEquals("2NEpo7TZRRrLZSi2U",
+                CloneBase58.getEncoder().encodeToString("Hello World!".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("111", CloneBase58.getEncoder().encodeToString(new byte[3]));
+    }
+
+    @Test
+    void decodeRejectsCharactersOutsideAlphabet(){
+        for(String s : new String[]{"0", "O", "I", "l", "2NEp+o"}){
+            assertThrows(IllegalArgumentException.class, () -> CloneBase58.getDecoder().decode(s), s);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.CoderResult;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CloneBase64Test {
+
+    private static final int[] SIZES = {0, 1, 2, 3, 4, 5, 56, 57, 58, 63, 64, 65, 191, 192, 193, 1000, 4099};
+
+    private static byte[] random(int size){
+        byte[] b = new byte[size];
+        new Random(size).nextBytes(b);
+        return b;
+    }
+
+    @Test
+    void encodeMatchesJdk(){
+        for(int size : SIZES){
+            byte[] src = random(size);
+            assertArrayEquals(Base64.getEncoder().encode(src), CloneBase64.getEncoder().encode(src));
+            assertArrayEquals(Base64.getUrlEncoder().encode(src), CloneBase64.getUrlEncoder().encode(src));
+            assertArrayEquals(Base64.getMimeEncoder().encode(src), CloneBase64.getMimeEncoder().encode(src));
+            assertArrayEquals(Base64.getEncoder().withoutPadding().encode(src),
+                    CloneBase64.getEncoder().withoutPadding().encode(src));
+        }
+    }
+
+    @Test
+    void decodeMatchesJdk(){
+        for(int size : SIZES){
+            byte[] src = random(size);
+            assertArrayEquals(src, CloneBase64.getDecoder().decode(Base64.getEncoder().encode(src)));
+            assertArrayEquals(src, CloneBase64.getUrlDecoder().decode(Base64.getUrlEncoder().encode(src)));
+            assertArrayEquals(src, CloneBase64.getMimeDecoder().decode(Base64.getMimeEncoder().encode(src)));
+            assertArrayEquals(src, CloneBase64.getDecoder().decode(
+                    Base64.getEncoder().withoutPadding().encode(src)));
+        }
+    }
+
+    @Test
+    void decodeRejectsIllegalCharacterInLongInput(){
+        byte[] encoded = Base64.getEncoder().encode(random(300));
+        encoded[150] = '*';
+        assertThrows(IllegalArgumentException.class, () -> CloneBase64.getDecoder().decode(encoded));
+        assertThrows(IllegalArgumentException.class, () -> CloneBase64.getUrlDecoder().decode(
+                Base64.getEncoder().encode(new byte[]{(byte)0xfb, (byte)0xff, 0x3e})));
+    }
+
+    @Test
+    void mimeDecodeSkipsNonAlphabet(){
+        byte[] src = random(500);
+        String encoded = Base64.getEncoder().encodeToString(src);
+        String noisy = encoded.substring(0, 100) + " \t\r\n!" + encoded.substring(100);
+        assertArrayEquals(src, CloneBase64.getMimeDecoder().decode(noisy));
+    }
+
+    @Test
+    void bufferEncodeResumesIntoDirectBuffers(){
+        for(int size : SIZES){
+            byte[] src = random(size);
+            assertArrayEquals(Base64.getEncoder().encode(src),
+                    encodeInChunks(CloneBase64.getEncoder(), src, 7));
+            assertArrayEquals(Base64.getMimeEncoder().encode(src),
+                    encodeInChunks(CloneBase64.getMimeEncoder(), src, 80));
+        }
+    }
+
+    @Test
+    void bufferDecodeResumesIntoDirectBuffers(){
+        for(int size : SIZES){
+            byte[] src = random(size);
+            assertArrayEquals(src, decodeInChunks(CloneBase64.getDecoder(), Base64.getEncoder().encode(src), 5));
+            assertArrayEquals(src, decodeInChunks(CloneBase64.getMimeDecoder(), Base64.getMimeEncoder().encode(src), 4));
+            assertArrayEquals(src, decodeInChunks(CloneBase64.getUrlDecoder(),
+                    Base64.getUrlEncoder().withoutPadding().encode(src), 1000));
+        }
+    }
+
+    @Test
+    void bufferDecodeKeepsPositionOfLastCompleteUnit(){
+        ByteBuffer src = ByteBuffer.wrap("QUJD*EVG".getBytes());
+        ByteBuffer dst = ByteBuffer.allocate(6);
+        assertThrows(IllegalArgumentException.class, () -> CloneBase64.getDecoder().decode(src, dst));
+        assertEquals(4, src.position());
+        assertEquals(3, dst.position());
+    }
+
+    private static byte[] encodeInChunks(CloneBase64.CloneEncoder encoder, byte[] src, int chunk){
+        ByteBuffer in = ByteBuffer.allocateDirect(src.length).put(src).flip();
+        ByteBuffer out = ByteBuffer.allocateDirect(chunk);
+        ByteBuffer result = ByteBuffer.allocate(src.length * 2 + 8);
+        while(in.hasRemaining()){
+            assertTrue(encoder.encode(in, out) > 0);
+            result.put(out.flip());
+            out.clear();
+        }
+        return Arrays.copyOf(result.array(), result.position());
+    }
+
+    private static byte[] decodeInChunks(CloneBase64.CloneDecoder decoder, byte[] src, int chunk){
+        ByteBuffer in = ByteBuffer.allocateDirect(src.length).put(src).flip();
+        ByteBuffer out = ByteBuffer.allocateDirect(chunk);
+        ByteBuffer result = ByteBuffer.allocate(src.length);
+        while(in.hasRemaining()){
+            decoder.decode(in, out);
+            result.put(out.flip());
+            out.clear();
+        }
+        return Arrays.copyOf(result.array(), result.position());
+    }
+
+    @Test
+    void streamCodersCarryStateAcrossCalls(){
+        for(int size : SIZES){
+            byte[] src = random(size);
+            for(int chunk : new int[]{1, 2, 5, 64}){
+                assertArrayEquals(Base64.getMimeEncoder().encode(src),
+                        streamEncode(CloneBase64.getMimeEncoder().newStreamEncoder(), src, chunk));
+                assertArrayEquals(Base64.getUrlEncoder().withoutPadding().encode(src),
+                        streamEncode(CloneBase64.getUrlEncoder().withoutPadding().newStreamEncoder(), src, chunk));
+                assertArrayEquals(src, streamDecode(CloneBase64.getMimeDecoder().newStreamDecoder(),
+                        Base64.getMimeEncoder().encode(src), chunk));
+                assertArrayEquals(src, streamDecode(CloneBase64.getDecoder().newStreamDecoder(),
+                        Base64.getEncoder().withoutPadding().encode(src), chunk));
+            }
+        }
+    }
+
+    @Test
+    void mimeLineLengthsUnderFourBreakNoLines() throws IOException {
+        byte[] src = random(100);
+        byte[] expected = Base64.getEncoder().encode(src);
+        for(int lineLength = 1; lineLength < 4; lineLength++){
+            CloneBase64.CloneEncoder encoder = CloneBase64.getMimeEncoder(lineLength, "\r\n".getBytes());
+            assertArrayEquals(expected, encoder.encode(src));
+            assertArrayEquals(expected, streamEncode(encoder.newStreamEncoder(), src, 7));
+            assertArrayEquals(expected, writeAll(encoder, src));
+        }
+    }
+
+    @Test
+    void streamDecoderRejectsBrokenEnding(){
+        assertThrows(IllegalArgumentException.class, () -> streamDecode(
+                CloneBase64.getDecoder().newStreamDecoder(), "QUJDRA=".getBytes(), 1));
+        assertThrows(IllegalArgumentException.class, () -> streamDecode(
+                CloneBase64.getDecoder().newStreamDecoder(), "QUJDR".getBytes(), 3));
+    }
+
+    // feeds src in pieces of chunk bytes and drains through a 3-byte window
+    private static byte[] streamEncode(CloneBase64.CloneStreamEncoder encoder, byte[] src, int chunk){
+        return stream(src, chunk, 6, (in, out, end) -> encoder.encode(in, out, end));
+    }
+
+    private static byte[] streamDecode(CloneBase64.CloneStreamDecoder decoder, byte[] src, int chunk){
+        return stream(src, chunk, 2, (in, out, end) -> decoder.decode(in, out, end));
+    }
+
+    interface Coder {
+        CoderResult code(ByteBuffer in, ByteBuffer out, boolean endOfInput);
+    }
+
+    private static byte[] stream(byte[] src, int chunk, int window, Coder coder){
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        ByteBuffer out = ByteBuffer.allocate(window);
+        for(int off = 0; off <= src.length; off += chunk){
+            boolean end = off + chunk > src.length;
+            ByteBuffer in = ByteBuffer.wrap(src, off, Math.min(chunk, src.length - off));
+            while(coder.code(in, out, end).isOverflow()){
+                result.write(out.array(), 0, out.position());
+                out.clear();
+            }
+            assertFalse(in.hasRemaining());
+        }
+        result.write(out.array(), 0, out.position());
+        return result.toByteArray();
+    }
+
+    @Test
+    void wrappedInputStreamDecodesInBulk() throws IOException {
+        for(int size : new int[]{0, 1, 2, 3, 100, 20000}){
+            byte[] src = random(size);
+            assertArrayEquals(src, readAll(CloneBase64.getDecoder().wrap(
+                    new ByteArrayInputStream(Base64.getEncoder().encode(src)))));
+            assertArrayEquals(src, readAll(CloneBase64.getMimeDecoder().wrap(
+                    new ByteArrayInputStream(Base64.getMimeEncoder().encode(src)))));
+            assertArrayEquals(src, readAll(CloneBase64.getUrlDecoder().wrap(
+                    new ByteArrayInputStream(Base64.getUrlEncoder().withoutPadding().encode(src)))));
+        }
+        byte[] broken = Base64.getEncoder().encode(random(20000));
+        broken[15000] = '*';
+        InputStream in = CloneBase64.getDecoder().wrap(new ByteArrayInputStream(broken));
+        IOException e = assertThrows(IOException.class, () -> readAll(in));
+        assertEquals("Illegal base64 character 2a", e.getMessage());
+    }
+
+    @Test
+    void wrappedInputStreamMixesSingleAndBulkReads() throws IOException {
+        InputStream in = CloneBase64.getDecoder().wrap(new ByteArrayInputStream("C+g=".getBytes()));
+        byte[] b = new byte[5];
+        assertEquals(11, in.read());
+        assertEquals(1, in.read(b, 0, 5));
+        assertEquals(-24, b[0]);
+        assertEquals(-1, in.read(b, 0, 5));
+
+        for(int size : new int[]{1, 2, 4, 5, 100, 101}){
+            byte[] src = random(size);
+            assertArrayEquals(src, readMixed(CloneBase64.getDecoder().wrap(
+                    new ByteArrayInputStream(Base64.getEncoder().encode(src)))));
+            assertArrayEquals(src, readMixed(CloneBase64.getDecoder().wrap(
+                    new ByteArrayInputStream(Base64.getEncoder().withoutPadding().encode(src)))));
+            assertArrayEquals(src, readMixed(CloneBase64.getMimeDecoder().wrap(
+                    new ByteArrayInputStream(Base64.getMimeEncoder().encode(src)))));
+        }
+    }
+
+    // a single-byte read before every 5-byte bulk read
+    private static byte[] readMixed(InputStream in) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] b = new byte[5];
+        int v;
+        while((v = in.read()) != -1){
+            result.write(v);
+            int n = in.read(b, 0, b.length);
+            if(n == -1){
+                break;
+            }
+            result.write(b, 0, n);
+        }
+        assertEquals(-1, in.read(b, 0, b.length));
+        return result.toByteArray();
+    }
+
+    @Test
+    void parallelCodingMatchesSerial(){
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try{
+            for(int size : new int[]{100, (3 << 20) + 1, (5 << 20) + 2}){
+                byte[] src = random(size);
+                assertArrayEquals(Base64.getEncoder().encode(src), CloneBase64.getEncoder().encodeParallel(src, pool));
+                assertArrayEquals(Base64.getMimeEncoder().encode(src), CloneBase64.getMimeEncoder().encodeParallel(src, pool));
+                assertArrayEquals(Base64.getMimeEncoder(64, new byte[]{'\n'}).encode(src),
+                        CloneBase64.getMimeEncoder(64, new byte[]{'\n'}).encodeParallel(src, pool));
+                assertArrayEquals(src, CloneBase64.getDecoder().decodeParallel(Base64.getEncoder().encode(src), pool));
+                assertArrayEquals(src, CloneBase64.getUrlDecoder().decodeParallel(
+                        Base64.getUrlEncoder().withoutPadding().encode(src), pool));
+            }
+
+            byte[] encoded = Base64.getEncoder().encode(random(3 << 20));
+            encoded[1 << 20] = '=';
+            encoded[(1 << 20) + 1] = '=';
+            IllegalArgumentException serial = assertThrows(IllegalArgumentException.class,
+                    () -> CloneBase64.getDecoder().decode(encoded));
+            IllegalArgumentException parallel = assertThrows(IllegalArgumentException.class,
+                    () -> CloneBase64.getDecoder().decodeParallel(encoded, pool));
+            assertEquals(serial.getMessage(), parallel.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void wrappedOutputStreamWritesBlocks() throws IOException {
+        for(int size : SIZES){
+            byte[] src = random(size * 7);
+            assertArrayEquals(Base64.getEncoder().encode(src), writeAll(CloneBase64.getEncoder(), src));
+            assertArrayEquals(Base64.getMimeEncoder().encode(src), writeAll(CloneBase64.getMimeEncoder(), src));
+            assertArrayEquals(Base64.getUrlEncoder().withoutPadding().encode(src),
+                    writeAll(CloneBase64.getUrlEncoder().withoutPadding(), src));
+        }
+
+        int[] writes = new int[1];
+        OutputStream counting = new OutputStream() {
+            @Override
+            public void write(int b){
+                writes[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len){
+                writes[0]++;
+            }
+        };
+        try(OutputStream os = CloneBase64.getMimeEncoder().wrap(counting)){
+            for(byte b : random(3000)){
+                os.write(b);
+            }
+        }
+        assertEquals(1, writes[0]);
+    }
+
+    // alternates single-byte and odd-sized array writes
+    private static byte[] writeAll(CloneBase64.CloneEncoder encoder, byte[] src) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try(OutputStream os = encoder.wrap(result)){
+            int off = 0;
+            while(off < src.length){
+                if(off % 2 == 0){
+                    os.write(src[off++]);
+                }else{
+                    int len = Math.min(src.length - off, 1000);
+                    os.write(src, off, len);
+                    off += len;
+                }
+            }
+        }
+        return result.toByteArray();
+    }
+
+    @Test
+    void offsetAndCharApisMatchArrayApis() throws IOException {
+        byte[] scratch = new byte[8192];
+        for(int size : SIZES){
+            byte[] src = random(size);
+            byte[] padded = new byte[size + 10];
+            System.arraycopy(src, 0, padded, 7, size);
+
+            byte[] mime = Base64.getMimeEncoder().encode(src);
+            int n = CloneBase64.getMimeEncoder().encode(padded, 7, size, scratch, 3);
+            assertArrayEquals(mime, Arrays.copyOfRange(scratch, 3, 3 + n));
+
+            n = CloneBase64.getMimeDecoder().decode(mime, 0, mime.length, scratch, 5);
+            assertArrayEquals(src, Arrays.copyOfRange(scratch, 5, 5 + n));
+
+            StringBuilder sb = new StringBuilder("x");
+            CloneBase64.getUrlEncoder().encodeTo(padded, 7, size, sb);
+            assertEquals("x" + Base64.getUrlEncoder().encodeToString(src), sb.toString());
+
+            StringWriter writer = new StringWriter();
+            CloneBase64.getMimeEncoder().encodeTo(src, 0, size, writer);
+            assertEquals(Base64.getMimeEncoder().encodeToString(src), writer.toString());
+
+            String url = "[" + Base64.getUrlEncoder().encodeToString(src) + "]";
+            n = CloneBase64.getUrlDecoder().decode(url, 1, url.length() - 1, scratch, 0);
+            assertArrayEquals(src, Arrays.copyOf(scratch, n));
+            assertArrayEquals(src, CloneBase64.getMimeDecoder().decode(
+                    new StringBuilder(Base64.getMimeEncoder().encodeToString(src)).append("\u20ac")));
+        }
+        assertThrows(IllegalArgumentException.class, () -> CloneBase64.getDecoder().decode("QUJ\u0141"));
+    }
+
+    @Test
+    void mimeDecodesInOnePassAndIntoStreams() throws IOException {
+        for(int size : SIZES){
+            byte[] src = random(size);
+            byte[] mime = Base64.getMimeEncoder().encode(src);
+            assertArrayEquals(src, CloneBase64.getMimeDecoder().decode(mime));
+            ByteBuffer decoded = CloneBase64.getMimeDecoder().decode(ByteBuffer.wrap(mime));
+            assertArrayEquals(src, Arrays.copyOf(decoded.array(), decoded.limit()));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(size, CloneBase64.getMimeDecoder().decode(mime, out));
+            assertArrayEquals(src, out.toByteArray());
+        }
+        assertArrayEquals(new byte[0], CloneBase64.getMimeDecoder().decode("\r\n"));
+        assertArrayEquals(new byte[]{'A'}, CloneBase64.getMimeDecoder().decode("Q\r\nQ=\r\n=\r\n".replace("=\r\n=", "==")));
+    }
+
+    @Test
+    void deflatedStreamsMatchJdkComposition() throws IOException {
+        for(int size : new int[]{0, 1, 1000, 100_000}){
+            byte[] src = new byte[size];
+            for(int i = 0; i < size; i++){
+                src[i] = (byte)(i % 97 < 50 ? i % 7 : i * 31);
+            }
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+            try(OutputStream os = new DeflaterOutputStream(Base64.getMimeEncoder().wrap(deflated))){
+                os.write(src);
+            }
+            byte[] expected = deflated.toByteArray();
+
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            try(OutputStream os = CloneBase64.getMimeEncoder().wrapDeflating(sink)){
+                os.write(src);
+            }
+            assertArrayEquals(expected, sink.toByteArray());
+            sink.reset();
+            assertEquals(expected.length, CloneBase64.getMimeEncoder().encodeDeflated(
+                    ByteBuffer.allocateDirect(size).put(src).flip(), sink));
+            assertArrayEquals(expected, sink.toByteArray());
+
+            assertArrayEquals(src, readAll(CloneBase64.getMimeDecoder().wrapInflating(
+                    new ByteArrayInputStream(expected))));
+            sink.reset();
+            assertEquals(size, CloneBase64.getMimeDecoder().decodeInflated(ByteBuffer.wrap(expected), sink));
+            assertArrayEquals(src, sink.toByteArray());
+
+            sink.reset();
+            try(OutputStream os = CloneBase64.getEncoder().wrapGzip(sink)){
+                os.write(src);
+            }
+            assertArrayEquals(src, new GZIPInputStream(Base64.getDecoder().wrap(
+                    new ByteArrayInputStream(sink.toByteArray()))).readAllBytes());
+            assertArrayEquals(src, readAll(CloneBase64.getDecoder().wrapGzip(
+                    new ByteArrayInputStream(sink.toByteArray()))));
+        }
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        try(OutputStream os = new DeflaterOutputStream(deflated)){
+            os.write(random(5000));
+        }
+        byte[] truncated = CloneBase64.getEncoder().encode(Arrays.copyOf(deflated.toByteArray(), 20));
+        assertThrows(EOFException.class, () -> CloneBase64.getDecoder().decodeInflated(
+                ByteBuffer.wrap(truncated), new ByteArrayOutputStream()));
+    }
+
+    // odd read sizes so that units straddle both the caller's and the read-ahead buffer
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buf = new byte[1001];
+        int n;
+        while((n = in.read(buf, 0, result.size() % 2 == 0 ? 1001 : 1)) != -1){
+            result.write(buf, 0, n);
+        }
+        return result.toByteArray();
+    }
+}